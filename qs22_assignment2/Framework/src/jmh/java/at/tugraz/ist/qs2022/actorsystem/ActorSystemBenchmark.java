@@ -0,0 +1,81 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ISimulatedActorSystem#runFor(int)} with a ring of actors, in which
+ * some actors pass tokens to their successor, while the others are idle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ActorSystemBenchmark {
+
+    /**
+     * number of ticks per operation
+     */
+    private static final int TICKS = 10;
+
+    @Param({"10", "1000", "100000"})
+    public int actors;
+
+    /**
+     * share of the actors which have a token at the start
+     */
+    @Param({"0.01", "1"})
+    public double activeShare;
+
+    @Param({"simulated", "event-driven", "parallel"})
+    public String system;
+
+    private SimulatedActorSystem actorSystem;
+
+    private static final Message TOKEN = () -> 1;
+
+    static class RingActor extends SimulatedActor {
+        SimulatedActor successor;
+
+        RingActor() {
+            this.messageLog = new DisabledMessageLog();
+        }
+
+        @Override
+        public void receive(Message message) {
+            successor.tell(message);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        switch (system) {
+            case "event-driven":
+                actorSystem = new EventDrivenActorSystem();
+                break;
+            case "parallel":
+                actorSystem = new ParallelActorSystem();
+                break;
+            default:
+                actorSystem = new SimulatedActorSystem();
+        }
+        RingActor[] ring = new RingActor[actors];
+        for (int i = 0; i < actors; i++) {
+            ring[i] = new RingActor();
+            actorSystem.spawn(ring[i]);
+        }
+        int tokens = Math.max(1, (int) (actors * activeShare));
+        for (int i = 0; i < actors; i++) {
+            ring[i].successor = ring[(i + 1) % actors];
+            if (i % (actors / tokens) == 0) {
+                ring[i].tell(TOKEN);
+            }
+        }
+    }
+
+    @Benchmark
+    public int runFor() throws Exception {
+        actorSystem.runFor(TICKS);
+        return actorSystem.getCurrentTime();
+    }
+}
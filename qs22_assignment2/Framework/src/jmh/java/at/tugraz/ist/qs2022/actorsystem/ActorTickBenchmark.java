@@ -0,0 +1,62 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the message throughput of {@link SimulatedActor#tick()}: every invocation sends
+ * a batch of messages to an actor and ticks it until all of them have been processed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(ActorTickBenchmark.BATCH_SIZE)
+public class ActorTickBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    /**
+     * processing time of the messages in ticks
+     */
+    @Param({"0", "1"})
+    public int duration;
+
+    private CountingActor actor;
+
+    private Message message;
+
+    static class CountingActor extends SimulatedActor {
+        int received;
+
+        CountingActor() {
+            this.channel = new DeterministicChannel(0);
+            this.messageLog = new DisabledMessageLog();
+        }
+
+        @Override
+        public void receive(Message message) {
+            received++;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        actor = new CountingActor();
+        int messageDuration = duration;
+        message = () -> messageDuration;
+    }
+
+    @Benchmark
+    public void processBatch(Blackhole blackhole) throws Exception {
+        int target = actor.received + BATCH_SIZE;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            actor.tell(message);
+        }
+        while (actor.received < target) {
+            actor.tick();
+        }
+        blackhole.consume(actor.received);
+    }
+}
@@ -0,0 +1,39 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ICommunicationChannel#tick()} with a constant number of messages in transit:
+ * every operation sends one message and ticks once, the delay of the channel keeps
+ * the other messages in transit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChannelBenchmark {
+
+    @Param({"1", "64", "4096", "65536"})
+    public int messagesInTransit;
+
+    private DeterministicChannel channel;
+
+    private final Message message = () -> 1;
+
+    @Setup
+    public void setUp() {
+        channel = new DeterministicChannel(messagesInTransit - 1);
+        for (int i = 0; i < messagesInTransit - 1; i++) {
+            channel.send(message);
+            channel.tick();
+        }
+    }
+
+    @Benchmark
+    public List<Message> sendAndTick() {
+        channel.send(message);
+        return channel.tick();
+    }
+}
@@ -0,0 +1,115 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.actorsystem.DisabledMessageLog;
+import at.tugraz.ist.qs2022.actorsystem.EventDrivenActorSystem;
+import at.tugraz.ist.qs2022.actorsystem.Message;
+import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2022.actorsystem.SimulatedActorSystem;
+import at.tugraz.ist.qs2022.messageboard.clientmessages.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures requests sent by a client through the {@link Dispatcher}, its workers and the
+ * message store, from sending the request until the reply arrives at the client.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageBoardBenchmark {
+
+    @Param({"Publish", "Like", "Search"})
+    public String request;
+
+    /**
+     * number of user messages published before the measurement
+     */
+    @Param({"1000"})
+    public int storeSize;
+
+    @Param({"simulated", "event-driven"})
+    public String system;
+
+    @Param({"false", "true"})
+    public boolean multiplexStoreRequests;
+
+    @Param({"1", "4"})
+    public int storeShards;
+
+    /**
+     * read replicas of each shard, which answer searches with a staleness bound of 16 changes
+     */
+    @Param({"0", "2"})
+    public int storeReplicas;
+
+    private SimulatedActorSystem actorSystem;
+
+    private Client client;
+
+    private SimulatedActor worker;
+
+    private long operation;
+
+    /**
+     * Client remembering the last reply it received.
+     */
+    static class Client extends SimulatedActor {
+        Message reply;
+
+        @Override
+        public void receive(Message message) {
+            reply = message;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        actorSystem = system.equals("event-driven") ? new EventDrivenActorSystem() : new SimulatedActorSystem();
+        // keeping the messages of all operations would distort the measurement
+        actorSystem.setMessageLogPolicy(actor -> new DisabledMessageLog());
+        Dispatcher dispatcher = new Dispatcher(actorSystem, 2, multiplexStoreRequests, storeShards,
+                storeReplicas, 16);
+        client = new Client();
+        actorSystem.spawn(dispatcher);
+        actorSystem.spawn(client);
+        dispatcher.tell(new InitCommunication(client, 1));
+        worker = ((InitAck) await()).worker;
+        for (operation = 0; operation < storeSize; operation++) {
+            worker.tell(new Publish(new UserMessage(MessageStoreBenchmark.user(operation), "msg" + operation), 1));
+            await();
+        }
+    }
+
+    /**
+     * Runs the system until the client receives a reply.
+     *
+     * @return the reply
+     */
+    private Message await() throws Exception {
+        client.reply = null;
+        while (client.reply == null) {
+            actorSystem.tick();
+        }
+        return client.reply;
+    }
+
+    @Benchmark
+    public Message request() throws Exception {
+        long i = operation++;
+        switch (request) {
+            case "Publish":
+                worker.tell(new Publish(new UserMessage(MessageStoreBenchmark.user(i), "new" + i), 1));
+                break;
+            case "Like":
+                worker.tell(new Like(MessageStoreBenchmark.user(i), 1, (i * 7919) % storeSize));
+                break;
+            case "Search":
+                worker.tell(new SearchMessages("sg" + (i % 100), 1));
+                break;
+            default:
+                throw new IllegalArgumentException(request);
+        }
+        return await();
+    }
+}
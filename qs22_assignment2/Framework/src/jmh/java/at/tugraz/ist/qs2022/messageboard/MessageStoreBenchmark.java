@@ -0,0 +1,133 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.actorsystem.Message;
+import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2022.messageboard.clientmessages.Reaction;
+import at.tugraz.ist.qs2022.messageboard.messagestoremessages.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MessageStore#receive(Message)} for each message type on a store which
+ * already contains the given number of user messages. Replies are dropped.
+ * <p>
+ * Operations modifying the store are not undone, so the store grows slightly
+ * during the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageStoreBenchmark {
+
+    /**
+     * number of distinct authors and reacting users
+     */
+    static final int USERS = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int storeSize;
+
+    @Param({"UpdateMessageStore", "RetrieveFromStore", "RetrievePopularAuthors", "SearchInStore", "TopMessagesInStore",
+            "AddLike", "AddDislike", "DeleteLikeOrDislike", "AddReaction", "AddReport"})
+    public String messageType;
+
+    private MessageStore store;
+
+    private final SimulatedActor sink = new Sink();
+
+    /**
+     * counter used to vary the messages sent to the store
+     */
+    private long operation;
+
+    /**
+     * Actor dropping all messages sent to it.
+     */
+    static class Sink extends SimulatedActor {
+        @Override
+        public void tell(Message message) {
+        }
+
+        @Override
+        public void receive(Message message) {
+        }
+    }
+
+    static String user(long i) {
+        return "user" + (i % USERS);
+    }
+
+    /**
+     * Fills a store with the given number of user messages.
+     *
+     * @param size number of messages
+     * @param sink actor receiving the replies
+     * @return the filled store
+     */
+    static MessageStore filledStore(int size, SimulatedActor sink) throws Exception {
+        MessageStore store = new MessageStore();
+        for (int i = 0; i < size; i++) {
+            MessageStoreMessage update = new UpdateMessageStore(new UserMessage(user(i), "msg" + i), 0);
+            update.storeClient = sink;
+            store.receive(update);
+        }
+        return store;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        store = filledStore(storeSize, sink);
+        operation = 0;
+    }
+
+    @Benchmark
+    public void receive() throws Exception {
+        long i = operation++;
+        long messageId = (i * 7919) % storeSize;
+        MessageStoreMessage message;
+        switch (messageType) {
+            case "UpdateMessageStore":
+                message = new UpdateMessageStore(new UserMessage(user(i), "new" + i), i);
+                break;
+            case "RetrieveFromStore":
+                message = new RetrieveFromStore(user(i), i);
+                break;
+            case "RetrievePopularAuthors":
+                // the messages of a few authors are retrieved again and again, every tenth request is a like
+                if (i % 10 == 0) {
+                    message = new AddLike(user(i), messageId, i);
+                } else {
+                    message = new RetrieveFromStore(user(i % 10), i);
+                }
+                break;
+            case "SearchInStore":
+                message = new SearchInStore("sg" + (i % 100), i);
+                break;
+            case "TopMessagesInStore":
+                // every other request asks for the top messages of all authors
+                message = new TopMessagesInStore(i % 2 == 0 ? null : user(i), i, 10);
+                break;
+            case "AddLike":
+                message = new AddLike(user(i), messageId, i);
+                break;
+            case "AddDislike":
+                message = new AddDislike(user(i), messageId, i);
+                break;
+            case "DeleteLikeOrDislike":
+                message = new DeleteLikeOrDislike(user(i), i, messageId, DeleteLikeOrDislike.Type.LIKE);
+                break;
+            case "AddReaction":
+                Reaction.Emoji[] emojis = Reaction.Emoji.values();
+                message = new AddReaction(user(i), messageId, i, emojis[(int) (i % emojis.length)]);
+                break;
+            case "AddReport":
+                message = new AddReport(user(i), i, user(i / USERS + 1));
+                break;
+            default:
+                throw new IllegalArgumentException(messageType);
+        }
+        message.storeClient = sink;
+        store.receive(message);
+    }
+}
@@ -0,0 +1,80 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2022.messageboard.messagestoremessages.RetrieveFromStore;
+import at.tugraz.ist.qs2022.messageboard.messagestoremessages.SearchInStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a {@link MessageStore} takes from opening a snapshot with the given
+ * number of messages until it has answered a <c>RetrieveFromStore</c> request, and
+ * how long loading the whole snapshot takes. Every message has a like.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class MessageStoreSnapshotBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int storeSize;
+
+    private File file;
+
+    private final SimulatedActor sink = new MessageStoreBenchmark.Sink();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("message-store", ".snapshot");
+        Iterable<UserMessage> messages = () -> new Iterator<UserMessage>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < storeSize;
+            }
+
+            @Override
+            public UserMessage next() {
+                UserMessage message = new UserMessage(MessageStoreBenchmark.user(i), "msg" + i);
+                message.setMessageId(i);
+                message.addLike(MessageStoreBenchmark.user(i + 1));
+                message.setPoints(2);
+                i++;
+                return message;
+            }
+        };
+        MessageStoreSnapshot.write(file, storeSize, 0, 0, messages, new BanState(MessageStore.USER_BLOCKED_AT_COUNT, new UserIds()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public MessageStore retrieveAfterOpening() throws Exception {
+        MessageStore store = new MessageStore(0, 1, null, file, MessageStore.DEFAULT_SNAPSHOT_INTERVAL);
+        RetrieveFromStore retrieve = new RetrieveFromStore(MessageStoreBenchmark.user(storeSize / 2), 0);
+        retrieve.storeClient = sink;
+        store.receive(retrieve);
+        return store;
+    }
+
+    @Benchmark
+    public MessageStore searchAfterOpening() throws Exception {
+        MessageStore store = new MessageStore(0, 1, null, file, MessageStore.DEFAULT_SNAPSHOT_INTERVAL);
+        // searching needs the trigram index, for which the whole snapshot is loaded
+        SearchInStore search = new SearchInStore("sg1", 0);
+        search.storeClient = sink;
+        store.receive(search);
+        return store;
+    }
+}
@@ -0,0 +1,61 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.messageboard.clientmessages.Reaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding, removing and checking a like on a message which already has the given
+ * number of likes, and adding and counting reactions on a message with as many reactions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserMessageBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int likes;
+
+    private UserMessage message;
+
+    private String[] names;
+
+    private int operation;
+
+    @Setup
+    public void setUp() {
+        message = new UserMessage("author", "msg");
+        names = new String[2 * likes];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "liker" + i;
+            if (i % 2 == 0) {
+                message.addLike(names[i]);
+                message.addReaction(names[i], Reaction.Emoji.values()[i % Reaction.Emoji.values().length]);
+            }
+        }
+        operation = 0;
+    }
+
+    @Benchmark
+    public boolean isLikedBy() {
+        return message.isLikedBy(names[operation++ % names.length]);
+    }
+
+    @Benchmark
+    public boolean addAndRemoveLike() {
+        String name = names[(2 * operation++ + 1) % names.length];
+        return message.addLike(name) && message.removeLike(name);
+    }
+
+    @Benchmark
+    public boolean addReaction() {
+        // after the first round every reaction exists already, which is the common case of repeated reactions
+        return message.addReaction(names[operation++ % names.length], Reaction.Emoji.COOL);
+    }
+
+    @Benchmark
+    public int countReactions() {
+        return message.getReactionCount(Reaction.Emoji.COOL);
+    }
+}
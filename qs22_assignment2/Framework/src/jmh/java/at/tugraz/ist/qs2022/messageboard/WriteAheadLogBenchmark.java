@@ -0,0 +1,59 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a {@link MessageStore} takes to recover from a write-ahead log
+ * with the given number of records. Every tenth record stores a message, the other
+ * nine add likes of different users to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class WriteAheadLogBenchmark {
+
+    private static final int LIKES_PER_MESSAGE = 9;
+
+    @Param({"1000000", "10000000"})
+    public int entries;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("message-store", ".log");
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.NONE)) {
+            long messageId = -1;
+            for (int i = 0; i < entries; i++) {
+                if (i % (LIKES_PER_MESSAGE + 1) == 0) {
+                    messageId++;
+                    log.logUpdate(MessageStoreBenchmark.user(messageId), "msg" + messageId);
+                } else {
+                    log.logAddLike(MessageStoreBenchmark.user(messageId + i), messageId);
+                }
+                if (i % 10000 == 0) {
+                    log.commit();
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public MessageStore replay() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.NONE)) {
+            return new MessageStore(log);
+        }
+    }
+}
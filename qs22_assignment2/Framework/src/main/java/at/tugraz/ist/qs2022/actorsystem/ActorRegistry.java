@@ -0,0 +1,277 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Registry of the running actors of a system.
+ * <p>
+ * Actors are stored in an array of slots, each actor remembers its slot, so that it can
+ * be removed without searching. Free slots are kept in a free list and reused. The slots
+ * of running actors are linked in the order the actors were added, which is the order
+ * in which they are ticked.
+ * <p>
+ * Actors are found by ID in a second array of slots, which is indexed by the ID and split
+ * into pages. IDs are assigned in increasing order and never reused, so a page is dropped
+ * once all its actors have been removed, e.g. those of short-lived worker helpers, and only
+ * the array of pages grows with the number of IDs assigned so far.
+ * <p>
+ * While the actors are iterated, removing an actor only marks it as stopped, it is
+ * unlinked when the iteration ends. So the iteration neither has to copy the actors,
+ * nor is it affected by actors being added or removed.
+ */
+class ActorRegistry {
+
+    /**
+     * marks the end of a list of slots
+     */
+    static final int NONE = -1;
+
+    private static final int INITIAL_SLOTS = 16;
+
+    /**
+     * number of low bits of an actor ID, which select its slot within a page of the ID index
+     */
+    private static final int PAGE_BITS = 10;
+
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private SimulatedActor[] actors = new SimulatedActor[INITIAL_SLOTS];
+
+    /**
+     * next slot in the list of running actors respectively in the free list
+     */
+    private int[] next = new int[INITIAL_SLOTS];
+
+    /**
+     * previous slot in the list of running actors
+     */
+    private int[] previous = new int[INITIAL_SLOTS];
+
+    private int first = NONE;
+
+    private int last = NONE;
+
+    private int firstFree = NONE;
+
+    /**
+     * number of slots which have been used so far, all slots after them are free
+     */
+    private int usedSlots = 0;
+
+    /**
+     * running actors by ID, the page of an ID is null if it has no running actors
+     */
+    private SimulatedActor[][] pagesById = new SimulatedActor[1][];
+
+    /**
+     * number of running actors in each page of the ID index
+     */
+    private int[] runningInPage = new int[1];
+
+    private int size = 0;
+
+    /**
+     * Slots of actors removed during the current iteration, they are unlinked when it ends.
+     */
+    private int[] pendingRemovals = new int[INITIAL_SLOTS];
+
+    private int numberOfPendingRemovals = 0;
+
+    private boolean iterating = false;
+
+    /**
+     * Adds an actor after all other actors, it must already have its ID, which must not be negative.
+     *
+     * @param actor The actor to add.
+     */
+    void add(SimulatedActor actor) {
+        if (actor.getId() < 0) {
+            throw new IllegalArgumentException("actor IDs must not be negative");
+        }
+        int slot = allocateSlot();
+        actors[slot] = actor;
+        next[slot] = NONE;
+        previous[slot] = last;
+        if (last == NONE) {
+            first = slot;
+        } else {
+            next[last] = slot;
+        }
+        last = slot;
+        actor.registrySlot = slot;
+        index(actor);
+    }
+
+    /**
+     * Removes an actor, nothing happens if it has not been added or has already been removed.
+     * During an iteration its slot is only unlinked when the iteration ends.
+     *
+     * @param actor The actor to remove.
+     */
+    void remove(SimulatedActor actor) {
+        int slot = actor.registrySlot;
+        if (slot == NONE || actors[slot] != actor) {
+            return;
+        }
+        actor.registrySlot = NONE;
+        unindex(actor);
+        if (iterating) {
+            if (numberOfPendingRemovals == pendingRemovals.length) {
+                pendingRemovals = Arrays.copyOf(pendingRemovals, numberOfPendingRemovals * 2);
+            }
+            pendingRemovals[numberOfPendingRemovals++] = slot;
+        } else {
+            unlink(slot);
+        }
+    }
+
+    /**
+     * @param id ID of an actor
+     * @return The running actor with the given ID, null if there is none.
+     */
+    SimulatedActor get(long id) {
+        if (id < 0 || (id >>> PAGE_BITS) >= pagesById.length) {
+            return null;
+        }
+        SimulatedActor[] page = pagesById[(int) (id >>> PAGE_BITS)];
+        return page == null ? null : page[(int) id & (PAGE_SIZE - 1)];
+    }
+
+    /**
+     * @return The number of running actors.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return A new list of all running actors in the order they were added.
+     */
+    List<SimulatedActor> toList() {
+        List<SimulatedActor> list = new ArrayList<>(size);
+        for (int slot = first; slot != NONE; slot = next[slot]) {
+            if (isRunning(slot)) {
+                list.add(actors[slot]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Starts an iteration, which has to be finished by {@link ActorRegistry#endIteration()}.
+     *
+     * @return The first slot, or {@link ActorRegistry#NONE}.
+     */
+    int beginIteration() {
+        iterating = true;
+        return first;
+    }
+
+    /**
+     * @return The last slot of the actors added so far, or {@link ActorRegistry#NONE}.
+     */
+    int lastSlot() {
+        return last;
+    }
+
+    /**
+     * @param slot slot of an actor
+     * @return The slot of the actor added next, or {@link ActorRegistry#NONE}.
+     */
+    int nextSlot(int slot) {
+        return next[slot];
+    }
+
+    /**
+     * @param slot slot of an actor
+     * @return The actor in the slot, which might have been stopped during the iteration.
+     */
+    SimulatedActor actorAt(int slot) {
+        return actors[slot];
+    }
+
+    /**
+     * @param slot slot of an actor
+     * @return false if the actor in the slot has been stopped during the iteration.
+     */
+    boolean isRunning(int slot) {
+        return actors[slot].registrySlot == slot;
+    }
+
+    /**
+     * Finishes an iteration and unlinks actors removed during it.
+     */
+    void endIteration() {
+        iterating = false;
+        for (int i = 0; i < numberOfPendingRemovals; i++) {
+            unlink(pendingRemovals[i]);
+        }
+        numberOfPendingRemovals = 0;
+    }
+
+    private void unlink(int slot) {
+        if (previous[slot] == NONE) {
+            first = next[slot];
+        } else {
+            next[previous[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            last = previous[slot];
+        } else {
+            previous[next[slot]] = previous[slot];
+        }
+        actors[slot] = null;
+        next[slot] = firstFree;
+        firstFree = slot;
+    }
+
+    private void index(SimulatedActor actor) {
+        int pageNumber = (int) (actor.getId() >>> PAGE_BITS);
+        if (pageNumber >= pagesById.length) {
+            int length = Math.max(pageNumber + 1, pagesById.length * 2);
+            pagesById = Arrays.copyOf(pagesById, length);
+            runningInPage = Arrays.copyOf(runningInPage, length);
+        }
+        SimulatedActor[] page = pagesById[pageNumber];
+        if (page == null) {
+            page = new SimulatedActor[PAGE_SIZE];
+            pagesById[pageNumber] = page;
+        }
+        int index = (int) actor.getId() & (PAGE_SIZE - 1);
+        if (page[index] == null) {
+            runningInPage[pageNumber]++;
+            size++;
+        }
+        page[index] = actor;
+    }
+
+    private void unindex(SimulatedActor actor) {
+        int pageNumber = (int) (actor.getId() >>> PAGE_BITS);
+        SimulatedActor[] page = pagesById[pageNumber];
+        int index = (int) actor.getId() & (PAGE_SIZE - 1);
+        if (page == null || page[index] != actor) {
+            return;
+        }
+        page[index] = null;
+        size--;
+        if (--runningInPage[pageNumber] == 0) {
+            pagesById[pageNumber] = null;
+        }
+    }
+
+    private int allocateSlot() {
+        if (firstFree != NONE) {
+            int slot = firstFree;
+            firstFree = next[slot];
+            return slot;
+        }
+        if (usedSlots == actors.length) {
+            actors = Arrays.copyOf(actors, usedSlots * 2);
+            next = Arrays.copyOf(next, usedSlots * 2);
+            previous = Arrays.copyOf(previous, usedSlots * 2);
+        }
+        return usedSlots++;
+    }
+}
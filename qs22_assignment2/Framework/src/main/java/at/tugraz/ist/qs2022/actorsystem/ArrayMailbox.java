@@ -0,0 +1,115 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+/**
+ * Message box storing messages in a ring buffer, which grows up to the capacity if necessary.
+ * Adding and removing messages does not allocate memory unless the buffer grows.
+ */
+public class ArrayMailbox implements IMailbox {
+
+    /**
+     * initial size of the buffer, must be a power of two
+     */
+    private static final int INITIAL_SIZE = 8;
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private Message[] buffer = new Message[INITIAL_SIZE];
+
+    /**
+     * index of the oldest message in the buffer
+     */
+    private int head = 0;
+
+    /**
+     * number of messages in the buffer
+     */
+    private int size = 0;
+
+    private long droppedCount = 0;
+
+    /**
+     * Constructs a new ArrayMailbox object without capacity limit.
+     */
+    public ArrayMailbox() {
+        this(UNBOUNDED, OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Constructs a new ArrayMailbox object.
+     *
+     * @param capacity       Maximum number of messages, must be positive.
+     * @param overflowPolicy Policy applied if a message is added to the full message box.
+     */
+    public ArrayMailbox(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public void add(Message message) {
+        if (size == capacity) {
+            droppedCount++;
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                return;
+            }
+            poll();
+        }
+        if (size == buffer.length) {
+            grow();
+        }
+        buffer[(head + size++) & (buffer.length - 1)] = message;
+    }
+
+    @Override
+    public Message peek() {
+        return buffer[head];
+    }
+
+    @Override
+    public Message poll() {
+        Message message = buffer[head];
+        if (message != null) {
+            buffer[head] = null;
+            head = (head + 1) & (buffer.length - 1);
+            size--;
+        }
+        return message;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Doubles the size of the buffer, moving the messages to its start.
+     */
+    private void grow() {
+        Message[] newBuffer = new Message[buffer.length * 2];
+        int firstPart = buffer.length - head;
+        System.arraycopy(buffer, head, newBuffer, 0, firstPart);
+        System.arraycopy(buffer, 0, newBuffer, firstPart, head);
+        buffer = newBuffer;
+        head = 0;
+    }
+}
@@ -1,41 +1,173 @@
 package at.tugraz.ist.qs2022.actorsystem;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Abstract CommunicationChannel class implementing the Tick method,
  * which is common to all concrete implementations of communication channels.
+ * <p>
+ * Messages in transit are kept in a timing wheel: a ring of slots, one for each
+ * of the upcoming ticks. A message is put into the slot of the tick at which it
+ * arrives and {@link ICommunicationChannel#tick()} hands over the contents of the
+ * current slot, so neither sending nor ticking has to visit other messages in transit.
+ * The wheel grows if a message is sent with a delay longer than the wheel.
  */
 public abstract class CommunicationChannel implements ICommunicationChannel {
 
-    private List<MessageInDelivery> messagesInDelivery = new ArrayList<>();
+    /**
+     * initial number of slots, must be a power of two
+     */
+    private static final int INITIAL_SLOTS = 2;
+
+    /**
+     * Slots of the timing wheel, the messages arriving at tick t are stored
+     * in slot t modulo the number of slots.
+     */
+    private ArrayList<Message>[] slots = newSlots(INITIAL_SLOTS);
+
+    /**
+     * number of calls to {@link ICommunicationChannel#tick()} so far
+     */
+    private long currentTick = 0;
+
+    /**
+     * number of messages currently in transit
+     */
+    private int messagesInTransit = 0;
+
+    /**
+     * The list returned by the last call to {@link ICommunicationChannel#tick()},
+     * which is reused as an empty slot by the next call delivering messages.
+     */
+    private ArrayList<Message> lastDelivered = new ArrayList<>();
 
     /**
-     * Adds the given message to the list.
+     * Adds the given message to the messages in transit.
      *
      * @param messageInDelivery The object to add to the list.
      */
     protected void addMessageInDelivery(MessageInDelivery messageInDelivery) {
-        this.messagesInDelivery.add(messageInDelivery);
+        addMessage(messageInDelivery.getRemainingTicks(), messageInDelivery.getMessage());
+    }
+
+    /**
+     * Adds the given message to the messages in transit.
+     *
+     * @param delay   Number of ticks the message needs to be delivered,
+     *                zero means that it arrives at the next call of {@link ICommunicationChannel#tick()}.
+     * @param message The message.
+     */
+    protected void addMessage(int delay, Message message) {
+        if (delay >= slots.length) {
+            grow(delay + 1);
+        }
+        slots[slotIndex(currentTick + delay)].add(message);
+        messagesInTransit++;
     }
 
     @Override
     public List<Message> tick() {
-        List<Message> messagesDelivered = new ArrayList<>();
-        List<MessageInDelivery> newMessagesInDelivery = new ArrayList<>();
+        int index = slotIndex(currentTick++);
+        ArrayList<Message> messagesDelivered = slots[index];
+        if (messagesDelivered.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // the previously returned list is not used anymore, so it becomes the empty slot
+        lastDelivered.clear();
+        slots[index] = lastDelivered;
+        lastDelivered = messagesDelivered;
+        messagesInTransit -= messagesDelivered.size();
+        return messagesDelivered;
+    }
+
+    /**
+     * Lower bound for the delay of messages sent via this channel, i.e. the number of
+     * calls to {@link ICommunicationChannel#tick()} which pass at least before a message
+     * sent now is delivered, minus one. Actor systems use it as lookahead.
+     *
+     * @return 0 unless a concrete channel guarantees a longer delay.
+     */
+    protected int getMinimumDelay() {
+        return 0;
+    }
 
-        for (MessageInDelivery messageInDelivery : messagesInDelivery) {
-            if (messageInDelivery.tick()) {
-                // message arrived at destination
-                messagesDelivered.add(messageInDelivery.getMessage());
-            } else {
-                // add message with decremented remainingTicks again
-                newMessagesInDelivery.add(messageInDelivery);
-            }
+    /**
+     * Sends the message as if it had been sent before the last call to
+     * {@link ICommunicationChannel#tick()}. Only allowed if the minimum delay is at least one,
+     * so that the message does not arrive in the past.
+     *
+     * @param message The message to send.
+     */
+    void sendAsOfLastTick(Message message) {
+        currentTick--;
+        try {
+            send(message);
+        } finally {
+            currentTick++;
         }
+    }
 
-        this.messagesInDelivery = newMessagesInDelivery;
-        return messagesDelivered;
+    /**
+     * Number of upcoming calls to {@link ICommunicationChannel#tick()}, which are
+     * guaranteed not to deliver any message.
+     *
+     * @return The smallest number of remaining ticks of all messages in transit,
+     * or {@link Integer#MAX_VALUE} if no message is in transit.
+     */
+    int ticksUntilNextDelivery() {
+        if (messagesInTransit == 0) {
+            return Integer.MAX_VALUE;
+        }
+        int ticks = 0;
+        while (slots[slotIndex(currentTick + ticks)].isEmpty()) {
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /**
+     * Has the same effect as calling {@link ICommunicationChannel#tick()} the given number of times,
+     * provided that none of these calls would deliver a message.
+     *
+     * @param ticks Number of ticks to skip, at most {@link CommunicationChannel#ticksUntilNextDelivery()}.
+     */
+    void skip(int ticks) {
+        currentTick += ticks;
+    }
+
+    private int slotIndex(long tick) {
+        return (int) (tick & (slots.length - 1));
+    }
+
+    /**
+     * Replaces the wheel by a larger one, which has at least the given number of slots.
+     * All messages of one slot arrive at the same tick, because no message is sent with
+     * a delay longer than the wheel, so slots are moved as a whole.
+     *
+     * @param minimumSlots minimum number of slots
+     */
+    private void grow(int minimumSlots) {
+        int size = slots.length;
+        while (size < minimumSlots) {
+            size *= 2;
+        }
+        ArrayList<Message>[] newSlots = newSlots(size);
+        for (int ticks = 0; ticks < slots.length; ticks++) {
+            long tick = currentTick + ticks;
+            ArrayList<Message> slot = slots[slotIndex(tick)];
+            newSlots[(int) (tick & (size - 1))] = slot;
+        }
+        slots = newSlots;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayList<Message>[] newSlots(int size) {
+        ArrayList<Message>[] slots = new ArrayList[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        return slots;
     }
 }
@@ -0,0 +1,331 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import at.tugraz.ist.qs2022.messageboard.UnknownClientException;
+import at.tugraz.ist.qs2022.messageboard.UnknownMessageException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Actor system which runs actors for real instead of simulating them, so that
+ * the message board can be measured and used under actual concurrency.
+ * <p>
+ * The message box of every actor is replaced by a {@link ConcurrentMailbox} with the same
+ * capacity, to which {@link SimulatedActor#tell(Message)} adds messages without locking.
+ * An actor with messages in its message box is scheduled on a shared executor, which passes
+ * the messages to {@link ISimulatedActor#receive(Message)} one after another. An actor is
+ * never run by two threads at the same time, but different actors run in parallel, so actors
+ * must not share mutable state. By default a work-stealing pool with one thread per processor
+ * is used, any other executor (e.g. one starting a virtual thread per task) can be passed instead.
+ * <p>
+ * Time is wall-clock time: one tick corresponds to a fixed number of milliseconds,
+ * {@link ISimulatedActorSystem#runFor(int)}, {@link ISimulatedActorSystem#runUntil(int)} and
+ * {@link ISimulatedActorSystem#tick()} wait until the time has passed. Messages are delivered
+ * as soon as possible and processed without simulating their duration.
+ * Message logs of actors are replaced by logs which can be used by several threads.
+ * <p>
+ * Actors which are not idle according to {@link SimulatedActor#idleTicks()}, e.g. workers waiting
+ * for replies, are ticked once per tick by their runner, so that they detect timeouts as in the
+ * simulation, where a bounded message box may drop messages. An actor is only ticked while its
+ * message box is empty, ticks which pass while it has messages to process are skipped.
+ * <p>
+ * The first exception thrown by an actor is rethrown by the next call waiting for time to pass.
+ * The message which caused it is not processed again. Call {@link ConcurrentActorSystem#shutdown()}
+ * after use to stop ticking actors and an executor created by the system.
+ */
+public class ConcurrentActorSystem extends SimulatedActorSystem {
+
+    /**
+     * default length of a tick in milliseconds
+     */
+    public static final long DEFAULT_TICK_MILLIS = 1;
+
+    /**
+     * maximum number of messages an actor processes before it is scheduled again,
+     * so that actors with a long queue do not starve others
+     */
+    private static final int MESSAGES_PER_RUN = 64;
+
+    private final Executor executor;
+
+    /**
+     * executor to be shut down by {@link ConcurrentActorSystem#shutdown()}, null if it was passed in
+     */
+    private final ExecutorService ownExecutor;
+
+    private final long tickNanos;
+
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * thread counting the ticks of the actors which are not idle
+     */
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ConcurrentActorSystem ticker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Runners of all running actors, messages sent to other actors are logged, but never processed.
+     */
+    private final Map<SimulatedActor, Runner> runners = new ConcurrentHashMap<>();
+
+    /**
+     * runners of the actors which are not idle and therefore ticked
+     */
+    private final Set<Runner> ticking = ConcurrentHashMap.newKeySet();
+
+    /**
+     * first exception thrown by an actor, which has not been rethrown yet
+     */
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    /**
+     * Constructs a new ConcurrentActorSystem with its own pool and the default tick length.
+     */
+    public ConcurrentActorSystem() {
+        this(DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * Constructs a new ConcurrentActorSystem with its own pool.
+     *
+     * @param tickMillis length of a tick in milliseconds
+     */
+    public ConcurrentActorSystem(long tickMillis) {
+        this(new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), tickMillis, true);
+    }
+
+    /**
+     * Constructs a new ConcurrentActorSystem running actors on the given executor,
+     * which is not shut down by the system.
+     *
+     * @param executor   executor used to run actors
+     * @param tickMillis length of a tick in milliseconds
+     */
+    public ConcurrentActorSystem(Executor executor, long tickMillis) {
+        this(executor, tickMillis, false);
+    }
+
+    private ConcurrentActorSystem(Executor executor, long tickMillis, boolean ownsExecutor) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tick length must be positive");
+        }
+        this.executor = executor;
+        this.ownExecutor = ownsExecutor ? (ExecutorService) executor : null;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        ticker.scheduleAtFixedRate(this::tickActors, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized List<SimulatedActor> getActors() {
+        return super.getActors();
+    }
+
+    @Override
+    public synchronized SimulatedActor getActor(long id) {
+        return super.getActor(id);
+    }
+
+    @Override
+    public int getCurrentTime() {
+        return (int) ((System.nanoTime() - startNanos) / tickNanos);
+    }
+
+    @Override
+    public synchronized void spawn(SimulatedActor actor) {
+        if (!(actor.messageBox instanceof ConcurrentMailbox)) {
+            actor.messageBox = new ConcurrentMailbox(actor.messageBox.getCapacity(), actor.messageBox.getOverflowPolicy());
+        }
+        // the runner must exist before the actor starts up, as it might send messages to itself
+        Runner runner = new Runner(actor);
+        runners.put(actor, runner);
+        super.spawn(actor);
+        actor.setTimeSinceSystemStart(getCurrentTime());
+        // the first run decides whether the actor is ticked
+        runner.schedule();
+    }
+
+    @Override
+    public synchronized void stop(SimulatedActor actor) {
+        super.stop(actor);
+        Runner runner = runners.remove(actor);
+        if (runner != null) {
+            runner.stopped = true;
+            ticking.remove(runner);
+        }
+    }
+
+    @Override
+    public void runFor(int numberOfTicks) throws UnknownClientException, UnknownMessageException {
+        waitUntil(getCurrentTime() + numberOfTicks);
+    }
+
+    @Override
+    public void runUntil(int endTime) throws UnknownClientException, UnknownMessageException {
+        waitUntil(endTime + 1);
+    }
+
+    @Override
+    public void tick() throws UnknownClientException, UnknownMessageException {
+        runFor(1);
+    }
+
+    /**
+     * Stops ticking actors and shuts down the pool created by this system, if any.
+     * Actors are not run anymore afterwards.
+     */
+    public void shutdown() {
+        ticker.shutdownNow();
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    @Override
+    void deliver(SimulatedActor receiver, Message message) {
+        receiver.messageLog.add(message);
+        Runner runner = runners.get(receiver);
+        if (runner != null) {
+            runner.add(message);
+        }
+    }
+
+    @Override
+    void initMessageLog(SimulatedActor actor) {
+        super.initMessageLog(actor);
+        if (actor.messageLog instanceof FullMessageLog) {
+            actor.replaceMessageLog(new ConcurrentMessageLog());
+        } else {
+            actor.messageLog = new SynchronizedMessageLog(actor.messageLog);
+        }
+    }
+
+    @Override
+    void synchronize(SimulatedActor actor) {
+        if (runners.containsKey(actor)) {
+            actor.setTimeSinceSystemStart(getCurrentTime());
+        }
+    }
+
+    /**
+     * Counts a tick for every actor which is not idle and schedules it.
+     */
+    private void tickActors() {
+        for (Runner runner : ticking) {
+            runner.ticksDue.incrementAndGet();
+            runner.scheduleIfNecessary();
+        }
+    }
+
+    /**
+     * Waits until the given time is reached and rethrows the first exception thrown by an actor.
+     * Returns early if the current thread is interrupted, keeping the interrupt flag set.
+     *
+     * @param time time to wait for
+     */
+    private void waitUntil(int time) throws UnknownClientException, UnknownMessageException {
+        long remainingNanos;
+        while ((remainingNanos = startNanos + time * tickNanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remainingNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Exception exception = failure.getAndSet(null);
+        if (exception instanceof UnknownClientException) {
+            throw (UnknownClientException) exception;
+        } else if (exception instanceof UnknownMessageException) {
+            throw (UnknownMessageException) exception;
+        } else if (exception != null) {
+            throw (RuntimeException) exception;
+        }
+    }
+
+    /**
+     * Runs an actor on the executor whenever its message box contains messages or ticks are due.
+     * The scheduled flag makes sure that only one thread runs the actor at a time
+     * and that all changes made by a run are visible to the next one.
+     */
+    private class Runner implements Runnable {
+        private final SimulatedActor actor;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * number of ticks which passed since the actor was ticked the last time
+         */
+        private final AtomicInteger ticksDue = new AtomicInteger();
+
+        private volatile boolean stopped = false;
+
+        Runner(SimulatedActor actor) {
+            this.actor = actor;
+        }
+
+        void add(Message message) {
+            actor.messageBox.add(message);
+            scheduleIfNecessary();
+        }
+
+        @Override
+        public void run() {
+            Message message;
+            int processed = 0;
+            while (!stopped && processed++ < MESSAGES_PER_RUN && (message = actor.messageBox.poll()) != null) {
+                try {
+                    actor.receive(message);
+                } catch (UnknownClientException | UnknownMessageException | RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+            int ticks = ticksDue.getAndSet(0);
+            try {
+                for (int i = 0; i < ticks && !stopped && actor.messageBox.isEmpty(); i++) {
+                    actor.tick();
+                }
+            } catch (UnknownClientException | UnknownMessageException | RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+            if (!stopped && actor.idleTicks() != Integer.MAX_VALUE) {
+                ticking.add(this);
+                if (stopped) {
+                    // stop() might have missed the runner
+                    ticking.remove(this);
+                }
+            } else {
+                ticking.remove(this);
+            }
+            scheduled.set(false);
+            // messages and ticks added after they were taken, but before the flag was reset, are processed by a new run
+            scheduleIfNecessary();
+        }
+
+        private void scheduleIfNecessary() {
+            if (!stopped && (!actor.messageBox.isEmpty() || ticksDue.get() > 0)) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message box to which several threads can add messages without locking,
+ * while one thread at a time removes them.
+ * <p>
+ * The capacity is checked before a message is added, so that the message box might
+ * briefly hold more messages if it is full and messages are added by several threads
+ * at the same time, while the oldest messages are dropped.
+ */
+public class ConcurrentMailbox implements IMailbox {
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final ConcurrentLinkedQueue<Message> messages = new ConcurrentLinkedQueue<>();
+
+    /**
+     * number of messages, only maintained if the capacity is limited
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Constructs a new ConcurrentMailbox object without capacity limit.
+     */
+    public ConcurrentMailbox() {
+        this(UNBOUNDED, OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Constructs a new ConcurrentMailbox object.
+     *
+     * @param capacity       Maximum number of messages, must be positive.
+     * @param overflowPolicy Policy applied if a message is added to the full message box.
+     */
+    public ConcurrentMailbox(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public void add(Message message) {
+        if (capacity != UNBOUNDED && size.incrementAndGet() > capacity) {
+            droppedCount.incrementAndGet();
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                size.decrementAndGet();
+                return;
+            }
+            if (messages.poll() != null) {
+                size.decrementAndGet();
+            }
+        }
+        messages.offer(message);
+    }
+
+    @Override
+    public Message peek() {
+        return messages.peek();
+    }
+
+    @Override
+    public Message poll() {
+        Message message = messages.poll();
+        if (message != null && capacity != UNBOUNDED) {
+            size.decrementAndGet();
+        }
+        return message;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
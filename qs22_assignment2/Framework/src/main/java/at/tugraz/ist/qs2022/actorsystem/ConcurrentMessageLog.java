@@ -0,0 +1,27 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Message log keeping all messages, to which messages can be added by several
+ * threads without locking.
+ */
+class ConcurrentMessageLog implements IMessageLog {
+
+    private final ConcurrentLinkedQueue<Message> messages = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void add(Message message) {
+        messages.offer(message);
+    }
+
+    /**
+     * @return A copy of the messages logged so far.
+     */
+    @Override
+    public List<Message> getMessages() {
+        return new ArrayList<>(messages);
+    }
+}
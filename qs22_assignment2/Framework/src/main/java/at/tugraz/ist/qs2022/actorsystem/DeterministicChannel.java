@@ -19,8 +19,13 @@ public class DeterministicChannel extends CommunicationChannel {
         this.delay = delay;
     }
 
+    @Override
+    protected int getMinimumDelay() {
+        return delay;
+    }
+
     @Override
     public void send(Message message) {
-        addMessageInDelivery(new MessageInDelivery(delay, message));
+        addMessage(delay, message);
     }
 }
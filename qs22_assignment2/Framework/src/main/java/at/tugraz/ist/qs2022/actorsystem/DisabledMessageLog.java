@@ -0,0 +1,19 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message log which does not keep any messages.
+ */
+public class DisabledMessageLog implements IMessageLog {
+
+    @Override
+    public void add(Message message) {
+    }
+
+    @Override
+    public List<Message> getMessages() {
+        return Collections.emptyList();
+    }
+}
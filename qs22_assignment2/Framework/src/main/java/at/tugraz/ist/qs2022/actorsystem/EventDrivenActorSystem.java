@@ -0,0 +1,273 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import at.tugraz.ist.qs2022.messageboard.UnknownClientException;
+import at.tugraz.ist.qs2022.messageboard.UnknownMessageException;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Actor system which only ticks actors that have something to do.
+ * <p>
+ * Every active actor is scheduled for the next tick at which a message arrives via
+ * its channel, it takes a message from its message box or it finishes processing
+ * a message (see {@link SimulatedActor#idleTicks()}). All other ticks of an actor
+ * are skipped and caught up on lazily, e.g. when a message is sent to it or its time
+ * is read. {@link ISimulatedActorSystem#runFor(int)} and
+ * {@link ISimulatedActorSystem#runUntil(int)} jump over ticks in which no actor
+ * is scheduled.
+ * <p>
+ * The results are the same as those of {@link SimulatedActorSystem}, including the
+ * order in which actors are ticked within one time unit (the order they were spawned in)
+ * and the effects of actors being spawned or stopped during a tick.
+ */
+public class EventDrivenActorSystem extends SimulatedActorSystem {
+
+    /**
+     * wake-up time of actors which are idle until a new message is sent to them
+     */
+    private static final int NEVER = Integer.MAX_VALUE;
+
+    /**
+     * Scheduling state of an active actor.
+     */
+    private static class Schedule {
+        final SimulatedActor actor;
+
+        /**
+         * time of the last tick which has been executed or skipped for the actor
+         */
+        int lastTick;
+
+        /**
+         * time of the next tick which has to be executed for the actor
+         */
+        int wakeUpTime = NEVER;
+
+        Schedule(SimulatedActor actor, int lastTick) {
+            this.actor = actor;
+            this.lastTick = lastTick;
+        }
+    }
+
+    /**
+     * Entry in the queue of wake-ups, ordered by time and then by actor ID,
+     * which is the order in which actors are ticked by {@link SimulatedActorSystem}.
+     * Entries are not removed when an actor is rescheduled, instead they are
+     * ignored if the time does not match the wake-up time of the actor anymore.
+     */
+    private static class WakeUp implements Comparable<WakeUp> {
+        final int time;
+        final Schedule schedule;
+
+        WakeUp(int time, Schedule schedule) {
+            this.time = time;
+            this.schedule = schedule;
+        }
+
+        @Override
+        public int compareTo(WakeUp other) {
+            if (time != other.time) {
+                return Integer.compare(time, other.time);
+            }
+            return Long.compare(schedule.actor.getId(), other.schedule.actor.getId());
+        }
+    }
+
+    private final Map<SimulatedActor, Schedule> schedules = new IdentityHashMap<>();
+
+    private final PriorityQueue<WakeUp> wakeUps = new PriorityQueue<>();
+
+    /**
+     * Actors stopped during the current tick, they are removed when the tick is finished.
+     */
+    private final List<Schedule> pendingStops = new ArrayList<>();
+
+    /**
+     * flag which is set while actors are ticked
+     */
+    private boolean ticking = false;
+
+    /**
+     * ID of the actor which is currently ticked, all actors with a lower ID
+     * have already passed the current tick.
+     */
+    private long tickingActorId = -1;
+
+    @Override
+    public void spawn(SimulatedActor actor) {
+        // actors spawned during a tick are ticked for the first time in the next tick
+        Schedule schedule = new Schedule(actor, ticking ? currentTime : currentTime - 1);
+        schedules.put(actor, schedule);
+        super.spawn(actor);
+        schedule(schedule);
+    }
+
+    @Override
+    public void stop(SimulatedActor actor) {
+        super.stop(actor);
+        Schedule schedule = schedules.get(actor);
+        if (schedule == null) {
+            return;
+        }
+        if (ticking) {
+            // actors stopped during a tick are still ticked in this tick
+            pendingStops.add(schedule);
+        } else {
+            catchUp(schedule);
+            schedules.remove(actor);
+        }
+    }
+
+    @Override
+    public void runFor(int numberOfTicks) throws UnknownClientException, UnknownMessageException {
+        int endTime = currentTime + numberOfTicks;
+        while (currentTime < endTime) {
+            int nextWakeUpTime = nextWakeUpTime();
+            if (nextWakeUpTime >= endTime) {
+                currentTime = endTime;
+            } else {
+                currentTime = Math.max(currentTime, nextWakeUpTime);
+                tick();
+            }
+        }
+    }
+
+    @Override
+    public void runUntil(int endTime) throws UnknownClientException, UnknownMessageException {
+        if (endTime >= currentTime) {
+            runFor(endTime - currentTime + 1);
+        }
+    }
+
+    @Override
+    public void tick() throws UnknownClientException, UnknownMessageException {
+        ticking = true;
+        tickingActorId = -1;
+        boolean completed = false;
+        try {
+            WakeUp wakeUp;
+            while ((wakeUp = wakeUps.peek()) != null && wakeUp.time <= currentTime) {
+                wakeUps.poll();
+                Schedule schedule = wakeUp.schedule;
+                if (!isValid(wakeUp)) {
+                    continue;
+                }
+                if (currentTime - 1 > schedule.lastTick) {
+                    schedule.actor.skipIdleTicks(currentTime - 1 - schedule.lastTick);
+                }
+                schedule.lastTick = currentTime;
+                schedule.wakeUpTime = NEVER;
+                tickingActorId = schedule.actor.getId();
+                schedule.actor.tick();
+                schedule(schedule);
+            }
+            completed = true;
+        } finally {
+            finishTick(completed);
+        }
+        currentTime++;
+    }
+
+    @Override
+    void deliver(SimulatedActor receiver, Message message) {
+        Schedule schedule = schedules.get(receiver);
+        if (schedule == null) {
+            // stopped actors still log messages, but never process them
+            receiver.enqueue(message);
+            return;
+        }
+        // the message must not be affected by ticks which passed before it was sent
+        catchUp(schedule);
+        receiver.enqueue(message);
+        schedule(schedule);
+    }
+
+    @Override
+    void synchronize(SimulatedActor actor) {
+        Schedule schedule = schedules.get(actor);
+        if (schedule != null) {
+            catchUp(schedule);
+        }
+    }
+
+    /**
+     * Skips all ticks the actor has missed so far. During a tick, the current tick
+     * is only skipped if the actor has already passed it.
+     *
+     * @param schedule scheduling state of the actor
+     */
+    private void catchUp(Schedule schedule) {
+        boolean passed = ticking && schedule.actor.getId() <= tickingActorId;
+        int target = passed ? currentTime : currentTime - 1;
+        if (target > schedule.lastTick) {
+            schedule.actor.skipIdleTicks(target - schedule.lastTick);
+            schedule.lastTick = target;
+        }
+    }
+
+    /**
+     * Recomputes the wake-up time of the actor and enqueues it, if it changed.
+     *
+     * @param schedule scheduling state of the actor
+     */
+    private void schedule(Schedule schedule) {
+        int idleTicks = schedule.actor.idleTicks();
+        int wakeUpTime = idleTicks >= NEVER - 1 - schedule.lastTick ? NEVER : schedule.lastTick + 1 + idleTicks;
+        if (wakeUpTime != schedule.wakeUpTime) {
+            schedule.wakeUpTime = wakeUpTime;
+            if (wakeUpTime != NEVER) {
+                wakeUps.add(new WakeUp(wakeUpTime, schedule));
+            }
+        }
+    }
+
+    private boolean isValid(WakeUp wakeUp) {
+        Schedule schedule = wakeUp.schedule;
+        return wakeUp.time == schedule.wakeUpTime && schedules.get(schedule.actor) == schedule;
+    }
+
+    /**
+     * @return The time of the next tick in which an actor is scheduled, or NEVER.
+     */
+    private int nextWakeUpTime() {
+        WakeUp wakeUp;
+        while ((wakeUp = wakeUps.peek()) != null && !isValid(wakeUp)) {
+            wakeUps.poll();
+        }
+        return wakeUp == null ? NEVER : wakeUp.time;
+    }
+
+    /**
+     * Removes actors stopped during the tick. If the tick was aborted by an exception,
+     * {@link SimulatedActorSystem} executes the whole tick again in the next run,
+     * so all actors which passed the tick (or were spawned during it) are caught up
+     * and rescheduled for it.
+     *
+     * @param completed false if the tick was aborted by an exception
+     */
+    private void finishTick(boolean completed) {
+        if (completed) {
+            tickingActorId = Long.MAX_VALUE;
+        }
+        for (Schedule schedule : pendingStops) {
+            catchUp(schedule);
+            schedules.remove(schedule.actor, schedule);
+        }
+        pendingStops.clear();
+        if (!completed) {
+            for (Schedule schedule : schedules.values()) {
+                catchUp(schedule);
+                if (schedule.lastTick == currentTime) {
+                    schedule.lastTick = currentTime - 1;
+                    schedule.wakeUpTime = NEVER;
+                    schedule(schedule);
+                }
+            }
+        }
+        ticking = false;
+    }
+}
@@ -0,0 +1,22 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message log keeping all messages in memory.
+ */
+public class FullMessageLog implements IMessageLog {
+
+    private final List<Message> messages = new ArrayList<>();
+
+    @Override
+    public void add(Message message) {
+        messages.add(message);
+    }
+
+    @Override
+    public List<Message> getMessages() {
+        return messages;
+    }
+}
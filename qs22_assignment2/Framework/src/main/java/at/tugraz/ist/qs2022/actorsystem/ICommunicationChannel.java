@@ -26,6 +26,9 @@ public interface ICommunicationChannel {
      * The ticks left for all messages in transit should be decremented,
      * except for those having zero ticks left, those messages should be returned,
      * because they reached their destinations.
+     * <p>
+     * The returned list may be reused by the channel, so it is only valid until
+     * the next call of this method.
      *
      * @return All messages having zero ticks left (upon entering the method).
      */
@@ -0,0 +1,55 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+/**
+ * Interface for message boxes.
+ * <p>
+ * The message box of an actor holds all messages, which have already been delivered
+ * via the channel of the actor, but have not been processed yet. A message box can
+ * have a capacity, messages are dropped according to its overflow policy if it is full.
+ */
+public interface IMailbox {
+
+    /**
+     * Unlimited capacity.
+     */
+    int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * Adds a delivered message, a message is dropped instead if the message box is full.
+     *
+     * @param message Non-null message to add.
+     */
+    void add(Message message);
+
+    /**
+     * @return The oldest message without removing it, or null if the message box is empty.
+     */
+    Message peek();
+
+    /**
+     * Removes the oldest message.
+     *
+     * @return The removed message, or null if the message box is empty.
+     */
+    Message poll();
+
+    /**
+     * @return true if there is no message in the message box.
+     */
+    boolean isEmpty();
+
+    /**
+     * @return Maximum number of messages in the message box, {@link IMailbox#UNBOUNDED} if there is no limit.
+     */
+    int getCapacity();
+
+    /**
+     * @return Policy applied if a message is added to a full message box.
+     */
+    OverflowPolicy getOverflowPolicy();
+
+    /**
+     * @return Number of messages dropped so far, because the message box was full.
+     */
+    long getDroppedCount();
+}
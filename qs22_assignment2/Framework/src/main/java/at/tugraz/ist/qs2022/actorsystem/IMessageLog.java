@@ -0,0 +1,26 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.List;
+
+/**
+ * Interface for message logs.
+ * <p>
+ * Every actor logs the messages sent to it, which is used to alleviate debugging and
+ * testing. Keeping all messages is the default, other implementations keep only some
+ * of them or write them to disk, so that long running systems do not run out of memory.
+ */
+public interface IMessageLog {
+
+    /**
+     * Logs a message sent to the actor.
+     *
+     * @param message Non-null message sent to the actor.
+     */
+    void add(Message message);
+
+    /**
+     * @return The logged messages kept in memory in the order they were sent,
+     * which might only be a part of all messages sent to the actor.
+     */
+    List<Message> getMessages();
+}
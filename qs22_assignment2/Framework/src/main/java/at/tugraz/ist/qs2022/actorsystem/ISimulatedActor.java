@@ -38,7 +38,8 @@ public interface ISimulatedActor {
     /**
      * @return All messages sent to this actor, this includes messages in transit,
      * already processed messages and messages in the <c>messageBox</c>.
-     * It is used to alleviate debugging and testing.
+     * It is used to alleviate debugging and testing. Depending on the message log
+     * of the actor, only a part of the messages might be kept.
      */
     List<Message> getMessageLog();
 
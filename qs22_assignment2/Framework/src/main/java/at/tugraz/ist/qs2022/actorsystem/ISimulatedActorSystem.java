@@ -17,7 +17,8 @@ import java.util.List;
 public interface ISimulatedActorSystem {
 
     /**
-     * @return A list containing all actors, which have been started but not stopped.
+     * @return A new list containing all actors, which have been started but not stopped,
+     * in the order they were started.
      */
     List<SimulatedActor> getActors();
 
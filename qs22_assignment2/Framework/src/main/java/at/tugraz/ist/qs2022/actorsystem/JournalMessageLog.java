@@ -0,0 +1,194 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message log which appends messages to a journal file instead of keeping them in memory.
+ * <p>
+ * Messages are not required to be serializable, so the journal stores the type and the
+ * field values of every message as text, actors are replaced by their ID. Each message type
+ * is described once, when it is logged for the first time, later entries only refer to it
+ * by number. The journal can be read back with {@link JournalMessageLog#readJournal()}.
+ * <p>
+ * Entries are buffered, so the log must be closed once it is not used anymore. The log of an
+ * actor is closed by the actor system when the actor is stopped, messages sent to it afterwards
+ * are not logged. Errors writing the journal are thrown as {@link UncheckedIOException}.
+ */
+public class JournalMessageLog implements IMessageLog, Closeable {
+
+    private final File file;
+
+    private final DataOutputStream out;
+
+    /**
+     * message types written to the journal so far, with their number
+     */
+    private final Map<Class<?>, MessageType> types = new HashMap<>();
+
+    private boolean closed = false;
+
+    /**
+     * Constructs a new JournalMessageLog object, an existing journal file is overwritten.
+     *
+     * @param file The journal file.
+     */
+    public JournalMessageLog(File file) {
+        this.file = file;
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void add(Message message) {
+        if (closed) {
+            return;
+        }
+        try {
+            MessageType type = types.get(message.getClass());
+            if (type == null) {
+                type = new MessageType(types.size(), message.getClass());
+                types.put(message.getClass(), type);
+                out.writeInt(type.number);
+                out.writeUTF(type.name);
+                out.writeInt(type.fields.size());
+                for (Field field : type.fields) {
+                    out.writeUTF(field.getName());
+                }
+            } else {
+                out.writeInt(type.number);
+            }
+            for (Field field : type.fields) {
+                writeString(valueOf(field.get(message)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Messages are only written to the journal, use {@link JournalMessageLog#readJournal()} instead.
+     *
+     * @return An empty list.
+     */
+    @Override
+    public List<Message> getMessages() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reads all messages logged so far back from the journal.
+     *
+     * @return One entry for each message in the order they were sent,
+     * in the form <c>Type{field=value, ...}</c>.
+     * @throws IOException if the journal cannot be read.
+     */
+    public List<String> readJournal() throws IOException {
+        if (!closed) {
+            out.flush();
+        }
+        List<String> messages = new ArrayList<>();
+        List<String> typeNames = new ArrayList<>();
+        List<String[]> fieldNames = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int number;
+                try {
+                    number = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (number == typeNames.size()) {
+                    typeNames.add(in.readUTF());
+                    String[] names = new String[in.readInt()];
+                    for (int i = 0; i < names.length; i++) {
+                        names[i] = in.readUTF();
+                    }
+                    fieldNames.add(names);
+                }
+                StringBuilder message = new StringBuilder(typeNames.get(number)).append('{');
+                String[] names = fieldNames.get(number);
+                for (int i = 0; i < names.length; i++) {
+                    byte[] value = new byte[in.readInt()];
+                    in.readFully(value);
+                    message.append(i == 0 ? "" : ", ").append(names[i]).append('=')
+                            .append(new String(value, StandardCharsets.UTF_8));
+                }
+                messages.add(message.append('}').toString());
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String valueOf(Object value) {
+        if (value instanceof SimulatedActor) {
+            return "actor " + ((SimulatedActor) value).getId();
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Message type described in the journal.
+     */
+    private static class MessageType {
+        final int number;
+        final String name;
+
+        /**
+         * all instance fields, including inherited ones
+         */
+        final List<Field> fields = new ArrayList<>();
+
+        MessageType(int number, Class<?> type) {
+            this.number = number;
+            this.name = type.getSimpleName();
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                List<Field> declared = new ArrayList<>();
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                        field.setAccessible(true);
+                        declared.add(field);
+                    }
+                }
+                // fields of super classes first
+                fields.addAll(0, declared);
+            }
+        }
+    }
+}
@@ -16,4 +16,15 @@ public interface Message {
      * @return Number of ticks it takes to process this message.
      */
     int getDuration();
+
+    /**
+     * Small integer identifying the class of this message, used to look up handlers
+     * in a {@link MessageHandlerTable} without testing the message against every type.
+     *
+     * @return Type ID of the class of this message.
+     * @see MessageTypes#typeIdOf(Class)
+     */
+    default int getTypeId() {
+        return MessageTypes.typeIdOf(getClass());
+    }
 }
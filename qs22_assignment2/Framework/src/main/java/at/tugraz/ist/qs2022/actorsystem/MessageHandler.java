@@ -0,0 +1,21 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import at.tugraz.ist.qs2022.messageboard.UnknownClientException;
+import at.tugraz.ist.qs2022.messageboard.UnknownMessageException;
+
+/**
+ * Handler processing messages of one type, registered in a {@link MessageHandlerTable}.
+ *
+ * @param <M> type of the handled messages
+ */
+@FunctionalInterface
+public interface MessageHandler<M extends Message> {
+
+    /**
+     * Processes the message, like {@link ISimulatedActor#receive(Message)} does.
+     *
+     * @param message Non-null message of the type the handler is registered for.
+     * @throws UnknownClientException thrown if client is not known
+     */
+    void handle(M message) throws UnknownClientException, UnknownMessageException;
+}
@@ -0,0 +1,91 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import at.tugraz.ist.qs2022.messageboard.UnknownClientException;
+import at.tugraz.ist.qs2022.messageboard.UnknownMessageException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Table of message handlers indexed by {@link Message#getTypeId()}, which finds the handler
+ * of a message in constant time, no matter how many message types are handled.
+ * <p>
+ * A handler registered for a type also handles subtypes of it. If several registered types
+ * match a message, the handler registered first is used, just like in a chain of
+ * <c>instanceof</c> checks. The handler found for a message class is remembered in the table,
+ * so the registered types are only searched the first time a class is dispatched.
+ * A table must not be used by several threads at the same time.
+ */
+public class MessageHandlerTable {
+
+    /**
+     * marks message types without a handler in <c>handlersByTypeId</c>
+     */
+    private static final MessageHandler<Message> NO_HANDLER = message -> {
+    };
+
+    private final List<Class<? extends Message>> types = new ArrayList<>();
+
+    private final List<MessageHandler<? extends Message>> handlers = new ArrayList<>();
+
+    /**
+     * handler for each message type ID seen so far, null if the type has not been dispatched yet
+     */
+    private MessageHandler<?>[] handlersByTypeId = new MessageHandler<?>[16];
+
+    /**
+     * Registers a handler for messages of the given type and its subtypes.
+     *
+     * @param type    type of the messages
+     * @param handler handler processing the messages
+     * @param <M>     type of the messages
+     */
+    public <M extends Message> void register(Class<M> type, MessageHandler<? super M> handler) {
+        types.add(type);
+        handlers.add(handler);
+        // handlers found before might be superseded by the new one
+        Arrays.fill(handlersByTypeId, null);
+    }
+
+    /**
+     * Passes the message to the handler registered for its type.
+     *
+     * @param message Non-null message to be processed
+     * @return true if a handler was registered for the message, false if it was ignored
+     * @throws UnknownClientException thrown if client is not known
+     */
+    @SuppressWarnings("unchecked")
+    public boolean dispatch(Message message) throws UnknownClientException, UnknownMessageException {
+        int typeId = message.getTypeId();
+        MessageHandler<Message> handler = typeId < handlersByTypeId.length
+                ? (MessageHandler<Message>) handlersByTypeId[typeId] : null;
+        if (handler == null) {
+            handler = find(message.getClass(), typeId);
+        }
+        if (handler == NO_HANDLER) {
+            return false;
+        }
+        handler.handle(message);
+        return true;
+    }
+
+    /**
+     * Looks up the handler of the given message class and remembers it.
+     */
+    @SuppressWarnings("unchecked")
+    private MessageHandler<Message> find(Class<?> messageClass, int typeId) {
+        MessageHandler<Message> handler = NO_HANDLER;
+        for (int i = 0; i < types.size(); i++) {
+            if (types.get(i).isAssignableFrom(messageClass)) {
+                handler = (MessageHandler<Message>) handlers.get(i);
+                break;
+            }
+        }
+        if (typeId >= handlersByTypeId.length) {
+            handlersByTypeId = Arrays.copyOf(handlersByTypeId, Math.max(typeId + 1, 2 * handlersByTypeId.length));
+        }
+        handlersByTypeId[typeId] = handler;
+        return handler;
+    }
+}
@@ -19,18 +19,7 @@ public class MessageInDelivery {
         return message;
     }
 
-    /**
-     * Check if message already arrived at its destination.
-     * If not, reduce number of remaining ticks.
-     *
-     * @return True if message arrived at its destination, false if not.
-     */
-    boolean tick() {
-        if (this.remainingTicks == 0) {
-            return true;
-        } else {
-            this.remainingTicks--;
-            return false;
-        }
+    int getRemainingTicks() {
+        return remainingTicks;
     }
 }
@@ -0,0 +1,30 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns small, consecutive integer IDs to message classes, in the order in which the
+ * classes are first used. IDs are only valid while the program runs and must not be stored.
+ */
+public final class MessageTypes {
+
+    private static final AtomicInteger nextTypeId = new AtomicInteger();
+
+    private static final ClassValue<Integer> typeIds = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return nextTypeId.getAndIncrement();
+        }
+    };
+
+    private MessageTypes() {
+    }
+
+    /**
+     * @param type message class
+     * @return the type ID of the class
+     */
+    public static int typeIdOf(Class<? extends Message> type) {
+        return typeIds.get(type);
+    }
+}
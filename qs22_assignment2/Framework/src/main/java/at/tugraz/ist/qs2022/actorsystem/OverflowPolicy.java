@@ -0,0 +1,16 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+/**
+ * Defines what happens if a message is delivered to a full message box.
+ */
+public enum OverflowPolicy {
+    /**
+     * the delivered message is dropped
+     */
+    DROP_NEWEST,
+
+    /**
+     * the oldest message in the message box is dropped to make room for the delivered message
+     */
+    DROP_OLDEST
+}
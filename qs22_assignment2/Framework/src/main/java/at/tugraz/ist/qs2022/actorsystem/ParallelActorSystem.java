@@ -0,0 +1,250 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import at.tugraz.ist.qs2022.messageboard.UnknownClientException;
+import at.tugraz.ist.qs2022.messageboard.UnknownMessageException;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Actor system which ticks actors concurrently on a {@link ForkJoinPool}, while producing
+ * exactly the same results as {@link SimulatedActorSystem}.
+ * <p>
+ * Within one tick, an actor can only be influenced by another actor, if the other actor
+ * sends a message to it, which arrives in the same tick. This is only possible via channels
+ * without delay, all other channels provide a lookahead of at least one tick. So all actors
+ * whose channel has a minimum delay of at least one are ticked concurrently first, while
+ * everything they do to the system (sending messages, spawning and stopping actors) is
+ * recorded. Afterwards, all actors are visited in the usual order: the recorded effects are
+ * applied and the remaining actors are ticked. Messages sent to an actor which has already
+ * been ticked concurrently, but would have been ticked after the sender, are sent as if
+ * they had been sent before that tick.
+ * <p>
+ * Actors ticked concurrently must not share mutable state and must not use actors they
+ * spawn before the end of the tick, as spawning takes effect when the effects are applied.
+ * Ticks with fewer concurrently tickable actors than the threshold are executed sequentially.
+ * <p>
+ * If an actor throws an exception, the tick is executed again in the next run, like in
+ * {@link SimulatedActorSystem}. Actors after it, which have already been ticked concurrently,
+ * keep their results for that run instead of being ticked again, so changes they made to
+ * their own state may already be visible in between.
+ */
+public class ParallelActorSystem extends SimulatedActorSystem {
+
+    /**
+     * default minimum number of actors to tick concurrently
+     */
+    public static final int DEFAULT_PARALLELISM_THRESHOLD = 1024;
+
+    /**
+     * number of actors ticked by one task of the pool
+     */
+    private static final int ACTORS_PER_TASK = 64;
+
+    private final ForkJoinPool pool;
+
+    private final int parallelismThreshold;
+
+    /**
+     * Effects recorded for the actor ticked by the current thread, null if the
+     * current thread is not ticking an actor concurrently.
+     */
+    private final ThreadLocal<Effects> recording = new ThreadLocal<>();
+
+    /**
+     * Effects of actors which have been ticked concurrently in the current tick,
+     * but which have not been applied yet.
+     */
+    private final Map<SimulatedActor, Effects> results = new IdentityHashMap<>();
+
+    /**
+     * Constructs a new ParallelActorSystem using the common pool and the default threshold.
+     */
+    public ParallelActorSystem() {
+        this(ForkJoinPool.commonPool(), DEFAULT_PARALLELISM_THRESHOLD);
+    }
+
+    /**
+     * Constructs a new ParallelActorSystem using the common pool.
+     *
+     * @param parallelismThreshold minimum number of actors to tick concurrently
+     */
+    public ParallelActorSystem(int parallelismThreshold) {
+        this(ForkJoinPool.commonPool(), parallelismThreshold);
+    }
+
+    /**
+     * Constructs a new ParallelActorSystem.
+     *
+     * @param pool                 pool used to tick actors
+     * @param parallelismThreshold minimum number of actors to tick concurrently
+     */
+    public ParallelActorSystem(ForkJoinPool pool, int parallelismThreshold) {
+        this.pool = pool;
+        this.parallelismThreshold = parallelismThreshold;
+    }
+
+    @Override
+    public void spawn(SimulatedActor actor) {
+        Effects effects = recording.get();
+        if (effects != null) {
+            effects.add(Effect.SPAWN, actor, null);
+        } else {
+            super.spawn(actor);
+        }
+    }
+
+    @Override
+    public void stop(SimulatedActor actor) {
+        Effects effects = recording.get();
+        if (effects != null) {
+            effects.add(Effect.STOP, actor, null);
+        } else {
+            super.stop(actor);
+        }
+    }
+
+    @Override
+    public void tick() throws UnknownClientException, UnknownMessageException {
+        // getActors() returns a snapshot, so actors spawned or stopped during the tick do not change it
+        List<SimulatedActor> currentlyAliveActors = getActors();
+        List<SimulatedActor> concurrentActors = new ArrayList<>();
+        for (SimulatedActor actor : currentlyAliveActors) {
+            if (!results.containsKey(actor) && actor.channel.getMinimumDelay() > 0) {
+                concurrentActors.add(actor);
+            }
+        }
+        if (results.isEmpty() && concurrentActors.size() < parallelismThreshold) {
+            super.tick();
+            return;
+        }
+
+        Effects[] concurrentEffects = new Effects[concurrentActors.size()];
+        pool.invoke(new TickTask(concurrentActors, concurrentEffects, 0, concurrentActors.size()));
+        for (int i = 0; i < concurrentEffects.length; i++) {
+            results.put(concurrentActors.get(i), concurrentEffects[i]);
+        }
+
+        // if an exception is thrown, SimulatedActorSystem executes the whole tick again in
+        // the next run, actors which have been ticked concurrently keep their results until then
+        for (SimulatedActor actor : currentlyAliveActors) {
+            Effects effects = results.remove(actor);
+            if (effects != null) {
+                effects.apply();
+            } else {
+                actor.tick();
+            }
+        }
+        results.clear();
+        currentTime++;
+    }
+
+    @Override
+    void deliver(SimulatedActor receiver, Message message) {
+        Effects effects = recording.get();
+        if (effects != null) {
+            effects.add(Effect.SEND, receiver, message);
+        } else if (results.containsKey(receiver)) {
+            // the receiver has been ticked concurrently, but not yet in the sequential order
+            receiver.enqueueAsOfLastTick(message);
+        } else {
+            receiver.enqueue(message);
+        }
+    }
+
+    /**
+     * Something an actor did to the system while it was ticked concurrently.
+     */
+    private static class Effect {
+        static final int SEND = 0;
+        static final int SPAWN = 1;
+        static final int STOP = 2;
+
+        final int type;
+        final SimulatedActor actor;
+        final Message message;
+
+        Effect(int type, SimulatedActor actor, Message message) {
+            this.type = type;
+            this.actor = actor;
+            this.message = message;
+        }
+    }
+
+    /**
+     * All effects of one concurrently ticked actor in the order they happened,
+     * followed by the exception thrown by the actor, if any.
+     */
+    private class Effects {
+        private final List<Effect> effects = new ArrayList<>();
+
+        private Exception exception = null;
+
+        void add(int type, SimulatedActor actor, Message message) {
+            effects.add(new Effect(type, actor, message));
+        }
+
+        void apply() throws UnknownClientException, UnknownMessageException {
+            for (Effect effect : effects) {
+                if (effect.type == Effect.SEND) {
+                    deliver(effect.actor, effect.message);
+                } else if (effect.type == Effect.SPAWN) {
+                    spawn(effect.actor);
+                } else {
+                    stop(effect.actor);
+                }
+            }
+            if (exception instanceof UnknownClientException) {
+                throw (UnknownClientException) exception;
+            } else if (exception instanceof UnknownMessageException) {
+                throw (UnknownMessageException) exception;
+            } else if (exception != null) {
+                throw (RuntimeException) exception;
+            }
+        }
+    }
+
+    /**
+     * Task ticking a range of actors and recording their effects.
+     */
+    private class TickTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<SimulatedActor> actors;
+        private final Effects[] effects;
+        private final int from;
+        private final int to;
+
+        TickTask(List<SimulatedActor> actors, Effects[] effects, int from, int to) {
+            this.actors = actors;
+            this.effects = effects;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ACTORS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TickTask(actors, effects, from, middle), new TickTask(actors, effects, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Effects actorEffects = new Effects();
+                recording.set(actorEffects);
+                try {
+                    actors.get(i).tick();
+                } catch (UnknownClientException | UnknownMessageException | RuntimeException e) {
+                    actorEffects.exception = e;
+                } finally {
+                    recording.remove();
+                }
+                effects[i] = actorEffects;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message log keeping only the most recent messages in a buffer of fixed size.
+ */
+public class RingBufferMessageLog implements IMessageLog {
+
+    private final Message[] buffer;
+
+    /**
+     * index of the oldest message in the buffer
+     */
+    private int first = 0;
+
+    /**
+     * number of messages in the buffer
+     */
+    private int size = 0;
+
+    /**
+     * Constructs a new RingBufferMessageLog object.
+     *
+     * @param capacity Maximum number of messages to keep, must be positive.
+     */
+    public RingBufferMessageLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.buffer = new Message[capacity];
+    }
+
+    @Override
+    public void add(Message message) {
+        if (size < buffer.length) {
+            buffer[(first + size++) % buffer.length] = message;
+        } else {
+            // overwrite the oldest message
+            buffer[first] = message;
+            first = (first + 1) % buffer.length;
+        }
+    }
+
+    /**
+     * @return A copy of the most recent messages, the oldest one first.
+     */
+    @Override
+    public List<Message> getMessages() {
+        List<Message> messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            messages.add(buffer[(first + i) % buffer.length]);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,51 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message log keeping only every n-th message, starting with the first one.
+ */
+public class SamplingMessageLog implements IMessageLog {
+
+    private final int interval;
+
+    private final List<Message> messages = new ArrayList<>();
+
+    /**
+     * number of messages sent to the actor so far
+     */
+    private long count = 0;
+
+    /**
+     * Constructs a new SamplingMessageLog object.
+     *
+     * @param interval Number of messages per kept message, must be positive.
+     */
+    public SamplingMessageLog(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.interval = interval;
+    }
+
+    @Override
+    public void add(Message message) {
+        if (count++ % interval == 0) {
+            messages.add(message);
+        }
+    }
+
+    @Override
+    public List<Message> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * @return Number of messages sent to the actor, including those which were not kept.
+     */
+    public long getCount() {
+        return count;
+    }
+}
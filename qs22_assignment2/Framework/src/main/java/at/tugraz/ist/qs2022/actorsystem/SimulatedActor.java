@@ -3,10 +3,7 @@ package at.tugraz.ist.qs2022.actorsystem;
 import at.tugraz.ist.qs2022.messageboard.UnknownClientException;
 import at.tugraz.ist.qs2022.messageboard.UnknownMessageException;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 
 public abstract class SimulatedActor implements ISimulatedActor {
 
@@ -36,16 +33,24 @@ public abstract class SimulatedActor implements ISimulatedActor {
 
     /**
      * All messages, that have already been sent via <c>channel</c>,
-     * but have not been processed yet.
+     * but have not been processed yet. Actors can choose a message box
+     * with limited capacity.
      */
-    private Queue<Message> messageBox = new LinkedList<>();
+    protected IMailbox messageBox = new ArrayMailbox();
 
     /**
-     * All messages sent to this actor, this includes messages in transit,
+     * If set, all messages in the <c>messageBox</c> are processed in the tick in which they are
+     * delivered, without taking any time, e.g. by an actor which only forwards messages to others.
+     */
+    protected boolean processMessagesImmediately = false;
+
+    /**
+     * Log of the messages sent to this actor, this includes messages in transit,
      * already processed messages and messages in the <c>messageBox</c>.
-     * It is used to alleviate debugging and testing.
+     * It is used to alleviate debugging and testing. By default all messages are kept,
+     * actors and systems can choose other logs, e.g. to limit memory usage.
      */
-    private List<Message> messageLog = new ArrayList<>();
+    protected IMessageLog messageLog = new FullMessageLog();
 
     /**
      * Time since the system was started.
@@ -57,6 +62,24 @@ public abstract class SimulatedActor implements ISimulatedActor {
      */
     int timeSinceSystemStart = -1;
 
+    /**
+     * The system which spawned this actor, null if the actor has not been spawned yet.
+     * All messages sent to this actor are passed through the system, so that it can
+     * keep track of actors which have work to do.
+     */
+    SimulatedActorSystem host = null;
+
+    /**
+     * Slot of this actor in the registry of the system, {@link ActorRegistry#NONE} if it is not running.
+     */
+    int registrySlot = ActorRegistry.NONE;
+
+    /**
+     * Handlers registered by the actor using {@link SimulatedActor#registerHandler(Class, MessageHandler)},
+     * null until the first handler is registered, as many actors do not use handlers.
+     */
+    private MessageHandlerTable handlers = null;
+
     @Override
     public long getId() {
         return this.id;
@@ -69,11 +92,54 @@ public abstract class SimulatedActor implements ISimulatedActor {
 
     @Override
     public List<Message> getMessageLog() {
-        return this.messageLog;
+        return this.messageLog.getMessages();
+    }
+
+    /**
+     * Replaces the message log, messages kept by the old log are added to the new log.
+     *
+     * @param messageLog Empty log used from now on.
+     */
+    void replaceMessageLog(IMessageLog messageLog) {
+        for (Message message : this.messageLog.getMessages()) {
+            messageLog.add(message);
+        }
+        this.messageLog = messageLog;
+    }
+
+    /**
+     * Registers a handler for messages of the given type and its subtypes, to which
+     * {@link SimulatedActor#dispatch(Message)} passes them. Actors usually register
+     * their handlers in the constructor.
+     *
+     * @param type    type of the messages
+     * @param handler handler processing the messages
+     * @param <M>     type of the messages
+     */
+    protected <M extends Message> void registerHandler(Class<M> type, MessageHandler<? super M> handler) {
+        if (handlers == null) {
+            handlers = new MessageHandlerTable();
+        }
+        handlers.register(type, handler);
+    }
+
+    /**
+     * Passes the message to the handler registered for its type, so that
+     * {@link ISimulatedActor#receive(Message)} does not need to test the message against every type.
+     *
+     * @param message Non-null message received
+     * @return true if a handler was registered for the message, false if it was ignored
+     * @throws UnknownClientException thrown if client is not known
+     */
+    protected boolean dispatch(Message message) throws UnknownClientException, UnknownMessageException {
+        return handlers != null && handlers.dispatch(message);
     }
 
     @Override
     public int getTimeSinceSystemStart() {
+        if (host != null) {
+            host.synchronize(this);
+        }
         return this.timeSinceSystemStart;
     }
 
@@ -84,15 +150,50 @@ public abstract class SimulatedActor implements ISimulatedActor {
 
     @Override
     public void tell(Message message) {
+        if (host != null) {
+            host.deliver(this, message);
+        } else {
+            enqueue(message);
+        }
+    }
+
+    /**
+     * Sends the message via <c>channel</c> and logs it.
+     *
+     * @param message Non-null message to be sent.
+     */
+    void enqueue(Message message) {
         channel.send(message);
         messageLog.add(message);
     }
 
+    /**
+     * Sends the message via <c>channel</c> as if it had been sent before the last
+     * tick of this actor and logs it.
+     *
+     * @param message Non-null message to be sent.
+     * @see CommunicationChannel#sendAsOfLastTick(Message)
+     */
+    void enqueueAsOfLastTick(Message message) {
+        channel.sendAsOfLastTick(message);
+        messageLog.add(message);
+    }
+
     @Override
     public void tick() throws UnknownClientException, UnknownMessageException {
         timeSinceSystemStart++;
         List<Message> newlyDelivered = channel.tick();
-        messageBox.addAll(newlyDelivered);
+        for (Message message : newlyDelivered) {
+            messageBox.add(message);
+        }
+
+        if (processMessagesImmediately) {
+            Message message;
+            while ((message = messageBox.poll()) != null) {
+                receive(message);
+            }
+            return;
+        }
 
         if (busyFor > 0) {
             busyFor--;
@@ -108,8 +209,10 @@ public abstract class SimulatedActor implements ISimulatedActor {
             messageToProcess = activeMessage;
             activeMessage = null;
         } else if (!messageBox.isEmpty()) {
-            activeMessage = messageBox.remove();
-            busyFor = activeMessage.getDuration();
+            activeMessage = messageBox.poll();
+            if (activeMessage != null) {
+                busyFor = activeMessage.getDuration();
+            }
         }
         // might throw an exception, but all the other code should still be executed,
         // but not in a finally block
@@ -119,6 +222,42 @@ public abstract class SimulatedActor implements ISimulatedActor {
         }
     }
 
+    /**
+     * Number of upcoming calls to {@link ISimulatedActor#tick()}, which are guaranteed to
+     * do nothing except for advancing the time of this actor, i.e. which neither deliver
+     * a message, nor take a message from the <c>messageBox</c>, nor call
+     * {@link ISimulatedActor#receive(Message)}. Schedulers use it to skip idle actors.
+     * <p>
+     * Actors overriding {@link ISimulatedActor#tick()} with logic depending on the
+     * passing of time must override this method as well.
+     *
+     * @return Number of idle ticks, {@link Integer#MAX_VALUE} if the actor is idle
+     * until a new message is sent to it.
+     */
+    protected int idleTicks() {
+        if (activeMessage != null) {
+            return Math.min(busyFor, channel.ticksUntilNextDelivery());
+        }
+        if (!messageBox.isEmpty()) {
+            return 0;
+        }
+        return channel.ticksUntilNextDelivery();
+    }
+
+    /**
+     * Has the same effect as calling {@link ISimulatedActor#tick()} the given number
+     * of times, provided that the actor is idle during these ticks.
+     *
+     * @param ticks Number of ticks to skip, at most {@link SimulatedActor#idleTicks()}.
+     */
+    void skipIdleTicks(int ticks) {
+        timeSinceSystemStart += ticks;
+        channel.skip(ticks);
+        if (activeMessage != null) {
+            busyFor -= ticks;
+        }
+    }
+
     /**
      * Default implementation of {@link ISimulatedActor#atStartUp()} doing nothing.
      */
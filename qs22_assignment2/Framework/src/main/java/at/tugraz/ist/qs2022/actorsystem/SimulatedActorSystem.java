@@ -3,21 +3,40 @@ package at.tugraz.ist.qs2022.actorsystem;
 import at.tugraz.ist.qs2022.messageboard.UnknownClientException;
 import at.tugraz.ist.qs2022.messageboard.UnknownMessageException;
 
-import java.util.ArrayList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.function.Function;
 
 public class SimulatedActorSystem implements ISimulatedActorSystem {
-    private List<SimulatedActor> actors = new ArrayList<>();
-    private int currentTime = 0;
+    /**
+     * all actors, which have been started but not stopped
+     */
+    private final ActorRegistry actors = new ActorRegistry();
+    protected int currentTime = 0;
 
     /**
      * integral number used for creating actor IDs, which is incremented every time an actor is started.
      */
     private long currentActorId = 0;
 
+    /**
+     * creates the message logs of spawned actors, null if actors keep their own logs
+     */
+    private Function<SimulatedActor, IMessageLog> messageLogPolicy = null;
+
     @Override
     public List<SimulatedActor> getActors() {
-        return this.actors;
+        return this.actors.toList();
+    }
+
+    /**
+     * @param id ID of an actor
+     * @return The actor with the given ID, which has been started but not stopped, or null.
+     */
+    public SimulatedActor getActor(long id) {
+        return actors.get(id);
     }
 
     @Override
@@ -27,8 +46,10 @@ public class SimulatedActorSystem implements ISimulatedActorSystem {
 
     @Override
     public void spawn(SimulatedActor actor) {
-        actors.add(actor);
+        actor.host = this;
         actor.setId(currentActorId++);
+        actors.add(actor);
+        initMessageLog(actor);
         actor.atStartUp();
         actor.setTimeSinceSystemStart(currentTime);
     }
@@ -50,16 +71,75 @@ public class SimulatedActorSystem implements ISimulatedActorSystem {
     @Override
     public void stop(SimulatedActor actor) {
         actors.remove(actor);
+        // logs created by the message log policy may hold a file, which nobody else closes
+        if (actor.messageLog instanceof Closeable) {
+            try {
+                ((Closeable) actor.messageLog).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
     @Override
     public void tick() throws UnknownClientException, UnknownMessageException {
-        // need to copy list, because actors might be spawned or stopped
-        // during tick which modifies the actors-list
-        List<SimulatedActor> currentlyAliveActors = new ArrayList<>(actors);
-        for (SimulatedActor actor : currentlyAliveActors) {
-            actor.tick();
+        // actors spawned during the tick are added after the last one and ticked in the next tick,
+        // actors stopped during the tick are still ticked and removed when the tick is finished
+        int lastSlot = actors.lastSlot();
+        int slot = actors.beginIteration();
+        try {
+            while (slot != ActorRegistry.NONE) {
+                actors.actorAt(slot).tick();
+                slot = slot == lastSlot ? ActorRegistry.NONE : actors.nextSlot(slot);
+            }
+        } finally {
+            actors.endIteration();
         }
         currentTime++;
     }
+
+    /**
+     * Sets the message log policy, which is applied to all actors spawned from now on,
+     * including actors spawned by other actors. The policy is called after the actor got
+     * its ID and before {@link ISimulatedActor#atStartUp()}, messages kept by the log
+     * of the actor so far are added to the new log. Logs which are {@link Closeable}
+     * are closed when their actor is stopped.
+     *
+     * @param messageLogPolicy creates the message log of an actor, or null if actors
+     *                         should keep their own logs (which is the default).
+     */
+    public void setMessageLogPolicy(Function<SimulatedActor, IMessageLog> messageLogPolicy) {
+        this.messageLogPolicy = messageLogPolicy;
+    }
+
+    /**
+     * Called while an actor is spawned to apply the message log policy.
+     *
+     * @param actor The actor which is spawned.
+     */
+    void initMessageLog(SimulatedActor actor) {
+        if (messageLogPolicy != null) {
+            actor.replaceMessageLog(messageLogPolicy.apply(actor));
+        }
+    }
+
+    /**
+     * Called by {@link SimulatedActor#tell(Message)} to pass a message to the receiver.
+     * The default implementation sends the message via the channel of the receiver.
+     *
+     * @param receiver The actor which receives the message.
+     * @param message  Non-null message to be sent.
+     */
+    void deliver(SimulatedActor receiver, Message message) {
+        receiver.enqueue(message);
+    }
+
+    /**
+     * Called before the time of an actor is read, so that systems, which do not tick
+     * all actors, can bring the actor up to date. The default implementation does nothing.
+     *
+     * @param actor The actor whose time is read.
+     */
+    void synchronize(SimulatedActor actor) {
+    }
 }
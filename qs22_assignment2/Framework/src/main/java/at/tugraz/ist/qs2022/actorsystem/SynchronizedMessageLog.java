@@ -0,0 +1,41 @@
+package at.tugraz.ist.qs2022.actorsystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message log which can be used by several threads, by locking another log.
+ */
+class SynchronizedMessageLog implements IMessageLog, Closeable {
+
+    private final IMessageLog log;
+
+    SynchronizedMessageLog(IMessageLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public synchronized void add(Message message) {
+        log.add(message);
+    }
+
+    /**
+     * @return A copy of the messages kept by the other log.
+     */
+    @Override
+    public synchronized List<Message> getMessages() {
+        return new ArrayList<>(log.getMessages());
+    }
+
+    /**
+     * Closes the other log, if it can be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (log instanceof Closeable) {
+            ((Closeable) log).close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.BiConsumer;
+
+/**
+ * Reports of users and the users banned because of them, using the IDs of the {@link UserIds} of a store.
+ * <p>
+ * Banned users are kept in a bit set, so checking a user is a single bit lookup once the
+ * name is mapped to its ID. The number of reports of each user stops growing at the threshold,
+ * when the user is banned. To refuse a second report of the same user by the same reporter,
+ * every report is kept as a pair of IDs packed into a long, in a hash table with open
+ * addressing, which needs 8 to 16 bytes per report and no allocation when a report is refused.
+ */
+final class BanState {
+
+    private static final long EMPTY = -1;
+
+    private final int threshold;
+
+    private final UserIds userIds;
+
+    private final BitSet banned = new BitSet();
+
+    /**
+     * number of reports by user ID, at most the threshold
+     */
+    private byte[] reportCounts = new byte[64];
+
+    /**
+     * reporter ID in the upper and reported ID in the lower half, {@link BanState#EMPTY} for empty slots
+     */
+    private long[] reports = newTable(16);
+
+    private int size = 0;
+
+    /**
+     * @param threshold number of reports at which a user is banned, from 1 to 127
+     * @param userIds   the table of the user IDs
+     */
+    BanState(int threshold, UserIds userIds) {
+        if (threshold < 1 || threshold > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("threshold must be between 1 and 127");
+        this.threshold = threshold;
+        this.userIds = userIds;
+    }
+
+    boolean isBanned(String clientName) {
+        int id = userIds.lookup(clientName);
+        return id != UserIds.UNKNOWN && banned.get(id);
+    }
+
+    /**
+     * @param clientName         the name of the reporter
+     * @param reportedClientName the name of the reported user
+     * @return true if the report was added, false if the reporter already reported the user
+     */
+    boolean addReport(String clientName, String reportedClientName) {
+        int reportedId = userIds.idOf(reportedClientName);
+        long report = ((long) userIds.idOf(clientName) << 32) | reportedId;
+        int slot = slotOf(reports, report);
+        if (reports[slot] == report) {
+            return false;
+        }
+        reports[slot] = report;
+        if (++size * 2 > reports.length) {
+            grow();
+        }
+        if (reportedId >= reportCounts.length) {
+            reportCounts = Arrays.copyOf(reportCounts, Math.max(reportedId + 1, 2 * reportCounts.length));
+        }
+        if (reportCounts[reportedId] < threshold && ++reportCounts[reportedId] == threshold) {
+            banned.set(reportedId);
+        }
+        return true;
+    }
+
+    /**
+     * @return a copy of the reports and bans, which is not changed by later reports
+     */
+    BanState copy() {
+        BanState copy = new BanState(threshold, userIds);
+        copy.banned.or(banned);
+        copy.reportCounts = reportCounts.clone();
+        copy.reports = reports.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * @return the number of reports
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Passes the name of each reporter with the name of the reported user to the consumer.
+     */
+    void forEachReport(BiConsumer<String, String> consumer) {
+        for (long report : reports) {
+            if (report != EMPTY) {
+                consumer.accept(userIds.nameOf((int) (report >>> 32)), userIds.nameOf((int) report));
+            }
+        }
+    }
+
+    private static long[] newTable(int length) {
+        long[] table = new long[length];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    /**
+     * @return the slot of the report, or the empty slot at which it would be inserted
+     */
+    private static int slotOf(long[] table, long report) {
+        long hash = report * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & (table.length - 1);
+        while (table[slot] != EMPTY && table[slot] != report) {
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] table = newTable(2 * reports.length);
+        for (long report : reports) {
+            if (report != EMPTY) {
+                table[slotOf(table, report)] = report;
+            }
+        }
+        reports = table;
+    }
+}
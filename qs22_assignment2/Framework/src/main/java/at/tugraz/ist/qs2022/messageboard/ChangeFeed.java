@@ -0,0 +1,27 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.actorsystem.Message;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Message with changes a {@link MessageStore} ships to its replicas, in the order they were made.
+ * All replicas receive the same message, so it must not be modified.
+ */
+final class ChangeFeed implements Message {
+
+    /**
+     * the changes, each applies itself to the store it is passed
+     */
+    final List<Consumer<WriteAheadLog.Changes>> changes;
+
+    ChangeFeed(List<Consumer<WriteAheadLog.Changes>> changes) {
+        this.changes = changes;
+    }
+
+    @Override
+    public int getDuration() {
+        return 1;
+    }
+}
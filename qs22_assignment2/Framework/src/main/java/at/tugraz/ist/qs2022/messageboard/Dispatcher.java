@@ -1,6 +1,7 @@
 package at.tugraz.ist.qs2022.messageboard;
 
 import at.tugraz.ist.qs2022.actorsystem.Message;
+import at.tugraz.ist.qs2022.actorsystem.MessageHandlerTable;
 import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
 import at.tugraz.ist.qs2022.actorsystem.SimulatedActorSystem;
 import at.tugraz.ist.qs2022.messageboard.clientmessages.InitCommunication;
@@ -55,15 +56,128 @@ public class Dispatcher extends SimulatedActor {
 
     /**
      * message store, which is used by workers to persist application data.
+     * If the store is sharded, this is the first shard.
      */
     protected MessageStore messageStore;
 
+    /**
+     * number of message store shards
+     */
+    private int numberOfStoreShards;
+
+    /**
+     * all message store shards, only the message store if it is not sharded
+     */
+    private List<MessageStore> storeShards;
+
+    /**
+     * router in front of the message store shards, null if the store is not sharded
+     */
+    private MessageStoreRouter storeRouter;
+
+    /**
+     * number of read replicas of each message store shard
+     */
+    private int numberOfStoreReplicas;
+
+    /**
+     * staleness bound of the read replicas, see {@link MessageStoreReplica}
+     */
+    private long replicaStalenessBound;
+
+    /**
+     * read replicas of all message store shards
+     */
+    private List<MessageStoreReplica> storeReplicas;
+
+    /**
+     * the actors in front of each shard and its read replicas, empty if there are no replicas
+     */
+    private List<ReplicatedMessageStore> replicatedStores;
+
+    /**
+     * If set, workers send requests to the message store directly instead of spawning worker helpers.
+     */
+    private boolean multiplexStoreRequests;
+
+    /**
+     * handlers of the messages accepted in normal mode
+     */
+    private final MessageHandlerTable normalHandlers = new MessageHandlerTable();
+
+    /**
+     * handlers of the messages accepted in stopping mode
+     */
+    private final MessageHandlerTable stoppingHandlers = new MessageHandlerTable();
+
     public Dispatcher(SimulatedActorSystem system, int numberOfWorkers) {
+        this(system, numberOfWorkers, false);
+    }
+
+    /**
+     * Constructs a new Dispatcher object.
+     *
+     * @param system                 the system used to spawn actors
+     * @param numberOfWorkers        number of workers
+     * @param multiplexStoreRequests true if workers should send requests to the message store
+     *                               directly instead of spawning a worker helper for each request
+     */
+    public Dispatcher(SimulatedActorSystem system, int numberOfWorkers, boolean multiplexStoreRequests) {
+        this(system, numberOfWorkers, multiplexStoreRequests, 1);
+    }
+
+    /**
+     * Constructs a new Dispatcher object.
+     *
+     * @param system                 the system used to spawn actors
+     * @param numberOfWorkers        number of workers
+     * @param multiplexStoreRequests true if workers should send requests to the message store
+     *                               directly instead of spawning a worker helper for each request
+     * @param numberOfStoreShards    number of message store shards, if greater than one workers send
+     *                               requests via a {@link MessageStoreRouter}
+     */
+    public Dispatcher(SimulatedActorSystem system, int numberOfWorkers, boolean multiplexStoreRequests,
+                      int numberOfStoreShards) {
+        this(system, numberOfWorkers, multiplexStoreRequests, numberOfStoreShards, 0, 0);
+    }
+
+    /**
+     * Constructs a new Dispatcher object.
+     *
+     * @param system                 the system used to spawn actors
+     * @param numberOfWorkers        number of workers
+     * @param multiplexStoreRequests true if workers should send requests to the message store
+     *                               directly instead of spawning a worker helper for each request
+     * @param numberOfStoreShards    number of message store shards, if greater than one workers send
+     *                               requests via a {@link MessageStoreRouter}
+     * @param numberOfStoreReplicas  number of read replicas of each shard, if greater than zero
+     *                               requests to a shard are sent via a {@link ReplicatedMessageStore}
+     * @param replicaStalenessBound  the maximum number of changes a replica may lag behind its
+     *                               shard when it answers a read request
+     */
+    public Dispatcher(SimulatedActorSystem system, int numberOfWorkers, boolean multiplexStoreRequests,
+                      int numberOfStoreShards, int numberOfStoreReplicas, long replicaStalenessBound) {
+        if (numberOfStoreShards < 1)
+            throw new IllegalArgumentException("at least one store shard is needed");
+        if (numberOfStoreReplicas < 0)
+            throw new IllegalArgumentException("number of store replicas must not be negative");
         this.system = system;
+        this.numberOfStoreShards = numberOfStoreShards;
+        this.storeShards = new ArrayList<>(numberOfStoreShards);
+        this.numberOfStoreReplicas = numberOfStoreReplicas;
+        this.replicaStalenessBound = replicaStalenessBound;
+        this.storeReplicas = new ArrayList<>();
+        this.replicatedStores = new ArrayList<>();
+        this.multiplexStoreRequests = multiplexStoreRequests;
         this.workers = new ArrayList<>(numberOfWorkers);
         this.numberOfWorkers = numberOfWorkers;
         this.mode = Mode.NORMAL;
         this.acksToCollect = new ArrayList<>();
+
+        normalHandlers.register(Stop.class, message -> processStop());
+        normalHandlers.register(InitCommunication.class, this::forwardInitCommunication);
+        stoppingHandlers.register(InitCommunication.class, this::rejectInitCommunication);
+        stoppingHandlers.register(StopAck.class, this::processStopAck);
     }
 
     /**
@@ -72,7 +186,7 @@ public class Dispatcher extends SimulatedActor {
      * @param message Non-null message received
      */
     @Override
-    public void receive(Message message) {
+    public void receive(Message message) throws UnknownClientException, UnknownMessageException {
         if (mode == Mode.NORMAL) {
             normalOperation(message);
         }
@@ -82,17 +196,51 @@ public class Dispatcher extends SimulatedActor {
     }
 
     /**
-     * Creates all Workers and the message store
+     * Creates all Workers and the message store, or its shards and the router in front of them,
+     * and the read replicas of the store or of each shard
      */
     @Override
     public void atStartUp() {
-        messageStore = new MessageStore();
+        List<SimulatedActor> stores = new ArrayList<>(numberOfStoreShards);
+        for (int i = 0; i < numberOfStoreShards; i++) {
+            MessageStore shard = numberOfStoreShards == 1 ? new MessageStore() : new MessageStore(i, numberOfStoreShards);
+            storeShards.add(shard);
+            if (numberOfStoreReplicas == 0) {
+                stores.add(shard);
+                continue;
+            }
+            List<MessageStoreReplica> replicas = new ArrayList<>(numberOfStoreReplicas);
+            for (int j = 0; j < numberOfStoreReplicas; j++) {
+                replicas.add(new MessageStoreReplica(shard, replicaStalenessBound));
+            }
+            storeReplicas.addAll(replicas);
+            ReplicatedMessageStore replicatedStore = new ReplicatedMessageStore(shard, replicas);
+            replicatedStores.add(replicatedStore);
+            stores.add(replicatedStore);
+        }
+        if (numberOfStoreShards > 1) {
+            storeRouter = new MessageStoreRouter(stores);
+        }
+        SimulatedActor store = storeRouter != null ? storeRouter : stores.get(0);
+        messageStore = storeShards.get(0);
         for (int i = 0; i < numberOfWorkers; i++) {
-            Worker w = new Worker(this, messageStore, system);
+            Worker w = new Worker(this, store, system, multiplexStoreRequests);
             system.spawn(w);
             workers.add(w);
         }
-        system.spawn(messageStore);
+        // spawned before the shards, so that they forward requests in the tick in which they are sent
+        if (storeRouter != null) {
+            system.spawn(storeRouter);
+        }
+        for (ReplicatedMessageStore replicatedStore : replicatedStores) {
+            system.spawn(replicatedStore);
+        }
+        for (MessageStore shard : storeShards) {
+            system.spawn(shard);
+        }
+        for (MessageStoreReplica replica : storeReplicas) {
+            system.spawn(replica);
+        }
     }
 
     /**
@@ -103,18 +251,32 @@ public class Dispatcher extends SimulatedActor {
      *
      * @param message received message
      */
-    private void stopping(Message message) {
-        if (message instanceof InitCommunication) {
-            InitCommunication initM = ((InitCommunication) message);
-            initM.client.tell(new OperationFailed(initM.communicationId));
-        } else if (message instanceof StopAck) {
-            SimulatedActor actor = ((StopAck) message).sender;
-            acksToCollect.remove(actor.getId());
-            system.stop(actor);
-            if (acksToCollect.size() == 0) {
-                system.stop(messageStore);
-                system.stop(this);
+    private void stopping(Message message) throws UnknownClientException, UnknownMessageException {
+        stoppingHandlers.dispatch(message);
+    }
+
+    private void rejectInitCommunication(InitCommunication initM) {
+        initM.client.tell(new OperationFailed(initM.communicationId));
+    }
+
+    private void processStopAck(StopAck stopAck) {
+        SimulatedActor actor = stopAck.sender;
+        acksToCollect.remove(actor.getId());
+        system.stop(actor);
+        if (acksToCollect.size() == 0) {
+            if (storeRouter != null) {
+                system.stop(storeRouter);
             }
+            for (ReplicatedMessageStore replicatedStore : replicatedStores) {
+                system.stop(replicatedStore);
+            }
+            for (MessageStore shard : storeShards) {
+                system.stop(shard);
+            }
+            for (MessageStoreReplica replica : storeReplicas) {
+                system.stop(replica);
+            }
+            system.stop(this);
         }
     }
 
@@ -130,21 +292,24 @@ public class Dispatcher extends SimulatedActor {
      *
      * @param message message received
      */
-    private void normalOperation(Message message) {
-        if (message instanceof Stop) {
-            for (Worker w : workers) {
-                acksToCollect.add(w.getId());
-                w.tell(new Stop());
-            }
-            mode = Mode.STOPPING;
-        } else if (message instanceof InitCommunication) {
-            // decide upon id for now, maybe switch to login credentials TODO
-            InitCommunication initC = ((InitCommunication) message);
-            Random random = new Random(initC.communicationId);
-            int rnd = random.nextInt();
-            int index = (((rnd % workers.size()) + workers.size()) % workers.size());
-            Worker w = workers.get(index);
-            w.tell(message);
+    private void normalOperation(Message message) throws UnknownClientException, UnknownMessageException {
+        normalHandlers.dispatch(message);
+    }
+
+    private void processStop() {
+        for (Worker w : workers) {
+            acksToCollect.add(w.getId());
+            w.tell(new Stop());
         }
+        mode = Mode.STOPPING;
+    }
+
+    private void forwardInitCommunication(InitCommunication initC) {
+        // decide upon id for now, maybe switch to login credentials TODO
+        Random random = new Random(initC.communicationId);
+        int rnd = random.nextInt();
+        int index = (((rnd % workers.size()) + workers.size()) % workers.size());
+        Worker w = workers.get(index);
+        w.tell(initC);
     }
 }
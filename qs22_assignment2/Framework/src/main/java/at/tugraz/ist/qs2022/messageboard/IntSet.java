@@ -0,0 +1,354 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, e.g. the IDs of the users who like a message.
+ * <p>
+ * Small sets are kept in a sorted array. Larger sets are split into chunks by the upper 16 bits
+ * of their values, like a roaring bitmap: each chunk keeps the lower 16 bits of its values in a
+ * sorted array, or in a bitmap of 2^16 bits once the array would need more memory than the bitmap.
+ * Lookups therefore take a binary search over at most 2^16 entries, no matter how large the set
+ * grows, and each value needs at most 32 bits (sorted array), 16 bits (chunk array) or, for dense
+ * chunks, less than 16 bits.
+ * <p>
+ * A copy of a set split into chunks shares the chunks with the set it was copied from. Each set
+ * copies a shared chunk before it changes it, so copying costs one reference per chunk and each
+ * change copies at most one chunk. Small sets are simply copied.
+ */
+final class IntSet {
+
+    /**
+     * maximum size of a set kept in a single sorted array
+     */
+    static final int ARRAY_LIMIT = 64;
+
+    /**
+     * maximum number of values of a chunk kept in a sorted array, a bitmap needs as much memory
+     */
+    static final int CHUNK_ARRAY_LIMIT = 4096;
+
+    private static final int BITMAP_WORDS = (1 << 16) / 64;
+
+    private static final int[] NO_VALUES = new int[0];
+
+    private int size = 0;
+
+    /**
+     * values of a small set in ascending order, null once the set is split into chunks
+     */
+    private int[] values = NO_VALUES;
+
+    /**
+     * upper 16 bits of the values of the chunks in ascending order
+     */
+    private char[] keys;
+
+    /**
+     * lower 16 bits of the values of each chunk, either a sorted char[] or a long[] bitmap
+     */
+    private Object[] chunks;
+
+    private int[] chunkSizes;
+
+    /**
+     * false for the chunks which may be shared with a copy and must be copied before they change
+     */
+    private boolean[] chunkOwned;
+
+    private int chunkCount;
+
+    /**
+     * @return a copy of the set, which shares the chunks with this set
+     */
+    IntSet copy() {
+        IntSet copy = new IntSet();
+        copy.size = size;
+        if (values != null) {
+            copy.values = values.length == 0 ? NO_VALUES : values.clone();
+            return copy;
+        }
+        copy.values = null;
+        copy.keys = keys.clone();
+        copy.chunks = chunks.clone();
+        copy.chunkSizes = chunkSizes.clone();
+        copy.chunkOwned = new boolean[chunkOwned.length];
+        copy.chunkCount = chunkCount;
+        Arrays.fill(chunkOwned, false);
+        return copy;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int value) {
+        if (values != null) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+        int chunk = findChunk(value);
+        return chunk >= 0 && chunkContains(chunk, (char) value);
+    }
+
+    /**
+     * @param value non-negative value to add
+     * @return true if the value was added, false if the set contained it already
+     */
+    boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("only non-negative values can be added");
+        }
+        if (values != null) {
+            int position = Arrays.binarySearch(values, 0, size, value);
+            if (position >= 0) {
+                return false;
+            }
+            if (size < ARRAY_LIMIT) {
+                position = -position - 1;
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, Math.min(Math.max(4, 2 * size), ARRAY_LIMIT));
+                }
+                System.arraycopy(values, position, values, position + 1, size - position);
+                values[position] = value;
+                size++;
+                return true;
+            }
+            splitIntoChunks();
+        }
+        int chunk = findChunk(value);
+        if (chunk < 0) {
+            chunk = insertChunk(-chunk - 1, (char) (value >>> 16));
+        }
+        if (!chunkAdd(chunk, (char) value)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * @param value value to remove
+     * @return true if the value was removed, false if the set did not contain it
+     */
+    boolean remove(int value) {
+        if (values != null) {
+            int position = Arrays.binarySearch(values, 0, size, value);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, size - position - 1);
+            size--;
+            return true;
+        }
+        int chunk = findChunk(value);
+        if (chunk < 0 || !chunkRemove(chunk, (char) value)) {
+            return false;
+        }
+        if (chunkSizes[chunk] == 0) {
+            removeChunk(chunk);
+        }
+        size--;
+        if (size <= ARRAY_LIMIT / 2) {
+            mergeChunks();
+        }
+        return true;
+    }
+
+    /**
+     * Passes all values to the consumer in ascending order.
+     */
+    void forEach(IntConsumer consumer) {
+        if (values != null) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(values[i]);
+            }
+            return;
+        }
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int high = keys[chunk] << 16;
+            if (chunks[chunk] instanceof long[]) {
+                long[] bitmap = (long[]) chunks[chunk];
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long bits = bitmap[word];
+                    while (bits != 0) {
+                        consumer.accept(high | (word << 6) | Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+            } else {
+                char[] lows = (char[]) chunks[chunk];
+                for (int i = 0; i < chunkSizes[chunk]; i++) {
+                    consumer.accept(high | lows[i]);
+                }
+            }
+        }
+    }
+
+    private void splitIntoChunks() {
+        int[] smallValues = values;
+        int smallSize = size;
+        values = null;
+        keys = new char[4];
+        chunks = new Object[4];
+        chunkSizes = new int[4];
+        chunkOwned = new boolean[4];
+        chunkCount = 0;
+        for (int i = 0; i < smallSize; i++) {
+            int value = smallValues[i];
+            int chunk = findChunk(value);
+            if (chunk < 0) {
+                chunk = insertChunk(-chunk - 1, (char) (value >>> 16));
+            }
+            chunkAdd(chunk, (char) value);
+        }
+    }
+
+    private void mergeChunks() {
+        int[] smallValues = new int[ARRAY_LIMIT];
+        int[] count = {0};
+        forEach(value -> smallValues[count[0]++] = value);
+        values = smallValues;
+        keys = null;
+        chunks = null;
+        chunkSizes = null;
+        chunkOwned = null;
+        chunkCount = 0;
+    }
+
+    /**
+     * @return the index of the chunk of the value, or (-(insertion point) - 1) if there is none
+     */
+    private int findChunk(int value) {
+        return Arrays.binarySearch(keys, 0, chunkCount, (char) (value >>> 16));
+    }
+
+    private int insertChunk(int position, char key) {
+        if (chunkCount == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * chunkCount);
+            chunks = Arrays.copyOf(chunks, 2 * chunkCount);
+            chunkSizes = Arrays.copyOf(chunkSizes, 2 * chunkCount);
+            chunkOwned = Arrays.copyOf(chunkOwned, 2 * chunkCount);
+        }
+        System.arraycopy(keys, position, keys, position + 1, chunkCount - position);
+        System.arraycopy(chunks, position, chunks, position + 1, chunkCount - position);
+        System.arraycopy(chunkSizes, position, chunkSizes, position + 1, chunkCount - position);
+        System.arraycopy(chunkOwned, position, chunkOwned, position + 1, chunkCount - position);
+        keys[position] = key;
+        chunks[position] = new char[4];
+        chunkSizes[position] = 0;
+        chunkOwned[position] = true;
+        chunkCount++;
+        return position;
+    }
+
+    private void removeChunk(int chunk) {
+        System.arraycopy(keys, chunk + 1, keys, chunk, chunkCount - chunk - 1);
+        System.arraycopy(chunks, chunk + 1, chunks, chunk, chunkCount - chunk - 1);
+        System.arraycopy(chunkSizes, chunk + 1, chunkSizes, chunk, chunkCount - chunk - 1);
+        System.arraycopy(chunkOwned, chunk + 1, chunkOwned, chunk, chunkCount - chunk - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+    }
+
+    /**
+     * Copies the chunk if it may be shared with a copy of the set.
+     *
+     * @return the chunk, which this set may change
+     */
+    private Object own(int chunk) {
+        if (!chunkOwned[chunk]) {
+            Object lows = chunks[chunk];
+            chunks[chunk] = lows instanceof long[] ? ((long[]) lows).clone() : ((char[]) lows).clone();
+            chunkOwned[chunk] = true;
+        }
+        return chunks[chunk];
+    }
+
+    private boolean chunkContains(int chunk, char low) {
+        if (chunks[chunk] instanceof long[]) {
+            return (((long[]) chunks[chunk])[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunks[chunk], 0, chunkSizes[chunk], low) >= 0;
+    }
+
+    private boolean chunkAdd(int chunk, char low) {
+        if (chunks[chunk] instanceof long[]) {
+            long[] bitmap = (long[]) chunks[chunk];
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            bitmap = (long[]) own(chunk);
+            bitmap[low >>> 6] |= bit;
+            chunkSizes[chunk]++;
+            return true;
+        }
+        char[] lows = (char[]) chunks[chunk];
+        int chunkSize = chunkSizes[chunk];
+        int position = Arrays.binarySearch(lows, 0, chunkSize, low);
+        if (position >= 0) {
+            return false;
+        }
+        if (chunkSize == CHUNK_ARRAY_LIMIT) {
+            long[] bitmap = new long[BITMAP_WORDS];
+            for (int i = 0; i < chunkSize; i++) {
+                bitmap[lows[i] >>> 6] |= 1L << lows[i];
+            }
+            bitmap[low >>> 6] |= 1L << low;
+            chunks[chunk] = bitmap;
+            chunkSizes[chunk]++;
+            chunkOwned[chunk] = true;
+            return true;
+        }
+        position = -position - 1;
+        if (chunkSize == lows.length) {
+            lows = Arrays.copyOf(lows, Math.min(2 * chunkSize, CHUNK_ARRAY_LIMIT));
+            chunks[chunk] = lows;
+            chunkOwned[chunk] = true;
+        } else {
+            lows = (char[]) own(chunk);
+        }
+        System.arraycopy(lows, position, lows, position + 1, chunkSize - position);
+        lows[position] = low;
+        chunkSizes[chunk]++;
+        return true;
+    }
+
+    private boolean chunkRemove(int chunk, char low) {
+        if (chunks[chunk] instanceof long[]) {
+            long[] bitmap = (long[]) chunks[chunk];
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            bitmap = (long[]) own(chunk);
+            bitmap[low >>> 6] &= ~bit;
+            // back to an array once it needs half the memory of the bitmap, so that sets
+            // changing around the limit are not converted on every change
+            if (--chunkSizes[chunk] == CHUNK_ARRAY_LIMIT / 2) {
+                char[] lows = new char[CHUNK_ARRAY_LIMIT];
+                int count = 0;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long bits = bitmap[word];
+                    while (bits != 0) {
+                        lows[count++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+                chunks[chunk] = lows;
+            }
+            return true;
+        }
+        char[] lows = (char[]) chunks[chunk];
+        int chunkSize = chunkSizes[chunk];
+        int position = Arrays.binarySearch(lows, 0, chunkSize, low);
+        if (position < 0) {
+            return false;
+        }
+        lows = (char[]) own(chunk);
+        System.arraycopy(lows, position + 1, lows, position, chunkSize - position - 1);
+        chunkSizes[chunk]--;
+        return true;
+    }
+}
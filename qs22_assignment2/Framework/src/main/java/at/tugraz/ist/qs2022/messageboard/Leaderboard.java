@@ -0,0 +1,164 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import java.util.List;
+
+/**
+ * Messages ordered by their points, highest first, and by their IDs if the points are equal.
+ * <p>
+ * The messages are kept in a treap, a binary search tree balanced by random priorities, whose
+ * nodes know the size of their subtree. Adding, removing and moving a message after its points
+ * changed take O(log n) and the messages from a given rank on are found in O(log n + k) for k
+ * messages, without visiting the others. Priorities are derived from the message IDs, so the
+ * shape of the tree does not depend on a random generator.
+ * <p>
+ * Each node keeps the points the message had when it was added, so a message must be moved
+ * with {@link Leaderboard#update(UserMessage, int)} whenever its points change.
+ */
+final class Leaderboard {
+
+    private static final class Node {
+        final UserMessage message;
+        final long messageId;
+        final int points;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(UserMessage message) {
+            this.message = message;
+            this.messageId = message.getMessageId();
+            this.points = message.getPoints();
+            long hash = messageId * 0x9E3779B97F4A7C15L;
+            this.priority = (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    private Node root;
+
+    /**
+     * @return the number of messages
+     */
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * Adds a message with its current points.
+     */
+    void add(UserMessage message) {
+        Node node = new Node(message);
+        Node[] parts = split(root, node.points, node.messageId);
+        root = merge(merge(parts[0], node), parts[1]);
+    }
+
+    /**
+     * Moves a message whose points changed.
+     *
+     * @param message   the message, which must have been added
+     * @param oldPoints the points of the message before they changed
+     */
+    void update(UserMessage message, int oldPoints) {
+        root = remove(root, oldPoints, message.getMessageId());
+        add(message);
+    }
+
+    /**
+     * Adds the messages from the given rank on to the list, in order.
+     *
+     * @param fromRank   the rank of the first message, 0 for the message with the most points
+     * @param maxResults the maximum number of messages to add
+     * @param found      the list to which the messages are added
+     */
+    void find(long fromRank, int maxResults, List<UserMessage> found) {
+        if (fromRank < size()) {
+            collect(root, (int) fromRank, found, found.size() + (long) maxResults);
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * @return true if a message with the given points and ID is ranked before the node
+     */
+    private static boolean before(int points, long messageId, Node node) {
+        return points > node.points || (points == node.points && messageId < node.messageId);
+    }
+
+    /**
+     * Splits the tree into the nodes ranked before the given key and the other nodes.
+     */
+    private static Node[] split(Node node, int points, long messageId) {
+        if (node == null) {
+            return new Node[2];
+        }
+        Node[] parts;
+        if (before(points, messageId, node)) {
+            parts = split(node.left, points, messageId);
+            node.left = parts[1];
+            parts[1] = node;
+        } else {
+            parts = split(node.right, points, messageId);
+            node.right = parts[0];
+            parts[0] = node;
+        }
+        node.size = size(node.left) + 1 + size(node.right);
+        return parts;
+    }
+
+    /**
+     * Joins two trees, all nodes of the first being ranked before the nodes of the second.
+     */
+    private static Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            first.size = size(first.left) + 1 + size(first.right);
+            return first;
+        }
+        second.left = merge(first, second.left);
+        second.size = size(second.left) + 1 + size(second.right);
+        return second;
+    }
+
+    private static Node remove(Node node, int points, long messageId) {
+        if (node == null) {
+            return null;
+        }
+        if (node.messageId == messageId && node.points == points) {
+            return merge(node.left, node.right);
+        }
+        if (before(points, messageId, node)) {
+            node.left = remove(node.left, points, messageId);
+        } else {
+            node.right = remove(node.right, points, messageId);
+        }
+        node.size = size(node.left) + 1 + size(node.right);
+        return node;
+    }
+
+    /**
+     * Adds the nodes of the subtree from the given rank within the subtree on to the list,
+     * until the list has the given size. Subtrees before the rank are skipped by their sizes.
+     */
+    private static void collect(Node node, int fromRank, List<UserMessage> found, long until) {
+        if (node == null || found.size() >= until) {
+            return;
+        }
+        int leftSize = size(node.left);
+        if (fromRank < leftSize) {
+            collect(node.left, fromRank, found, until);
+        }
+        if (fromRank <= leftSize && found.size() < until) {
+            found.add(node.message);
+        }
+        collect(node.right, Math.max(fromRank - leftSize - 1, 0), found, until);
+    }
+}
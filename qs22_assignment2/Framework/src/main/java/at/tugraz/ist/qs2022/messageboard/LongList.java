@@ -0,0 +1,70 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs, which needs less memory than a list of boxed values.
+ */
+class LongList {
+
+    private long[] values;
+
+    private int size;
+
+    LongList() {
+        this(4);
+    }
+
+    /**
+     * @param capacity initial capacity, at least 1
+     */
+    LongList(int capacity) {
+        this.values = new long[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * @return a copy of the list
+     */
+    LongList copy() {
+        LongList copy = new LongList(Math.max(1, size));
+        System.arraycopy(values, 0, copy.values, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        values[size++] = value;
+    }
+
+    long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param value value to look for, the list must be sorted in ascending order
+     * @return index of the first element which is not less than the value, the size if there is none
+     */
+    int lowerBound(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
@@ -6,7 +6,12 @@ import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
 import at.tugraz.ist.qs2022.messageboard.clientmessages.*;
 import at.tugraz.ist.qs2022.messageboard.messagestoremessages.*;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Actor responsible for storage and retrieval of user messages.
@@ -15,22 +20,174 @@ public class MessageStore extends SimulatedActor {
 
     /**
      * All messages stored, the key of the dictionary corresponds to
-     * the message ID of the user message stored as value.
+     * the message ID of the user message stored as value. Messages of a
+     * snapshot are added when they are looked up for the first time.
      */
     protected Map<Long, UserMessage> messages;
 
     /**
-     * All reports, the key in the dictionary corresponds to a
-     * client name and the value is a set of client names that
-     * have reported that user.
+     * Index of the stored messages by author, the key of the dictionary is an author
+     * and the value holds the IDs of all messages of the author in the order they were stored.
+     * Each author is kept only once, no matter how many messages the author stored.
      */
-    private Map<String, HashSet<String>> reports;
+    private Map<String, LongList> messageIdsByAuthor;
+
+    /**
+     * Index used to detect messages which have already been stored by the same author,
+     * the key of the dictionary is the fingerprint of author and text of a message and the
+     * value holds the IDs of the stored messages with this fingerprint. Messages with equal
+     * fingerprints are compared to each other, so the fingerprint only needs to be well spread.
+     */
+    private Map<Long, LongList> messageIdsByFingerprint;
+
+    /**
+     * Index of the trigrams in authors and texts of the stored messages, used for searching.
+     * It is null until all messages of a snapshot have been loaded.
+     */
+    private TrigramIndex trigramIndex;
+
+    /**
+     * The stored messages ordered by points, used for finding the top messages.
+     * It is null until all messages of a snapshot have been loaded.
+     */
+    private Leaderboard leaderboard;
+
+    /**
+     * The stored messages of each author ordered by points, the key of the dictionary is an author.
+     * Until all messages of a snapshot have been loaded, it only holds the authors whose top messages
+     * have been looked up.
+     */
+    private Map<String, Leaderboard> leaderboardsByAuthor;
+
+    /**
+     * Pages found by recent queries for the messages of an author and for search texts.
+     */
+    private final QueryCache queryCache;
+
+    /**
+     * IDs of the user names in the likes, dislikes and reactions of the stored messages and in the reports.
+     */
+    private final UserIds userIds;
+
+    /**
+     * All reports and the users who have been reported too often.
+     */
+    private BanState banState;
 
     /**
      * integral number which is used to create new message IDs
      */
     private long currentId;
 
+    /**
+     * Difference between consecutive message IDs. A store which is one of several shards
+     * uses every <c>shardCount</c>-th ID starting at its index, so that the IDs of all
+     * shards differ and the shard storing a message can be told from its ID.
+     */
+    private final int shardCount;
+
+    /**
+     * index of this shard, from 0 to <c>shardCount</c> - 1
+     */
+    private final int shardIndex;
+
+    /**
+     * Log to which all changes are written, null if the store is kept in memory only.
+     */
+    private final WriteAheadLog log;
+
+    /**
+     * Replies waiting for the next commit of the write-ahead log.
+     */
+    private final List<UncommittedReply> uncommittedReplies;
+
+    /**
+     * Replies to the messages of the batch being processed, null if no batch is being processed.
+     */
+    private List<StoreReply> batchReplies;
+
+    /**
+     * the maximum number of replies waiting for a commit, the log is also committed
+     * whenever there are no more messages to process
+     */
+    static final int MAX_COMMIT_GROUP = 256;
+
+    /**
+     * the maximum number of pages in the query cache
+     */
+    static final int QUERY_CACHE_PAGES = 1024;
+
+    /**
+     * the maximum estimated size of the pages in the query cache in bytes
+     */
+    static final long QUERY_CACHE_BYTES = 16L << 20;
+
+    /**
+     * Replicas to which all changes are shipped in the order they were made, see {@link MessageStoreReplica}.
+     */
+    private final List<MessageStoreReplica> replicas;
+
+    /**
+     * Changes waiting to be shipped to the replicas, which happens when they are committed to the
+     * write-ahead log, or right away if there is none.
+     */
+    private final List<Consumer<WriteAheadLog.Changes>> unshippedChanges;
+
+    /**
+     * number of changes shipped to the replicas so far
+     */
+    private volatile long shippedChanges;
+
+    /**
+     * Snapshot from which messages and authors are loaded when they are looked up for the
+     * first time, null if there is none or once everything has been loaded from it.
+     */
+    private MessageStoreSnapshot snapshot;
+
+    /**
+     * File to which snapshots are written, null if no snapshots are written.
+     */
+    private final File snapshotFile;
+
+    /**
+     * number of records in the write-ahead log, after which a snapshot is written and the log is reset
+     */
+    private final long snapshotInterval;
+
+    /**
+     * Executor writing the snapshots, so that the store goes on processing messages meanwhile.
+     */
+    private final Executor snapshotWriter;
+
+    /**
+     * Snapshot being written, null if none is being written.
+     */
+    private CompletableFuture<Void> snapshotWrite;
+
+    /**
+     * generation of the log continuing the snapshot being written
+     */
+    private long snapshotGeneration;
+
+    /**
+     * length of the log when the snapshot being written was started, the records up to it are part of the snapshot
+     */
+    private long snapshotLogPosition;
+
+    /**
+     * default executor writing the snapshots, which starts a thread for each snapshot
+     */
+    private static final Executor DEFAULT_SNAPSHOT_WRITER = task -> {
+        Thread thread = new Thread(task, "MessageStore snapshot writer");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    /**
+     * default number of records in the write-ahead log, after which a snapshot is written
+     */
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 1_000_000;
+
     /**
      * the maximum allowed length of a message
      */
@@ -42,12 +199,143 @@ public class MessageStore extends SimulatedActor {
      * the store.
      */
     public MessageStore() {
+        this(0, 1, null);
+    }
+
+    /**
+     * Constructs a new MessageStore object, which recovers its state from the
+     * write-ahead log and logs all changes to it.
+     *
+     * @param log the write-ahead log
+     */
+    public MessageStore(WriteAheadLog log) {
+        this(0, 1, log);
+    }
+
+    /**
+     * Constructs a new MessageStore object, which is one of several shards of a
+     * store, see {@link MessageStoreRouter}.
+     *
+     * @param shardIndex index of this shard, from 0 to <c>shardCount</c> - 1
+     * @param shardCount number of shards
+     */
+    public MessageStore(int shardIndex, int shardCount) {
+        this(shardIndex, shardCount, null);
+    }
+
+    /**
+     * Constructs a new MessageStore object, which is one of several shards of a store.
+     * If a write-ahead log is given, the shard recovers its state from it and logs all changes to it.
+     *
+     * @param shardIndex index of this shard, from 0 to <c>shardCount</c> - 1
+     * @param shardCount number of shards
+     * @param log        the write-ahead log of this shard, null to keep the shard in memory only
+     */
+    public MessageStore(int shardIndex, int shardCount, WriteAheadLog log) {
+        this(shardIndex, shardCount, log, null, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Constructs a new MessageStore object, which starts from the snapshot, if the file exists,
+     * followed by the write-ahead log. Snapshots are written to the file from time to time,
+     * after which the log is reset.
+     *
+     * @param log          the write-ahead log
+     * @param snapshotFile the snapshot file
+     */
+    public MessageStore(WriteAheadLog log, File snapshotFile) {
+        this(0, 1, log, snapshotFile, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Constructs a new MessageStore object, which is one of several shards of a store.
+     * If the snapshot file exists, the shard starts from the snapshot, loading messages when they
+     * are needed, see {@link MessageStoreSnapshot}. If a write-ahead log is given, the changes logged
+     * after the snapshot are replayed and all changes are logged. Once the log contains the given
+     * number of records, a new snapshot is written by a thread of its own and the log is reset.
+     *
+     * @param shardIndex       index of this shard, from 0 to <c>shardCount</c> - 1
+     * @param shardCount       number of shards
+     * @param log              the write-ahead log of this shard, null to keep changes in memory only
+     * @param snapshotFile     the snapshot file of this shard, null if there is no snapshot
+     * @param snapshotInterval number of logged records, after which a snapshot is written
+     */
+    public MessageStore(int shardIndex, int shardCount, WriteAheadLog log, File snapshotFile, long snapshotInterval) {
+        this(shardIndex, shardCount, log, snapshotFile, snapshotInterval, DEFAULT_SNAPSHOT_WRITER);
+    }
+
+    /**
+     * Constructs a new MessageStore object, which is one of several shards of a store, like
+     * {@link #MessageStore(int, int, WriteAheadLog, File, long)}. Snapshots are written by the given
+     * executor, while the shard goes on processing messages. Once a snapshot has been written,
+     * the log is reset when the shard commits it the next time.
+     *
+     * @param shardIndex       index of this shard, from 0 to <c>shardCount</c> - 1
+     * @param shardCount       number of shards
+     * @param log              the write-ahead log of this shard, null to keep changes in memory only
+     * @param snapshotFile     the snapshot file of this shard, null if there is no snapshot
+     * @param snapshotInterval number of logged records, after which a snapshot is written
+     * @param snapshotWriter   the executor writing the snapshots
+     */
+    public MessageStore(int shardIndex, int shardCount, WriteAheadLog log, File snapshotFile, long snapshotInterval,
+                        Executor snapshotWriter) {
+        if (shardIndex < 0 || shardIndex >= shardCount)
+            throw new IllegalArgumentException("shard index must be between 0 and the number of shards");
+        if (snapshotInterval <= 0)
+            throw new IllegalArgumentException("snapshot interval must be positive");
+        this.shardCount = shardCount;
+        this.shardIndex = shardIndex;
+        this.log = log;
+        this.snapshotFile = snapshotFile;
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotWriter = snapshotWriter;
+        this.uncommittedReplies = new ArrayList<>();
+        this.batchReplies = null;
+        this.replicas = new ArrayList<>();
+        this.unshippedChanges = new ArrayList<>();
+        this.shippedChanges = 0;
         this.messages = new HashMap<>();
-        this.reports = new HashMap<>();
+        this.messageIdsByAuthor = new HashMap<>();
+        this.messageIdsByFingerprint = new HashMap<>();
+        this.trigramIndex = new TrigramIndex();
+        this.leaderboard = new Leaderboard();
+        this.leaderboardsByAuthor = new HashMap<>();
+        this.queryCache = new QueryCache(QUERY_CACHE_PAGES, QUERY_CACHE_BYTES);
+        this.userIds = new UserIds();
+        this.banState = new BanState(USER_BLOCKED_AT_COUNT, userIds);
 
-        this.currentId = 0;
+        this.currentId = shardIndex;
         // good connection between WorkerHelper and MessageStore -> no delay
         this.channel = new DeterministicChannel(0);
+
+        registerHandler(RetrieveFromStore.class, this::processRetrieveFromStore);
+        registerHandler(AddLike.class, this::processAddLike);
+        registerHandler(AddDislike.class, this::processAddDislike);
+        registerHandler(DeleteLikeOrDislike.class, this::processDeleteLikeOrDislike);
+        registerHandler(AddReaction.class, this::processAddReaction);
+        registerHandler(UpdateMessageStore.class, this::processUpdateMessageStore);
+        registerHandler(AddReport.class, this::processAddReport);
+        registerHandler(SearchInStore.class, this::processSearchInStore);
+        registerHandler(TopMessagesInStore.class, this::processTopMessagesInStore);
+        registerHandler(StoreBatch.class, this::processStoreBatch);
+
+        if (snapshotFile != null && snapshotFile.exists()) {
+            snapshot = MessageStoreSnapshot.open(snapshotFile);
+            currentId = snapshot.getCurrentId();
+            snapshot.readReports(banState);
+            trigramIndex = null;
+            leaderboard = null;
+        }
+        if (log != null) {
+            if (snapshot != null && log.getGeneration() < snapshot.getLogGeneration()) {
+                // the snapshot was written, but the log was not reset, so the records up to the
+                // position of the snapshot are part of it
+                log.replay(new ReplayedChanges(), snapshot.getLogPosition());
+                log.reset(snapshot.getLogGeneration(), snapshot.getLogPosition());
+            } else {
+                log.replay(new ReplayedChanges());
+            }
+        }
     }
 
     /**
@@ -55,7 +343,13 @@ public class MessageStore extends SimulatedActor {
      * <p>
      * If the message passed as parameter is of type <c>RetrieveFromStore</c>,
      * all messages of a given author are looked up and sent back to the client of the
-     * store.
+     * store. For <c>SearchInStore</c>, the messages whose author or text contain the search
+     * text are sent back. Both send at most the requested number of messages, possibly
+     * split into chunks (see <c>FoundMessages</c>). The pages found by both are kept in a
+     * {@link QueryCache} until a change affects them, so repeated queries are not looked up again.
+     * For <c>TopMessagesInStore</c>, the messages with the most points, of all authors or of one
+     * author, are sent back in a single reply. Found messages are sent as immutable views (see
+     * {@link UserMessage#view()}), so replies and cached pages can be shared without copying.
      * <p>
      * If the message passed as parameter is of type <c>AddLike</c>, a
      * like is added to the given message if the message exists and has not
@@ -76,87 +370,600 @@ public class MessageStore extends SimulatedActor {
      * <p>
      * In case of success a OperationAck message is sent to the client, otherwise
      * an UserBanned message or an OperationFailed message is sent, depending
-     * on if the user was reported too often.
+     * on if the user was reported too often. Replies to messages with a correlation ID
+     * are wrapped in a <c>StoreReply</c>. Messages of other types are ignored.
+     * <p>
+     * The messages of a <c>StoreBatch</c> are processed one after the other in the same turn,
+     * their replies are sent together in a single <c>StoreBatchReply</c>.
+     * <p>
+     * The handler of each message type is registered in the constructor.
+     * <p>
+     * If the store has a write-ahead log, successful changes are logged and the replies are
+     * held back until the log is committed, which happens when no more messages are waiting
+     * or when {@link MessageStore#MAX_COMMIT_GROUP} replies are waiting (group commit).
+     * Successful changes are shipped to the replicas of the store, if there are any, before the
+     * replies are sent.
      *
      * @param message Non-null message received
      */
     @Override
-    public void receive(Message message) {
-        if (message instanceof RetrieveFromStore) {
-            RetrieveFromStore retrieve = (RetrieveFromStore) message;
-            List<UserMessage> foundMessage = findByAuthor(retrieve.author);
-            retrieve.storeClient.tell(new FoundMessages(foundMessage, retrieve.communicationId));
-        } else if (message instanceof AddLike) {
-            AddLike addLikeMessage = (AddLike) message;
-            if (isBanned(addLikeMessage.clientName)) {
-                addLikeMessage.storeClient.tell(new UserBanned(addLikeMessage.communicationId));
-            } else if (addLike(addLikeMessage.clientName, addLikeMessage.messageId)) {
-                UserMessage likedMessage = messages.get(addLikeMessage.messageId);
-                addLikeMessage.storeClient.tell(new ReactionResponse(addLikeMessage.communicationId, likedMessage.getPoints()));
-            } else {
-                addLikeMessage.storeClient.tell(new OperationFailed(addLikeMessage.communicationId));
+    public void receive(Message message) throws UnknownClientException, UnknownMessageException {
+        dispatch(message);
+        if (log != null && (messageBox.isEmpty() || uncommittedReplies.size() >= MAX_COMMIT_GROUP)) {
+            commit();
+        }
+    }
+
+    private void processRetrieveFromStore(RetrieveFromStore retrieve) {
+        QueryCache.Page page = queryCache.get(QueryCache.Kind.AUTHOR, retrieve.author,
+                retrieve.continuationToken, retrieve.limit);
+        if (page == null) {
+            // one more message than requested is looked up to find the continuation token
+            page = page(findByAuthor(retrieve.author, retrieve.continuationToken, lookAhead(retrieve.limit)),
+                    retrieve.limit);
+            queryCache.put(QueryCache.Kind.AUTHOR, retrieve.author, retrieve.continuationToken, retrieve.limit, page);
+        }
+        replyFound(retrieve, page, retrieve.chunkSize);
+    }
+
+    private void processAddLike(AddLike addLikeMessage) {
+        if (isBanned(addLikeMessage.clientName)) {
+            reply(addLikeMessage, new UserBanned(addLikeMessage.communicationId));
+        } else if (addLike(addLikeMessage.clientName, addLikeMessage.messageId)) {
+            if (log != null)
+                log.logAddLike(addLikeMessage.clientName, addLikeMessage.messageId);
+            ship(changes -> changes.addLike(addLikeMessage.clientName, addLikeMessage.messageId));
+            UserMessage likedMessage = message(addLikeMessage.messageId);
+            reply(addLikeMessage, new ReactionResponse(addLikeMessage.communicationId, likedMessage.getPoints()));
+        } else {
+            reply(addLikeMessage, new OperationFailed(addLikeMessage.communicationId));
+        }
+    }
+
+    private void processAddDislike(AddDislike addDislikeMessage) {
+        if (isBanned(addDislikeMessage.clientName)) {
+            reply(addDislikeMessage, new UserBanned(addDislikeMessage.communicationId));
+        } else if (addDislike(addDislikeMessage.clientName, addDislikeMessage.messageId)) {
+            if (log != null)
+                log.logAddDislike(addDislikeMessage.clientName, addDislikeMessage.messageId);
+            ship(changes -> changes.addDislike(addDislikeMessage.clientName, addDislikeMessage.messageId));
+            UserMessage dislikedMessage = message(addDislikeMessage.messageId);
+            reply(addDislikeMessage, new ReactionResponse(addDislikeMessage.communicationId, dislikedMessage.getPoints()));
+        } else {
+            reply(addDislikeMessage, new OperationFailed(addDislikeMessage.communicationId));
+        }
+    }
+
+    private void processDeleteLikeOrDislike(DeleteLikeOrDislike deleteLikeOrDislikeMessage) {
+        if (isBanned(deleteLikeOrDislikeMessage.clientName)) {
+            reply(deleteLikeOrDislikeMessage, new UserBanned(deleteLikeOrDislikeMessage.communicationId));
+        } else if (deleteLikeOrDislike(deleteLikeOrDislikeMessage.clientName, deleteLikeOrDislikeMessage.messageId,
+                deleteLikeOrDislikeMessage.typeToDelete)) {
+            if (log != null)
+                log.logDeleteLikeOrDislike(deleteLikeOrDislikeMessage.clientName,
+                        deleteLikeOrDislikeMessage.messageId, deleteLikeOrDislikeMessage.typeToDelete);
+            ship(changes -> changes.deleteLikeOrDislike(deleteLikeOrDislikeMessage.clientName,
+                    deleteLikeOrDislikeMessage.messageId, deleteLikeOrDislikeMessage.typeToDelete));
+            reply(deleteLikeOrDislikeMessage, new OperationAck(deleteLikeOrDislikeMessage.communicationId));
+        } else {
+            reply(deleteLikeOrDislikeMessage, new OperationFailed(deleteLikeOrDislikeMessage.communicationId));
+        }
+    }
+
+    private void processAddReaction(AddReaction addReactionMessage) {
+        if (isBanned(addReactionMessage.clientName)) {
+            reply(addReactionMessage, new UserBanned(addReactionMessage.communicationId));
+        } else if (addReaction(addReactionMessage.clientName, addReactionMessage.messageId, addReactionMessage.reaction)) {
+            if (log != null)
+                log.logAddReaction(addReactionMessage.clientName, addReactionMessage.messageId, addReactionMessage.reaction);
+            ship(changes -> changes.addReaction(addReactionMessage.clientName, addReactionMessage.messageId,
+                    addReactionMessage.reaction));
+            reply(addReactionMessage, new ReactionResponse(addReactionMessage.communicationId, addReactionMessage.reaction.toString()));
+        } else {
+            reply(addReactionMessage, new OperationFailed(addReactionMessage.communicationId));
+        }
+    }
+
+    private void processUpdateMessageStore(UpdateMessageStore updateMessage) {
+        if (isBanned(updateMessage.message.getAuthor())) {
+            reply(updateMessage, new UserBanned(updateMessage.communicationId));
+        } else if (update(updateMessage.message)) {
+            String author = updateMessage.message.getAuthor();
+            String text = updateMessage.message.getMessage();
+            if (log != null)
+                log.logUpdate(author, text);
+            ship(changes -> changes.update(author, text));
+            reply(updateMessage, new OperationAck(updateMessage.communicationId));
+        } else {
+            reply(updateMessage, new OperationFailed(updateMessage.communicationId));
+        }
+    }
+
+    private void processAddReport(AddReport reportMessage) {
+        if (isBanned(reportMessage.clientName)) {
+            reply(reportMessage, new UserBanned(reportMessage.communicationId));
+        } else if (addReport(reportMessage.clientName, reportMessage.reportedClientName)) {
+            if (log != null)
+                log.logAddReport(reportMessage.clientName, reportMessage.reportedClientName);
+            ship(changes -> changes.addReport(reportMessage.clientName, reportMessage.reportedClientName));
+            reply(reportMessage, new OperationAck(reportMessage.communicationId));
+        } else {
+            reply(reportMessage, new OperationFailed(reportMessage.communicationId));
+        }
+    }
+
+    private void processSearchInStore(SearchInStore searchMessage) {
+        QueryCache.Page page = queryCache.get(QueryCache.Kind.SEARCH, searchMessage.searchText,
+                searchMessage.continuationToken, searchMessage.limit);
+        if (page == null) {
+            page = page(findByAuthorOrText(searchMessage.searchText, searchMessage.continuationToken,
+                    lookAhead(searchMessage.limit)), searchMessage.limit);
+            queryCache.put(QueryCache.Kind.SEARCH, searchMessage.searchText, searchMessage.continuationToken,
+                    searchMessage.limit, page);
+        }
+        replyFound(searchMessage, page, searchMessage.chunkSize);
+    }
+
+    private void processTopMessagesInStore(TopMessagesInStore topMessages) {
+        List<UserMessage> foundMessage = findTopMessages(topMessages.author, topMessages.continuationToken,
+                lookAhead(topMessages.limit));
+        // the continuation token is the rank of the first message of the next page
+        long continuationToken = FoundMessages.NO_CONTINUATION;
+        if (foundMessage.size() > topMessages.limit) {
+            continuationToken = topMessages.continuationToken + topMessages.limit;
+            foundMessage.remove(topMessages.limit);
+        }
+        reply(topMessages, new FoundMessages(foundMessage, topMessages.communicationId, continuationToken, true));
+    }
+
+    private void processStoreBatch(StoreBatch batch) throws UnknownClientException, UnknownMessageException {
+        List<StoreReply> replies = new ArrayList<>(batch.messages.size());
+        batchReplies = replies;
+        try {
+            for (MessageStoreMessage message : batch.messages) {
+                dispatch(message);
             }
-        } else if (message instanceof AddDislike) {
-            AddDislike addDislikeMessage = (AddDislike) message;
-            if (isBanned(addDislikeMessage.clientName)) {
-                addDislikeMessage.storeClient.tell(new UserBanned(addDislikeMessage.communicationId));
-            } else if (addDislike(addDislikeMessage.clientName, addDislikeMessage.messageId)) {
-                UserMessage dislikedMessage = messages.get(addDislikeMessage.messageId);
-                addDislikeMessage.storeClient.tell(new ReactionResponse(addDislikeMessage.communicationId, dislikedMessage.getPoints()));
-            } else {
-                addDislikeMessage.storeClient.tell(new OperationFailed(addDislikeMessage.communicationId));
+        } finally {
+            batchReplies = null;
+        }
+        if (!replies.isEmpty()) {
+            send(batch.storeClient, new StoreBatchReply(replies));
+        }
+    }
+
+    private static int lookAhead(int limit) {
+        return limit == FoundMessages.NO_LIMIT ? limit : limit + 1;
+    }
+
+    /**
+     * Makes a page of at most <c>limit</c> found messages. If more messages were found,
+     * the ID of the first of them is the continuation token for the next page.
+     *
+     * @param found the messages found, at most one more than the limit
+     * @param limit the maximum number of messages of the page
+     * @return the page
+     */
+    private static QueryCache.Page page(List<UserMessage> found, int limit) {
+        long continuationToken = FoundMessages.NO_CONTINUATION;
+        if (found.size() > limit) {
+            continuationToken = found.get(limit).getMessageId();
+            found.remove(limit);
+        }
+        return new QueryCache.Page(found, continuationToken);
+    }
+
+    /**
+     * Sends a page of found messages to the store client, in chunks of the given size.
+     *
+     * @param request   the message which is replied to
+     * @param page      the page
+     * @param chunkSize the maximum number of messages per reply, {@link FoundMessages#NO_CHUNKS} for one reply
+     */
+    private void replyFound(MessageStoreMessage request, QueryCache.Page page, int chunkSize) {
+        for (FoundMessages reply : pageReplies(request, page.messages, page.continuationToken, chunkSize)) {
+            reply(request, reply);
+        }
+    }
+
+    /**
+     * Splits one page of found messages into the replies to the store client. The page is
+     * complete before it is split, and the chunks of a request which is sent again are all
+     * sent again (see {@link FoundMessages}).
+     *
+     * @param request           the message which is replied to
+     * @param found             the messages of the page
+     * @param continuationToken the token for the next page
+     * @param chunkSize         the maximum number of messages per reply, {@link FoundMessages#NO_CHUNKS} for one reply
+     * @return the replies in the order they must be sent
+     */
+    static List<FoundMessages> pageReplies(MessageStoreMessage request, List<UserMessage> found,
+                                           long continuationToken, int chunkSize) {
+        if (chunkSize == FoundMessages.NO_CHUNKS || found.size() <= chunkSize) {
+            return Collections.singletonList(new FoundMessages(found, request.communicationId, continuationToken, true));
+        }
+        List<FoundMessages> replies = new ArrayList<>();
+        for (int from = 0; from < found.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, found.size());
+            boolean lastChunk = to == found.size();
+            replies.add(new FoundMessages(new ArrayList<>(found.subList(from, to)), request.communicationId,
+                    lastChunk ? continuationToken : FoundMessages.NO_CONTINUATION, lastChunk));
+        }
+        return replies;
+    }
+
+    /**
+     * Sends the reply to the store client of the request, once the changes made so far have
+     * been committed to the write-ahead log, if there is one.
+     *
+     * @param request the message which is replied to
+     * @param reply   the reply for the client
+     */
+    private void reply(MessageStoreMessage request, ClientMessage reply) {
+        if (batchReplies != null) {
+            batchReplies.add(new StoreReply(request.correlationId, reply));
+        } else if (request.storeClient != null) {
+            send(request.storeClient, replyMessage(request, reply));
+        }
+    }
+
+    /**
+     * Sends a message to a store client, once the changes made so far have been committed
+     * to the write-ahead log, if there is one.
+     *
+     * @param storeClient the store client
+     * @param message     the message
+     */
+    private void send(SimulatedActor storeClient, Message message) {
+        if (log == null) {
+            storeClient.tell(message);
+        } else {
+            uncommittedReplies.add(new UncommittedReply(storeClient, message));
+        }
+    }
+
+    /**
+     * Commits the changes logged so far to the write-ahead log and sends the replies
+     * which waited for it.
+     */
+    private void commit() {
+        log.commit();
+        shipChanges();
+        for (UncommittedReply uncommitted : uncommittedReplies) {
+            uncommitted.storeClient.tell(uncommitted.message);
+        }
+        uncommittedReplies.clear();
+        if (snapshotFile != null) {
+            if (snapshotWrite == null && log.getRecordsSinceReset() >= snapshotInterval) {
+                startSnapshot();
             }
-        } else if (message instanceof DeleteLikeOrDislike) {
-            DeleteLikeOrDislike deleteLikeOrDislikeMessage = (DeleteLikeOrDislike) message;
-            if (isBanned(deleteLikeOrDislikeMessage.clientName)) {
-                deleteLikeOrDislikeMessage.storeClient.tell(new UserBanned(deleteLikeOrDislikeMessage.communicationId));
-            } else if (deleteLikeOrDislike(deleteLikeOrDislikeMessage.clientName, deleteLikeOrDislikeMessage.messageId,
-                    deleteLikeOrDislikeMessage.typeToDelete)) {
-                deleteLikeOrDislikeMessage.storeClient.tell(new OperationAck(deleteLikeOrDislikeMessage.communicationId));
-            } else {
-                deleteLikeOrDislikeMessage.storeClient.tell(new OperationFailed(deleteLikeOrDislikeMessage.communicationId));
+            if (snapshotWrite != null && snapshotWrite.isDone()) {
+                finishSnapshot();
             }
-        } else if (message instanceof AddReaction) {
-            AddReaction addReactionMessage = (AddReaction) message;
-            if (isBanned(addReactionMessage.clientName)) {
-                addReactionMessage.storeClient.tell(new UserBanned(addReactionMessage.communicationId));
-            } else if (addReaction(addReactionMessage.clientName, addReactionMessage.messageId, addReactionMessage.reaction)) {
-                addReactionMessage.storeClient.tell(new ReactionResponse(addReactionMessage.communicationId, addReactionMessage.reaction.toString()));
-            } else {
-                addReactionMessage.storeClient.tell(new OperationFailed(addReactionMessage.communicationId));
+        }
+    }
+
+    /**
+     * Adds a replica, to which all changes are shipped from now on. The replica starts as a copy of
+     * the store, e.g. after the store recovered from its write-ahead log, see {@link #seed(MessageStore)}.
+     * Replicas must be added before the store is spawned.
+     *
+     * @param replica the replica, which must still be empty
+     */
+    void addReplica(MessageStoreReplica replica) {
+        replica.seed(this);
+        replicas.add(replica);
+    }
+
+    /**
+     * Makes this empty store a copy of the given store. The loaded messages are copied with their IDs.
+     * If the given store has not loaded everything from its snapshot yet, this store shares the
+     * snapshot, which is never changed, and loads the other messages from it when they are needed.
+     * The names known to the given store are added to the table of this store in the order of their
+     * IDs, so the copied likes and dislikes are returned in the same order by both stores.
+     *
+     * @param store the store to copy
+     */
+    void seed(MessageStore store) {
+        if (!messages.isEmpty() || snapshot != null || banState.size() > 0)
+            throw new IllegalStateException("only an empty store can be seeded");
+        userIds.addAll(store.userIds);
+        store.banState.forEachReport(banState::addReport);
+        currentId = store.currentId;
+        snapshot = store.snapshot;
+        long[] messageIds = new long[store.messages.size()];
+        int count = 0;
+        for (UserMessage message : store.messages.values()) {
+            messages.put(message.getMessageId(), message.copy(userIds));
+            messageIds[count++] = message.getMessageId();
+        }
+        store.messageIdsByAuthor.forEach((author, ids) -> messageIdsByAuthor.put(author, ids.copy()));
+        store.messageIdsByFingerprint.forEach((fingerprint, ids) -> messageIdsByFingerprint.put(fingerprint, ids.copy()));
+        if (store.trigramIndex == null) {
+            // built once everything has been loaded from the snapshot, like in the given store
+            trigramIndex = null;
+            leaderboard = null;
+            return;
+        }
+        Arrays.sort(messageIds);
+        for (long messageId : messageIds) {
+            UserMessage message = messages.get(messageId);
+            trigramIndex.add(messageId, message.getAuthor(), message.getMessage());
+            addToLeaderboards(message);
+        }
+    }
+
+    /**
+     * @return the number of changes shipped to the replicas so far
+     */
+    long getShippedChanges() {
+        return shippedChanges;
+    }
+
+    /**
+     * @return the number of queries for the messages of an author or for a search text, which were
+     * answered from the query cache
+     */
+    public long getQueryCacheHits() {
+        return queryCache.hits();
+    }
+
+    /**
+     * @return the number of queries for the messages of an author or for a search text, which were
+     * not found in the query cache
+     */
+    public long getQueryCacheMisses() {
+        return queryCache.misses();
+    }
+
+    /**
+     * @return the index of this shard
+     */
+    int getShardIndex() {
+        return shardIndex;
+    }
+
+    /**
+     * @return the number of shards
+     */
+    int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Ships a successful change to the replicas, once it has been committed to the write-ahead log.
+     *
+     * @param change applies the change to the store it is passed
+     */
+    private void ship(Consumer<WriteAheadLog.Changes> change) {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        unshippedChanges.add(change);
+        if (log == null) {
+            shipChanges();
+        }
+    }
+
+    /**
+     * Sends the changes waiting to be shipped to all replicas in a single message. They are counted
+     * as shipped only afterwards, so a replica which has applied fewer changes has the missing
+     * ones in its message box.
+     */
+    private void shipChanges() {
+        if (unshippedChanges.isEmpty()) {
+            return;
+        }
+        ChangeFeed feed = new ChangeFeed(new ArrayList<>(unshippedChanges));
+        unshippedChanges.clear();
+        for (MessageStoreReplica replica : replicas) {
+            replica.tell(feed);
+        }
+        shippedChanges += feed.changes.size();
+    }
+
+    /**
+     * Applies changes shipped by the store of which this store is a replica.
+     *
+     * @param feed the changes in the order they were made
+     */
+    void apply(ChangeFeed feed) {
+        ReplayedChanges replayed = new ReplayedChanges();
+        for (Consumer<WriteAheadLog.Changes> change : feed.changes) {
+            change.accept(replayed);
+        }
+    }
+
+    /**
+     * Starts writing a snapshot of the store. The loaded messages are taken as views and the reports
+     * are copied, so the snapshot keeps the current state while the store goes on changing. Messages
+     * which have not been loaded from the previous snapshot are copied from it by the writer.
+     * The snapshot belongs to the next generation of the log and contains the records up to the
+     * current length of the log, so if the store stops before the log is reset, the records
+     * added while the snapshot was written are still replayed.
+     */
+    private void startSnapshot() {
+        List<UserMessage> loadedMessages = new ArrayList<>(messages.size());
+        for (UserMessage message : messages.values()) {
+            loadedMessages.add(message.view());
+        }
+        MessageStoreSnapshot previous = snapshot;
+        BanState reports = banState.copy();
+        long nextId = currentId;
+        long generation = log.getGeneration() + 1;
+        long logPosition = log.getCommittedLength();
+        File file = snapshotFile;
+        snapshotGeneration = generation;
+        snapshotLogPosition = logPosition;
+        snapshotWrite = CompletableFuture.runAsync(() -> {
+            loadedMessages.sort(Comparator.comparingLong(UserMessage::getMessageId));
+            MessageStoreSnapshot.write(file, nextId, generation, logPosition, merge(previous, loadedMessages), reports);
+        }, snapshotWriter);
+    }
+
+    /**
+     * Resets the write-ahead log to the generation of the snapshot, which has been written,
+     * keeping the records added meanwhile.
+     */
+    private void finishSnapshot() {
+        CompletableFuture<Void> write = snapshotWrite;
+        snapshotWrite = null;
+        try {
+            write.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        log.reset(snapshotGeneration, snapshotLogPosition);
+    }
+
+    /**
+     * @param previous       the snapshot the store started from, null if there is none
+     * @param loadedMessages the loaded messages in ascending order of their IDs
+     * @return the messages of the snapshot, replaced by the loaded messages with the same ID,
+     * and the other loaded messages, in ascending order of their IDs
+     */
+    private static List<UserMessage> merge(MessageStoreSnapshot previous, List<UserMessage> loadedMessages) {
+        if (previous == null) {
+            return loadedMessages;
+        }
+        List<UserMessage> merged = new ArrayList<>(previous.size() + loadedMessages.size());
+        UserIds writerIds = new UserIds();
+        int loaded = 0;
+        for (int i = 0; i < previous.size(); i++) {
+            long messageId = previous.messageIdAt(i);
+            while (loaded < loadedMessages.size() && loadedMessages.get(loaded).getMessageId() < messageId) {
+                merged.add(loadedMessages.get(loaded++));
             }
-        } else if (message instanceof UpdateMessageStore) {
-            UpdateMessageStore updateMessage = (UpdateMessageStore) message;
-            if (isBanned(updateMessage.message.getAuthor())) {
-                updateMessage.storeClient.tell(new UserBanned(updateMessage.communicationId));
-            } else if (update(updateMessage.message)) {
-                updateMessage.storeClient.tell(new OperationAck(updateMessage.communicationId));
+            if (loaded < loadedMessages.size() && loadedMessages.get(loaded).getMessageId() == messageId) {
+                merged.add(loadedMessages.get(loaded++));
             } else {
-                updateMessage.storeClient.tell(new OperationFailed(updateMessage.communicationId));
+                // decoded with a table of the writer, so that it adds no names to the table of the store
+                merged.add(previous.messageAt(i, writerIds));
             }
-        } else if (message instanceof AddReport) {
-            AddReport reportMessage = (AddReport) message;
-            if (isBanned(reportMessage.clientName)) {
-                reportMessage.storeClient.tell(new UserBanned(reportMessage.communicationId));
-            } else if (addReport(reportMessage.clientName, reportMessage.reportedClientName)) {
-                reportMessage.storeClient.tell(new OperationAck(reportMessage.communicationId));
-            } else {
-                reportMessage.storeClient.tell(new OperationFailed(reportMessage.communicationId));
+        }
+        merged.addAll(loadedMessages.subList(loaded, loadedMessages.size()));
+        return merged;
+    }
+
+    /**
+     * Looks up a message, loading it from the snapshot if necessary.
+     *
+     * @param messageId the ID of the message
+     * @return the message, null if there is none with the ID
+     */
+    private UserMessage message(long messageId) {
+        UserMessage message = messages.get(messageId);
+        if (message == null && snapshot != null) {
+            message = snapshot.message(messageId, userIds);
+            if (message != null) {
+                messages.put(messageId, message);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Looks up the IDs of the messages of an author. If the author has not been looked up before,
+     * the IDs and fingerprints of the messages of the author are loaded from the snapshot,
+     * the messages themselves are loaded when they are looked up.
+     *
+     * @param author the author
+     * @return the IDs of the messages of the author, null if there are none
+     */
+    private LongList messageIdsOf(String author) {
+        LongList messageIds = messageIdsByAuthor.get(author);
+        if (messageIds == null && snapshot != null) {
+            int index = snapshot.findAuthor(author);
+            if (index >= 0) {
+                messageIds = loadAuthor(index, author);
             }
-        } else if (message instanceof SearchInStore) {
-            SearchInStore searchMessage = (SearchInStore) message;
-            List<UserMessage> foundMessage = findByAuthorOrText(searchMessage.searchText);
-            searchMessage.storeClient.tell(new FoundMessages(foundMessage, searchMessage.communicationId));
         }
+        return messageIds;
+    }
+
+    private LongList loadAuthor(int index, String author) {
+        LongList messageIds = new LongList();
+        LongList fingerprints = new LongList();
+        snapshot.readMessagesOfAuthor(index, messageIds, fingerprints);
+        for (int i = 0; i < fingerprints.size(); i++) {
+            messageIdsByFingerprint.computeIfAbsent(fingerprints.get(i), fingerprint -> new LongList(1))
+                    .add(messageIds.get(i));
+        }
+        messageIdsByAuthor.put(author, messageIds);
+        return messageIds;
+    }
+
+    /**
+     * Loads everything which has not been loaded from the snapshot yet and builds the trigram index
+     * and the leaderboards.
+     * Authors are loaded before their first message is stored, so all new messages have higher IDs
+     * than the messages of the snapshot and are appended to the index of their author.
+     */
+    private void loadSnapshot() {
+        if (snapshot == null) {
+            return;
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            long messageId = snapshot.messageIdAt(i);
+            if (!messages.containsKey(messageId)) {
+                messages.put(messageId, snapshot.messageAt(i, userIds));
+            }
+        }
+        for (int i = 0; i < snapshot.authorCount(); i++) {
+            String author = snapshot.authorAt(i);
+            if (!messageIdsByAuthor.containsKey(author)) {
+                loadAuthor(i, author);
+            }
+        }
+        long[] messageIds = new long[messages.size()];
+        int count = 0;
+        for (long messageId : messages.keySet()) {
+            messageIds[count++] = messageId;
+        }
+        Arrays.sort(messageIds);
+        trigramIndex = new TrigramIndex();
+        leaderboard = new Leaderboard();
+        leaderboardsByAuthor.clear();
+        for (long messageId : messageIds) {
+            UserMessage message = messages.get(messageId);
+            trigramIndex.add(messageId, message.getAuthor(), message.getMessage());
+            addToLeaderboards(message);
+        }
+        snapshot = null;
+    }
+
+    /**
+     * Sends the reply to the store client of the request. Requests without a store client
+     * are copies sent to other shards only to keep them up to date, they are not replied to.
+     *
+     * @param request the message which is replied to
+     * @param reply   the reply for the client
+     */
+    static void sendReply(MessageStoreMessage request, ClientMessage reply) {
+        if (request.storeClient != null) {
+            request.storeClient.tell(replyMessage(request, reply));
+        }
+    }
+
+    /**
+     * @param request the message which is replied to
+     * @param reply   the reply for the client
+     * @return the reply, wrapped in a <c>StoreReply</c> if the request has a correlation ID
+     */
+    private static Message replyMessage(MessageStoreMessage request, ClientMessage reply) {
+        if (request.correlationId == MessageStoreMessage.NO_CORRELATION_ID) {
+            return reply;
+        }
+        return new StoreReply(request.correlationId, reply);
     }
 
     private boolean isBanned(String clientName) {
-        HashSet<String> reporters = reports.getOrDefault(clientName, null);
-        return reporters != null && reporters.size() > 5;
+        return banState.isBanned(clientName);
     }
 
     /**
-     * Internal helper method containing the update logic
+     * Internal helper method containing the update logic.
+     * Uses the fingerprint index to look for the same message of the same author,
+     * so the cost does not grow with the number of stored messages.
      *
      * @param message the user message to be saved
      * @return true if successful, false otherwise
@@ -164,54 +971,169 @@ public class MessageStore extends SimulatedActor {
     private boolean update(UserMessage message) {
 
         if (message.getMessageId() == UserMessage.NEW_ID) {
-            boolean containsSameMessage = false;
-            for (UserMessage m : messages.values()) {
-                if (m.getAuthor().equals(message.getAuthor()) && m.getMessage().equals(message.getMessage())) {
-                    containsSameMessage = true;
-                    break; // added
+            // loads the messages of the author from the snapshot, so that duplicates are found
+            messageIdsOf(message.getAuthor());
+            long fingerprint = fingerprint(message.getAuthor(), message.getMessage());
+            LongList sameFingerprint = messageIdsByFingerprint.get(fingerprint);
+            if (sameFingerprint != null) {
+                for (int i = 0; i < sameFingerprint.size(); i++) {
+                    UserMessage m = message(sameFingerprint.get(i));
+                    if (Objects.equals(m.getAuthor(), message.getAuthor()) &&
+                            Objects.equals(m.getMessage(), message.getMessage()))
+                        return false;
                 }
+            } else {
+                sameFingerprint = new LongList(1);
+                messageIdsByFingerprint.put(fingerprint, sameFingerprint);
             }
-            if (!containsSameMessage) {
-                message.setMessageId(currentId++);
-                messages.put(message.getMessageId(), message);
-                return true;
-            }
+            message.useUserIds(userIds);
+            message.setMessageId(currentId);
+            currentId += shardCount;
+            messages.put(message.getMessageId(), message);
+            messageIdsByAuthor.computeIfAbsent(message.getAuthor(), author -> new LongList())
+                    .add(message.getMessageId());
+            sameFingerprint.add(message.getMessageId());
+            if (trigramIndex != null)
+                trigramIndex.add(message.getMessageId(), message.getAuthor(), message.getMessage());
+            addToLeaderboards(message);
+            queryCache.invalidateNewMessage(message);
+            return true;
         }
         return false;
     }
 
+    /**
+     * Combines the hash codes of author and text of a message, which strings cache,
+     * into a 64 bit fingerprint.
+     *
+     * @param author the author of the message
+     * @param text   the text of the message
+     * @return the fingerprint
+     */
+    static long fingerprint(String author, String text) {
+        return ((long) Objects.hashCode(author) << 32) | (Objects.hashCode(text) & 0xffffffffL);
+    }
+
     /**
      * Internal helper method containing the logic for looking up messages.
+     * Uses the author index, so only the messages of the author are visited.
      *
-     * @param author the name of the author of the returned messages
-     * @return all messages posted by the given author
+     * @param author        the name of the author of the returned messages
+     * @param fromMessageId the smallest ID of returned messages
+     * @param maxResults    the maximum number of returned messages
+     * @return views of the messages posted by the given author
      */
-    private List<UserMessage> findByAuthor(String author) {
-        List<UserMessage> foundMessages = new ArrayList<>();
-        for (UserMessage message : messages.values()) {
-            if (message.getAuthor().equals(author))
-                foundMessages.add(message);
+    private List<UserMessage> findByAuthor(String author, long fromMessageId, int maxResults) {
+        LongList messageIds = messageIdsOf(author);
+        if (messageIds == null)
+            return new ArrayList<>();
+        int from = messageIds.lowerBound(fromMessageId);
+        int to = (int) Math.min((long) from + maxResults, messageIds.size());
+        List<UserMessage> foundMessages = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            foundMessages.add(message(messageIds.get(i)).view());
         }
         return foundMessages;
     }
 
     /**
      * Internal helper method containing the logic for looking up messages
-     * by Author or by their message text.
+     * by Author or by their message text, ignoring case. Uses the trigram index, so
+     * mostly messages containing the text are visited.
      *
-     * @param searchText the name of the author of the returned messages
-     * @return all messages containing the given Text
+     * @param searchText    the name of the author of the returned messages
+     * @param fromMessageId the smallest ID of returned messages
+     * @param maxResults    the maximum number of returned messages
+     * @return views of the messages containing the given Text
      */
-    private List<UserMessage> findByAuthorOrText(String searchText) {
-        List<UserMessage> foundMessages = new ArrayList<>();
-        for (UserMessage message : messages.values()) {
-            if (message.getAuthor().toLowerCase().contains(searchText.toLowerCase()) ||
-                    message.getMessage().toLowerCase().contains(searchText.toLowerCase()))
-                foundMessages.add(message);
+    private List<UserMessage> findByAuthorOrText(String searchText, long fromMessageId, int maxResults) {
+        loadSnapshot();
+        LongList messageIds = trigramIndex.find(searchText, fromMessageId, maxResults);
+        List<UserMessage> foundMessages = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) {
+            foundMessages.add(messages.get(messageIds.get(i)).view());
+        }
+        return foundMessages;
+    }
+
+    /**
+     * Internal helper method containing the logic for looking up the messages with the most points.
+     * Uses the leaderboards, so only the returned messages and O(log n) others are visited.
+     * Looking up the top messages of all authors loads all messages of a snapshot, looking up
+     * those of an author only loads the messages of the author.
+     *
+     * @param author     the name of the author of the returned messages, null for all authors
+     * @param fromRank   the rank of the first returned message
+     * @param maxResults the maximum number of returned messages
+     * @return views of the messages ordered by points, highest first
+     */
+    private List<UserMessage> findTopMessages(String author, long fromRank, int maxResults) {
+        Leaderboard ranking;
+        if (author == null) {
+            loadSnapshot();
+            ranking = leaderboard;
+        } else {
+            ranking = leaderboardOf(author);
         }
+        List<UserMessage> foundMessages = new ArrayList<>();
+        if (ranking != null)
+            ranking.find(fromRank, maxResults, foundMessages);
+        foundMessages.replaceAll(UserMessage::view);
         return foundMessages;
     }
 
+    /**
+     * Looks up the leaderboard of an author. Until all messages of a snapshot have been loaded,
+     * it is built from the messages of the author when it is looked up for the first time.
+     *
+     * @param author the author
+     * @return the messages of the author ordered by points, null if there are none
+     */
+    private Leaderboard leaderboardOf(String author) {
+        Leaderboard ranking = leaderboardsByAuthor.get(author);
+        if (ranking == null && leaderboard == null) {
+            LongList messageIds = messageIdsOf(author);
+            if (messageIds != null) {
+                ranking = new Leaderboard();
+                for (int i = 0; i < messageIds.size(); i++) {
+                    ranking.add(message(messageIds.get(i)));
+                }
+                leaderboardsByAuthor.put(author, ranking);
+            }
+        }
+        return ranking;
+    }
+
+    /**
+     * Adds a new message to the leaderboards which have been built.
+     */
+    private void addToLeaderboards(UserMessage message) {
+        if (leaderboard != null) {
+            leaderboard.add(message);
+            leaderboardsByAuthor.computeIfAbsent(message.getAuthor(), author -> new Leaderboard()).add(message);
+        } else {
+            Leaderboard ofAuthor = leaderboardsByAuthor.get(message.getAuthor());
+            if (ofAuthor != null)
+                ofAuthor.add(message);
+        }
+    }
+
+    /**
+     * Changes the points of a message and moves it in the leaderboards, if they have been built.
+     *
+     * @param message the message
+     * @param points  the new points of the message
+     */
+    private void setPoints(UserMessage message, int points) {
+        int oldPoints = message.getPoints();
+        message.setPoints(points);
+        if (leaderboard != null)
+            leaderboard.update(message, oldPoints);
+        Leaderboard ofAuthor = leaderboardsByAuthor.get(message.getAuthor());
+        if (ofAuthor != null)
+            ofAuthor.update(message, oldPoints);
+    }
+
     /**
      * Internal helper method containing the logic for adding likes.
      *
@@ -220,13 +1142,13 @@ public class MessageStore extends SimulatedActor {
      * @return true if successful, false otherwise
      */
     private boolean addLike(String clientName, long messageId) {
-        if (!messages.containsKey(messageId))
+        UserMessage message = message(messageId);
+        if (message == null)
             return false;
-        UserMessage message = messages.get(messageId);
-        if (message.getLikes().contains(clientName))
+        if (!message.addLike(clientName))
             return false;
-        message.getLikes().add(clientName);
-        message.setPoints(message.getPoints() + 2);
+        setPoints(message, message.getPoints() + 2);
+        queryCache.invalidateMessage(messageId);
         return true;
     }
 
@@ -238,19 +1160,18 @@ public class MessageStore extends SimulatedActor {
      * @return true if successful, false otherwise
      */
     private boolean deleteLikeOrDislike(String clientName, long messageId, DeleteLikeOrDislike.Type type) {
-        if (!messages.containsKey(messageId))
+        UserMessage message = message(messageId);
+        if (message == null)
             return false;
-        UserMessage message = messages.get(messageId);
         if (type == DeleteLikeOrDislike.Type.LIKE) {
-            if (!message.getLikes().contains(clientName))
+            if (!message.removeLike(clientName))
                 return false;
-            message.getLikes().remove(clientName);
         } else if (type == DeleteLikeOrDislike.Type.DISLIKE) {
-            if (!message.getDislikes().contains(clientName))
+            if (!message.removeDislike(clientName))
                 return false;
-            message.getDislikes().remove(clientName);
         } else
             throw new NullPointerException("Unknown delete type.");
+        queryCache.invalidateMessage(messageId);
         return true;
     }
 
@@ -262,14 +1183,13 @@ public class MessageStore extends SimulatedActor {
      * @return true if successful, false otherwise
      */
     private boolean addDislike(String clientName, long messageId) {
-        if (!messages.containsKey(messageId))
+        UserMessage message = message(messageId);
+        if (message == null)
             return false;
-        UserMessage message = messages.get(messageId);
-        if (message.getDislikes().contains(clientName))
+        if (!message.addDislike(clientName))
             return false;
-        message.getDislikes().add(clientName);
-        message.setPoints(message.getPoints() - 1);
-
+        setPoints(message, message.getPoints() - 1);
+        queryCache.invalidateMessage(messageId);
         return true;
     }
 
@@ -281,15 +1201,8 @@ public class MessageStore extends SimulatedActor {
      * @return true if successful, false otherwise
      */
     private boolean addReport(String clientName, String reportedClientName) {
-
-        HashSet<String> reporters = reports.getOrDefault(reportedClientName, new HashSet<>());
-        if (reporters.add(clientName)) {
-            reports.put(reportedClientName, reporters);
-            return true;
-        } else {
-            // reporter already reported the user
-            return false;
-        }
+        // false if the reporter already reported the user
+        return banState.addReport(clientName, reportedClientName);
     }
 
     /**
@@ -300,17 +1213,60 @@ public class MessageStore extends SimulatedActor {
      * @return true if successful, false otherwise
      */
     private boolean addReaction(String clientName, long messageId, Reaction.Emoji reaction) {
-        if (!messages.containsKey(messageId))
+        UserMessage message = message(messageId);
+        if (message == null)
             return false;
-        UserMessage message = messages.get(messageId);
-        Set<Reaction.Emoji> reactionsSet = new HashSet<>();
-        if (message.getReactions().containsKey(clientName))
-            if (message.getReactions().get(clientName).contains(reaction))
-                return false;
-            else
-                reactionsSet = message.getReactions().get(clientName);
-        reactionsSet.add(reaction);
-        message.getReactions().put(clientName, reactionsSet);
+        if (!message.addReaction(clientName, reaction))
+            return false;
+        queryCache.invalidateMessage(messageId);
         return true;
     }
+
+    /**
+     * A reply waiting for the next commit of the write-ahead log.
+     */
+    private static class UncommittedReply {
+        final SimulatedActor storeClient;
+        final Message message;
+
+        UncommittedReply(SimulatedActor storeClient, Message message) {
+            this.storeClient = storeClient;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Applies the changes replayed from the write-ahead log, which were successful when they were logged.
+     */
+    private class ReplayedChanges implements WriteAheadLog.Changes {
+        @Override
+        public void update(String author, String text) {
+            MessageStore.this.update(new UserMessage(author, text));
+        }
+
+        @Override
+        public void addLike(String clientName, long messageId) {
+            MessageStore.this.addLike(clientName, messageId);
+        }
+
+        @Override
+        public void addDislike(String clientName, long messageId) {
+            MessageStore.this.addDislike(clientName, messageId);
+        }
+
+        @Override
+        public void deleteLikeOrDislike(String clientName, long messageId, DeleteLikeOrDislike.Type type) {
+            MessageStore.this.deleteLikeOrDislike(clientName, messageId, type);
+        }
+
+        @Override
+        public void addReaction(String clientName, long messageId, Reaction.Emoji reaction) {
+            MessageStore.this.addReaction(clientName, messageId, reaction);
+        }
+
+        @Override
+        public void addReport(String clientName, String reportedClientName) {
+            MessageStore.this.addReport(clientName, reportedClientName);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.actorsystem.Message;
+import at.tugraz.ist.qs2022.messageboard.messagestoremessages.MessageStoreMessage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Copy of a {@link MessageStore}, kept up to date by the changes the store ships to it, which
+ * answers read requests with its own messages and indexes, see {@link ReplicatedMessageStore}.
+ * <p>
+ * A replica may lag behind the store by at most the staleness bound, counted in changes. A read
+ * request arriving while the replica lags further, or before it has applied all changes shipped
+ * when the request arrived if the request asks to read its writes, waits until enough changes
+ * have been applied. The missing changes were shipped before, so they are already on their way.
+ */
+public class MessageStoreReplica extends MessageStore {
+
+    private final MessageStore primary;
+
+    private final long stalenessBound;
+
+    /**
+     * number of changes applied so far
+     */
+    private volatile long appliedChanges = 0;
+
+    /**
+     * Read request waiting for changes.
+     */
+    private static class WaitingRead {
+        final Message request;
+        final long requiredChanges;
+
+        WaitingRead(Message request, long requiredChanges) {
+            this.request = request;
+            this.requiredChanges = requiredChanges;
+        }
+    }
+
+    /**
+     * read requests waiting for changes, ordered by the number of changes they wait for
+     */
+    private final List<WaitingRead> waitingReads = new ArrayList<>();
+
+    /**
+     * Constructs a new replica of the store, which starts as a copy of the store.
+     * It must be constructed before the store is spawned.
+     *
+     * @param primary        the store, which ships its changes to the replica
+     * @param stalenessBound the maximum number of changes shipped, but not yet applied,
+     *                       when a read request is answered
+     */
+    public MessageStoreReplica(MessageStore primary, long stalenessBound) {
+        super(primary.getShardIndex(), primary.getShardCount());
+        if (stalenessBound < 0)
+            throw new IllegalArgumentException("staleness bound must not be negative");
+        this.primary = primary;
+        this.stalenessBound = stalenessBound;
+        primary.addReplica(this);
+    }
+
+    long getStalenessBound() {
+        return stalenessBound;
+    }
+
+    /**
+     * @return the number of changes shipped by the store, but not yet applied by the replica
+     */
+    long lag() {
+        return primary.getShippedChanges() - appliedChanges;
+    }
+
+    /**
+     * Applies changes shipped by the store and answers the read requests waiting for them.
+     * Other messages are read requests, which are answered if the replica is up to date enough.
+     *
+     * @param message Non-null message received
+     */
+    @Override
+    public void receive(Message message) throws UnknownClientException, UnknownMessageException {
+        if (message instanceof ChangeFeed) {
+            ChangeFeed feed = (ChangeFeed) message;
+            apply(feed);
+            appliedChanges += feed.changes.size();
+            Iterator<WaitingRead> iterator = waitingReads.iterator();
+            while (iterator.hasNext()) {
+                WaitingRead read = iterator.next();
+                if (read.requiredChanges > appliedChanges) {
+                    break;
+                }
+                iterator.remove();
+                super.receive(read.request);
+            }
+            return;
+        }
+        long shipped = primary.getShippedChanges();
+        long requiredChanges = shipped - stalenessBound;
+        if (message instanceof MessageStoreMessage && ((MessageStoreMessage) message).readYourWrites) {
+            requiredChanges = shipped;
+        }
+        if (requiredChanges > appliedChanges) {
+            int position = waitingReads.size();
+            while (position > 0 && waitingReads.get(position - 1).requiredChanges > requiredChanges) {
+                position--;
+            }
+            waitingReads.add(position, new WaitingRead(message, requiredChanges));
+        } else {
+            super.receive(message);
+        }
+    }
+}
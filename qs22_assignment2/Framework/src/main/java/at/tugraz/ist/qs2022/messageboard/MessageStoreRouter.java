@@ -0,0 +1,365 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.actorsystem.DeterministicChannel;
+import at.tugraz.ist.qs2022.actorsystem.Message;
+import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2022.messageboard.clientmessages.FoundMessages;
+import at.tugraz.ist.qs2022.messageboard.messagestoremessages.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Stands in for the message store in front of several {@link MessageStore} shards, so that
+ * store requests are processed by the shards in parallel.
+ * <p>
+ * Messages are partitioned by author: a new message is stored by the shard of its author,
+ * which assigns an ID telling the shard (see {@link MessageStore#MessageStore(int, int)}).
+ * Requests for a message are sent to the shard derived from the message ID and requests
+ * for the messages of an author to the shard of the author. Reports are replicated to all
+ * shards, so that every shard knows the banned users, only the shard of the reported user
+ * replies. Searches are sent to all shards, the router gathers their results and replies
+ * with the messages ordered by ID, paged and chunked as requested. Requests for the top messages
+ * of an author are sent to the shard of the author, those for the top messages of all authors
+ * are sent to all shards, whose rankings the router merges. The messages of a batch are
+ * sent in a batch per shard.
+ * <p>
+ * The router is spawned like the store, on a channel without delay. It processes all messages
+ * in the tick in which they are delivered, as routing takes no time, so it does not become a
+ * bottleneck itself.
+ */
+public class MessageStoreRouter extends SimulatedActor {
+
+    /**
+     * number of ticks after which the router stops waiting for the results of shards, store clients
+     * which resend requests give up long before (see {@link WorkerHelper})
+     */
+    static final int PENDING_TIMEOUT = 100;
+
+    private final List<SimulatedActor> shards;
+
+    /**
+     * searches waiting for results of shards, the key of the dictionary is the correlation ID
+     * used for the requests to the shards, ordered by the time they were sent to the shards
+     * <p>
+     * A reply of a shard may be lost, e.g. if a bounded message box drops it, so a pending request
+     * may never get the replies of all shards. Store clients resend a request if no reply arrives in
+     * time, like {@link Worker} and {@link WorkerHelper} do. The request is then sent to the shards
+     * again, while the earlier attempt stays pending, as its replies may merely be late: the attempt
+     * completing first answers, the store client ignores the other answer. Pending requests are
+     * dropped after {@link #PENDING_TIMEOUT} ticks.
+     */
+    private final Map<Long, PendingSearch> pendingSearches = new LinkedHashMap<>();
+
+    /**
+     * requests for the top messages of all authors waiting for results of shards, the key of
+     * the dictionary is the correlation ID used for the requests to the shards, ordered by the time
+     * they were sent to the shards
+     */
+    private final Map<Long, PendingTopMessages> pendingTopMessages = new LinkedHashMap<>();
+
+    /**
+     * integral number used for creating correlation IDs
+     */
+    private long nextCorrelationId = 0;
+
+    /**
+     * Request sent to all shards, whose results are gathered until all shards replied.
+     */
+    private static class PendingRequest<R extends MessageStoreMessage> {
+        final R request;
+        final List<UserMessage> found = new ArrayList<>();
+
+        /**
+         * time at which the request was sent to the shards
+         */
+        final int sentAt;
+
+        int missingReplies;
+
+        PendingRequest(R request, int missingReplies, int sentAt) {
+            this.request = request;
+            this.missingReplies = missingReplies;
+            this.sentAt = sentAt;
+        }
+    }
+
+    /**
+     * Search sent to all shards, whose results are gathered until all shards replied.
+     */
+    private static class PendingSearch extends PendingRequest<SearchInStore> {
+        /**
+         * smallest continuation token of the shards, which did not return all their messages
+         */
+        long continuationToken = FoundMessages.NO_CONTINUATION;
+
+        PendingSearch(SearchInStore request, int missingReplies, int sentAt) {
+            super(request, missingReplies, sentAt);
+        }
+    }
+
+    /**
+     * Request for the top messages of all authors sent to all shards, whose results are gathered
+     * until all shards replied.
+     */
+    private static class PendingTopMessages extends PendingRequest<TopMessagesInStore> {
+        /**
+         * true if a shard did not return all its messages
+         */
+        boolean moreMessages = false;
+
+        PendingTopMessages(TopMessagesInStore request, int missingReplies, int sentAt) {
+            super(request, missingReplies, sentAt);
+        }
+    }
+
+    /**
+     * Constructs a new MessageStoreRouter object.
+     *
+     * @param shards the shards, the shard at index i must have been constructed with index i
+     *               and the number of shards, a shard may be a {@link ReplicatedMessageStore}
+     */
+    public MessageStoreRouter(List<? extends SimulatedActor> shards) {
+        this.shards = new ArrayList<>(shards);
+        this.channel = new DeterministicChannel(0);
+        this.processMessagesImmediately = true;
+    }
+
+    /**
+     * Sends a message for the store to the shards responsible for it, or gathers
+     * the results of a shard.
+     *
+     * @param message Non-null message received
+     */
+    @Override
+    public void receive(Message message) {
+        route(message);
+    }
+
+    private void route(Message message) {
+        if (message instanceof StoreReply) {
+            gather((StoreReply) message);
+        } else if (message instanceof StoreBatch) {
+            split((StoreBatch) message);
+        } else if (message instanceof SearchInStore) {
+            scatter((SearchInStore) message);
+        } else if (message instanceof TopMessagesInStore && ((TopMessagesInStore) message).author == null) {
+            scatter((TopMessagesInStore) message);
+        } else if (message instanceof AddReport) {
+            AddReport report = (AddReport) message;
+            int owner = shardOfAuthor(report.reportedClientName);
+            for (int i = 0; i < shards.size(); i++) {
+                if (i == owner) {
+                    shards.get(i).tell(report);
+                } else {
+                    // the copy has no store client, so the shard does not reply
+                    shards.get(i).tell(new AddReport(report.clientName, report.communicationId, report.reportedClientName));
+                }
+            }
+        } else {
+            shards.get(shardOf(message)).tell(message);
+        }
+    }
+
+    /**
+     * @param message a message which is sent to a single shard
+     * @return the index of the shard responsible for the message
+     */
+    private int shardOf(Message message) {
+        if (message instanceof UpdateMessageStore) {
+            return shardOfAuthor(((UpdateMessageStore) message).message.getAuthor());
+        } else if (message instanceof RetrieveFromStore) {
+            return shardOfAuthor(((RetrieveFromStore) message).author);
+        } else if (message instanceof TopMessagesInStore) {
+            return shardOfAuthor(((TopMessagesInStore) message).author);
+        } else if (message instanceof AddLike) {
+            return shardOfMessage(((AddLike) message).messageId);
+        } else if (message instanceof AddDislike) {
+            return shardOfMessage(((AddDislike) message).messageId);
+        } else if (message instanceof AddReaction) {
+            return shardOfMessage(((AddReaction) message).messageId);
+        } else if (message instanceof DeleteLikeOrDislike) {
+            return shardOfMessage(((DeleteLikeOrDislike) message).messageId);
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if the message is sent to a single shard
+     */
+    private static boolean isSingleShard(MessageStoreMessage message) {
+        return !(message instanceof SearchInStore || message instanceof AddReport || message instanceof StoreBatch ||
+                (message instanceof TopMessagesInStore && ((TopMessagesInStore) message).author == null));
+    }
+
+    /**
+     * Sends the messages of a batch, which are sent to a single shard, in a batch per shard and
+     * the other messages one by one. The batches built so far are sent before each of the other
+     * messages, so every shard gets the messages in the order of the batch. The shards reply to
+     * the store client of the batch directly.
+     */
+    private void split(StoreBatch batch) {
+        List<List<MessageStoreMessage>> batches = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (MessageStoreMessage message : batch.messages) {
+            if (isSingleShard(message)) {
+                batches.get(shardOf(message)).add(message);
+            } else {
+                flush(batch, batches);
+                route(message);
+            }
+        }
+        flush(batch, batches);
+    }
+
+    /**
+     * Sends the messages collected for each shard, a single message on its own, and clears them.
+     */
+    private void flush(StoreBatch batch, List<List<MessageStoreMessage>> batches) {
+        for (int i = 0; i < shards.size(); i++) {
+            List<MessageStoreMessage> messages = batches.get(i);
+            if (messages.size() == 1) {
+                shards.get(i).tell(messages.get(0));
+            } else if (messages.size() > 1) {
+                StoreBatch shardBatch = new StoreBatch(new ArrayList<>(messages));
+                shardBatch.storeClient = batch.storeClient;
+                shardBatch.readYourWrites = batch.readYourWrites;
+                shards.get(i).tell(shardBatch);
+            }
+            messages.clear();
+        }
+    }
+
+    private int shardOfAuthor(String author) {
+        return Math.floorMod(Objects.hashCode(author), shards.size());
+    }
+
+    private int shardOfMessage(long messageId) {
+        return (int) Math.floorMod(messageId, (long) shards.size());
+    }
+
+    /**
+     * Drops the pending requests which timed out.
+     *
+     * @return the correlation ID for the requests to the shards
+     */
+    private long startScatter() {
+        int now = getTimeSinceSystemStart();
+        dropTimedOut(pendingSearches, now);
+        dropTimedOut(pendingTopMessages, now);
+        return nextCorrelationId++;
+    }
+
+    private void dropTimedOut(Map<Long, ? extends PendingRequest<?>> pending, int now) {
+        Iterator<? extends PendingRequest<?>> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingRequest<?> oldest = iterator.next();
+            if (now - oldest.sentAt <= PENDING_TIMEOUT) {
+                // all other requests were sent later
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private void scatter(SearchInStore search) {
+        long correlationId = startScatter();
+        pendingSearches.put(correlationId, new PendingSearch(search, shards.size(), getTimeSinceSystemStart()));
+        for (SimulatedActor shard : shards) {
+            // every shard returns up to a whole page, as the page may come from a single shard
+            SearchInStore request = new SearchInStore(search.searchText, search.communicationId,
+                    search.limit, search.continuationToken, FoundMessages.NO_CHUNKS);
+            request.readYourWrites = search.readYourWrites;
+            request.storeClient = this;
+            request.correlationId = correlationId;
+            shard.tell(request);
+        }
+    }
+
+    private void scatter(TopMessagesInStore topMessages) {
+        long correlationId = startScatter();
+        pendingTopMessages.put(correlationId, new PendingTopMessages(topMessages, shards.size(), getTimeSinceSystemStart()));
+        // all messages up to the end of the page may come from a single shard
+        long untilRank = topMessages.continuationToken + topMessages.limit;
+        int limit = untilRank >= FoundMessages.NO_LIMIT ? FoundMessages.NO_LIMIT : (int) untilRank;
+        for (SimulatedActor shard : shards) {
+            TopMessagesInStore request = new TopMessagesInStore(null, topMessages.communicationId, limit);
+            request.readYourWrites = topMessages.readYourWrites;
+            request.storeClient = this;
+            request.correlationId = correlationId;
+            shard.tell(request);
+        }
+    }
+
+    private void gather(StoreReply reply) {
+        if (pendingTopMessages.containsKey(reply.correlationId)) {
+            gatherTopMessages(reply);
+            return;
+        }
+        PendingSearch search = pendingSearches.get(reply.correlationId);
+        if (search == null) {
+            return;
+        }
+        FoundMessages shardPage = (FoundMessages) reply.reply;
+        search.found.addAll(shardPage.messages);
+        if (shardPage.continuationToken != FoundMessages.NO_CONTINUATION &&
+                (search.continuationToken == FoundMessages.NO_CONTINUATION ||
+                        shardPage.continuationToken < search.continuationToken)) {
+            search.continuationToken = shardPage.continuationToken;
+        }
+        if (--search.missingReplies > 0) {
+            return;
+        }
+        pendingSearches.remove(reply.correlationId);
+
+        List<UserMessage> page = search.found;
+        page.sort(Comparator.comparingLong(UserMessage::getMessageId));
+        long continuationToken = search.continuationToken;
+        int limit = search.request.limit;
+        if (page.size() > limit) {
+            // the next page starts with the first message left out, unless a shard did not return an earlier one
+            long firstLeftOut = page.get(limit).getMessageId();
+            if (continuationToken == FoundMessages.NO_CONTINUATION || firstLeftOut < continuationToken) {
+                continuationToken = firstLeftOut;
+            }
+            page = new ArrayList<>(page.subList(0, limit));
+        }
+        for (FoundMessages found : MessageStore.pageReplies(search.request, page, continuationToken,
+                search.request.chunkSize)) {
+            MessageStore.sendReply(search.request, found);
+        }
+    }
+
+    private void gatherTopMessages(StoreReply reply) {
+        PendingTopMessages topMessages = pendingTopMessages.get(reply.correlationId);
+        FoundMessages shardPage = (FoundMessages) reply.reply;
+        topMessages.found.addAll(shardPage.messages);
+        if (shardPage.continuationToken != FoundMessages.NO_CONTINUATION) {
+            topMessages.moreMessages = true;
+        }
+        if (--topMessages.missingReplies > 0) {
+            return;
+        }
+        pendingTopMessages.remove(reply.correlationId);
+
+        List<UserMessage> ranking = topMessages.found;
+        ranking.sort(Comparator.comparingInt(UserMessage::getPoints).reversed()
+                .thenComparingLong(UserMessage::getMessageId));
+        TopMessagesInStore request = topMessages.request;
+        int from = (int) Math.min(request.continuationToken, ranking.size());
+        int to = (int) Math.min(request.continuationToken + request.limit, ranking.size());
+        long continuationToken = FoundMessages.NO_CONTINUATION;
+        if (ranking.size() > to || topMessages.moreMessages) {
+            continuationToken = request.continuationToken + request.limit;
+        }
+        MessageStore.sendReply(request, new FoundMessages(new ArrayList<>(ranking.subList(from, to)),
+                request.communicationId, continuationToken, true));
+    }
+}
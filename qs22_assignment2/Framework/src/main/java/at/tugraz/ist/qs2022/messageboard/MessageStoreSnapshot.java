@@ -0,0 +1,493 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Snapshot of the state of a {@link MessageStore}, which is mapped into memory
+ * instead of being read, so that a store can use it right after opening it.
+ * <p>
+ * The file starts with a header followed by the messages, an index of the messages
+ * sorted by ID, the authors with the IDs of their messages, an index of the authors
+ * sorted by name and the reports. Messages and authors are only decoded when they are
+ * looked up, using binary search in the indexes. Numbers are stored with a fixed size,
+ * texts as their UTF-8 length (-1 for null) followed by the bytes.
+ * <p>
+ * A snapshot is written to a temporary file, which replaces the old snapshot once
+ * it is complete, so a crash never leaves an incomplete snapshot behind.
+ * Errors reading or writing the file are thrown as {@link UncheckedIOException}.
+ */
+public final class MessageStoreSnapshot {
+
+    private static final int MAGIC = 0x4d53534e;
+
+    private static final int VERSION = 3;
+
+    /**
+     * magic, version, ID counter, log generation, log position, number of messages, number of authors
+     * and the offsets of the message index, the author index and the reports
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 4 + 8 + 8 + 8;
+
+    /**
+     * ID and offset of a message
+     */
+    private static final int MESSAGE_INDEX_ENTRY_SIZE = 16;
+
+    /**
+     * Files are mapped in segments, as a single mapping is limited to 2 GB. Segments overlap
+     * by the size of a long, so that each number can be read from the segment it starts in.
+     */
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private final MappedByteBuffer[] segments;
+
+    private final long currentId;
+
+    private final long logGeneration;
+
+    private final long logPosition;
+
+    private final int messageCount;
+
+    private final int authorCount;
+
+    private final long messageIndexOffset;
+
+    private final long authorIndexOffset;
+
+    private final long reportsOffset;
+
+    private MessageStoreSnapshot(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Snapshot is too short: " + file);
+            }
+            segments = new MappedByteBuffer[(int) ((size - 1) / SEGMENT_SIZE) + 1];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SEGMENT_SIZE + 8L, size - start));
+            }
+        }
+        if (readInt(0) != MAGIC || readInt(4) != VERSION) {
+            throw new IOException("Not a message store snapshot: " + file);
+        }
+        currentId = readLong(8);
+        logGeneration = readLong(16);
+        logPosition = readLong(24);
+        messageCount = readInt(32);
+        authorCount = readInt(36);
+        messageIndexOffset = readLong(40);
+        authorIndexOffset = readLong(48);
+        reportsOffset = readLong(56);
+    }
+
+    /**
+     * Maps the snapshot into memory, only the header is read.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot.
+     */
+    public static MessageStoreSnapshot open(File file) {
+        try {
+            return new MessageStoreSnapshot(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the next message ID the store assigns
+     */
+    public long getCurrentId() {
+        return currentId;
+    }
+
+    /**
+     * @return generation of the write-ahead log continuing the snapshot
+     */
+    public long getLogGeneration() {
+        return logGeneration;
+    }
+
+    /**
+     * @return length of the log of the previous generation, whose records are part of the snapshot,
+     * the records after it were added while the snapshot was written
+     */
+    public long getLogPosition() {
+        return logPosition;
+    }
+
+    /**
+     * @return the number of messages in the snapshot
+     */
+    public int size() {
+        return messageCount;
+    }
+
+    long messageIdAt(int index) {
+        return readLong(messageIndexOffset + (long) index * MESSAGE_INDEX_ENTRY_SIZE);
+    }
+
+    /**
+     * Decodes the message at the given position of the message index.
+     *
+     * @param userIds the table of the user IDs of the decoded message
+     */
+    UserMessage messageAt(int index, UserIds userIds) {
+        long id = messageIdAt(index);
+        Cursor cursor = new Cursor(readLong(messageIndexOffset + (long) index * MESSAGE_INDEX_ENTRY_SIZE + 8));
+        UserMessage message = new UserMessage(cursor.readString(), cursor.readString());
+        message.useUserIds(userIds);
+        message.setMessageId(id);
+        message.setPoints(cursor.readInt());
+        for (int i = cursor.readInt(); i > 0; i--) {
+            message.addLike(cursor.readString());
+        }
+        for (int i = cursor.readInt(); i > 0; i--) {
+            message.addDislike(cursor.readString());
+        }
+        for (int i = cursor.readInt(); i > 0; i--) {
+            message.addReactions(cursor.readString(), cursor.readInt());
+        }
+        return message;
+    }
+
+    /**
+     * Looks up a message using binary search in the message index and decodes it.
+     *
+     * @param messageId ID of the message
+     * @param userIds   the table of the user IDs of the decoded message
+     * @return the message, null if the snapshot does not contain it
+     */
+    UserMessage message(long messageId, UserIds userIds) {
+        int low = 0;
+        int high = messageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long id = messageIdAt(middle);
+            if (id < messageId)
+                low = middle + 1;
+            else if (id > messageId)
+                high = middle - 1;
+            else
+                return messageAt(middle, userIds);
+        }
+        return null;
+    }
+
+    int authorCount() {
+        return authorCount;
+    }
+
+    String authorAt(int index) {
+        return new Cursor(readLong(authorIndexOffset + 8L * index)).readString();
+    }
+
+    /**
+     * Looks up an author using binary search in the author index.
+     *
+     * @param author the author
+     * @return the position of the author in the author index, -1 if the snapshot contains no message of the author
+     */
+    int findAuthor(String author) {
+        int low = 0;
+        int high = authorCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareAuthors(authorAt(middle), author);
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the IDs of the messages of the author at the given position of the author index
+     * and the fingerprints of these messages, in the order the messages were stored.
+     */
+    void readMessagesOfAuthor(int index, LongList messageIds, LongList fingerprints) {
+        Cursor cursor = new Cursor(readLong(authorIndexOffset + 8L * index));
+        cursor.readString();
+        int count = cursor.readInt();
+        for (int i = 0; i < count; i++) {
+            messageIds.add(cursor.readLong());
+        }
+        for (int i = 0; i < count; i++) {
+            fingerprints.add(cursor.readLong());
+        }
+    }
+
+    /**
+     * Adds the reports of the snapshot to the ban state.
+     */
+    void readReports(BanState banState) {
+        Cursor cursor = new Cursor(reportsOffset);
+        for (int i = cursor.readInt(); i > 0; i--) {
+            banState.addReport(cursor.readString(), cursor.readString());
+        }
+    }
+
+    /**
+     * Writes a snapshot, replacing the given file once the snapshot is complete.
+     *
+     * @param file          the snapshot file
+     * @param currentId     the next message ID the store assigns
+     * @param logGeneration generation of the write-ahead log continuing the snapshot
+     * @param logPosition   length of the log of the previous generation, whose records are part of the snapshot
+     * @param messages      all messages in ascending order of their IDs
+     * @param reports       the reports
+     */
+    static void write(File file, long currentId, long logGeneration, long logPosition,
+                      Iterable<UserMessage> messages, BanState reports) {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (Writer writer = new Writer(FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            writer.position = HEADER_SIZE;
+            writer.channel.position(HEADER_SIZE);
+
+            LongList messageIds = new LongList();
+            LongList messageOffsets = new LongList();
+            Map<String, LongList[]> messagesByAuthor = new HashMap<>();
+            for (UserMessage message : messages) {
+                if (messageIds.size() > 0 && message.getMessageId() <= messageIds.get(messageIds.size() - 1)) {
+                    throw new IllegalArgumentException("messages must be in ascending order of their IDs");
+                }
+                messageIds.add(message.getMessageId());
+                messageOffsets.add(writer.position);
+                writeMessage(writer, message);
+                LongList[] ofAuthor = messagesByAuthor.computeIfAbsent(message.getAuthor(),
+                        author -> new LongList[]{new LongList(), new LongList()});
+                ofAuthor[0].add(message.getMessageId());
+                ofAuthor[1].add(MessageStore.fingerprint(message.getAuthor(), message.getMessage()));
+            }
+
+            long messageIndexOffset = writer.position;
+            for (int i = 0; i < messageIds.size(); i++) {
+                writer.writeLong(messageIds.get(i));
+                writer.writeLong(messageOffsets.get(i));
+            }
+
+            List<String> authors = new ArrayList<>(messagesByAuthor.keySet());
+            authors.sort(MessageStoreSnapshot::compareAuthors);
+            long[] authorOffsets = new long[authors.size()];
+            for (int i = 0; i < authors.size(); i++) {
+                authorOffsets[i] = writer.position;
+                LongList[] ofAuthor = messagesByAuthor.get(authors.get(i));
+                writer.writeString(authors.get(i));
+                writer.writeInt(ofAuthor[0].size());
+                for (LongList values : ofAuthor) {
+                    for (int j = 0; j < values.size(); j++) {
+                        writer.writeLong(values.get(j));
+                    }
+                }
+            }
+            long authorIndexOffset = writer.position;
+            for (long offset : authorOffsets) {
+                writer.writeLong(offset);
+            }
+
+            long reportsOffset = writer.position;
+            writer.writeInt(reports.size());
+            try {
+                reports.forEachReport((reporter, reported) -> {
+                    try {
+                        writer.writeString(reporter);
+                        writer.writeString(reported);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(currentId).putLong(logGeneration).putLong(logPosition)
+                    .putInt(messageIds.size()).putInt(authors.size())
+                    .putLong(messageIndexOffset).putLong(authorIndexOffset).putLong(reportsOffset);
+            header.flip();
+            while (header.hasRemaining()) {
+                writer.channel.write(header, HEADER_SIZE - header.remaining());
+            }
+            writer.channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeMessage(Writer writer, UserMessage message) throws IOException {
+        writer.writeString(message.getAuthor());
+        writer.writeString(message.getMessage());
+        writer.writeInt(message.getPoints());
+        writer.writeInt(message.getLikes().size());
+        for (String clientName : message.getLikes()) {
+            writer.writeString(clientName);
+        }
+        writer.writeInt(message.getDislikes().size());
+        for (String clientName : message.getDislikes()) {
+            writer.writeString(clientName);
+        }
+        writer.writeInt(message.getReactingUserCount());
+        try {
+            message.forEachReaction((clientName, mask) -> {
+                try {
+                    writer.writeString(clientName);
+                    writer.writeInt(mask);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Orders authors by name, null first.
+     */
+    private static int compareAuthors(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private ByteBuffer segmentOf(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)];
+    }
+
+    private int readInt(long position) {
+        return segmentOf(position).getInt((int) (position % SEGMENT_SIZE));
+    }
+
+    private long readLong(long position) {
+        return segmentOf(position).getLong((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * Position in the mapped file, from which values are decoded one after another.
+     */
+    private class Cursor {
+        private long position;
+
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        int readInt() {
+            int value = MessageStoreSnapshot.this.readInt(position);
+            position += 4;
+            return value;
+        }
+
+        long readLong() {
+            long value = MessageStoreSnapshot.this.readLong(position);
+            position += 8;
+            return value;
+        }
+
+        String readString() {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            int copied = 0;
+            while (copied < length) {
+                // texts may cross the border between two segments
+                ByteBuffer segment = segmentOf(position).duplicate();
+                segment.position((int) (position % SEGMENT_SIZE));
+                int count = Math.min(length - copied, SEGMENT_SIZE - segment.position());
+                segment.get(bytes, copied, count);
+                copied += count;
+                position += count;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Buffered writer keeping track of the position in the file.
+     */
+    private static class Writer implements AutoCloseable {
+        final FileChannel channel;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+        long position;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        void writeLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            for (int written = 0; written < bytes.length; ) {
+                ensureRemaining(1);
+                int count = Math.min(bytes.length - written, buffer.remaining());
+                buffer.put(bytes, written, count);
+                written += count;
+            }
+            position += bytes.length;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
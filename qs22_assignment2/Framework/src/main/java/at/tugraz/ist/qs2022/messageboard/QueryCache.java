@@ -0,0 +1,356 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.messageboard.clientmessages.FoundMessages;
+
+import java.util.*;
+
+/**
+ * Pages of messages found by recent queries of a {@link MessageStore}, so that repeated queries
+ * for the messages of the same author or for the same search text are answered without looking
+ * up the messages again.
+ * <p>
+ * A query is identified by its kind, its author or search text, its continuation token and its
+ * limit. The least recently used pages are dropped when there are more than the maximum number
+ * of pages or when their estimated size exceeds the byte budget.
+ * <p>
+ * A page is dropped as soon as a change could make it differ from a fresh lookup: when one of its
+ * messages changes, or when a new message is stored which the query would find. New messages have
+ * higher IDs than all others, so they only belong to last pages, which have no continuation token.
+ * To find the affected pages without visiting all of them, the keys of the pages are indexed by the
+ * IDs of their messages, and the keys of last pages by their author or search text. The search texts
+ * of last pages are indexed by a trigram of their own, so a new message is only checked against the
+ * search texts sharing a trigram with it, and against those which are too short to have one.
+ */
+final class QueryCache {
+
+    /**
+     * kinds of queries whose results are cached
+     */
+    enum Kind {
+        /**
+         * the messages of an author
+         */
+        AUTHOR,
+        /**
+         * the messages whose author or text contains a search text
+         */
+        SEARCH
+    }
+
+    /**
+     * estimated size of a cached page without its messages, in bytes
+     */
+    static final long PAGE_BYTES = 128;
+
+    /**
+     * estimated size of a message in a cached page and in the index of the page keys, in bytes
+     */
+    static final long MESSAGE_BYTES = 64;
+
+    /**
+     * A page of found messages with the token for the next page.
+     */
+    static final class Page {
+        /**
+         * the messages of the page, which must not be changed
+         */
+        final List<UserMessage> messages;
+
+        /**
+         * token for the next page, {@link FoundMessages#NO_CONTINUATION} if this is the last page
+         */
+        final long continuationToken;
+
+        Page(List<UserMessage> messages, long continuationToken) {
+            this.messages = Collections.unmodifiableList(messages);
+            this.continuationToken = continuationToken;
+        }
+
+        boolean isLast() {
+            return continuationToken == FoundMessages.NO_CONTINUATION;
+        }
+    }
+
+    private static final class Key {
+        final Kind kind;
+        final String argument;
+        final long from;
+        final int limit;
+
+        Key(Kind kind, String argument, long from, int limit) {
+            this.kind = kind;
+            this.argument = argument;
+            this.from = from;
+            this.limit = limit;
+        }
+
+        long bytes(Page page) {
+            return PAGE_BYTES + 2L * (argument == null ? 0 : argument.length()) + MESSAGE_BYTES * page.messages.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return kind == key.kind && from == key.from && limit == key.limit && Objects.equals(argument, key.argument);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, argument, from, limit);
+        }
+    }
+
+    private final int maxPages;
+
+    private final long maxBytes;
+
+    /**
+     * cached pages from the least to the most recently used
+     */
+    private final LinkedHashMap<Key, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * keys of the cached pages by the IDs of their messages
+     */
+    private final Map<Long, List<Key>> keysByMessageId = new HashMap<>();
+
+    /**
+     * keys of the cached last pages of authors by author
+     */
+    private final Map<String, List<Key>> lastPagesByAuthor = new HashMap<>();
+
+    /**
+     * keys of the cached last pages of searches by search text
+     */
+    private final Map<String, List<Key>> lastPagesBySearchText = new HashMap<>();
+
+    /**
+     * search texts of cached last pages by the first trigram of the search text in lower case,
+     * a message containing a search text contains all its trigrams
+     */
+    private final Map<Long, Set<String>> searchTextsByTrigram = new HashMap<>();
+
+    /**
+     * search texts of cached last pages with less than three characters in lower case
+     */
+    private final Set<String> shortSearchTexts = new HashSet<>();
+
+    private long bytes = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    /**
+     * @param maxPages the maximum number of cached pages, 0 to cache nothing
+     * @param maxBytes the maximum estimated size of all cached pages in bytes
+     */
+    QueryCache(int maxPages, long maxBytes) {
+        if (maxPages < 0 || maxBytes < 0)
+            throw new IllegalArgumentException("cache limits must not be negative");
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Looks up the page found by a query and counts a hit or a miss.
+     *
+     * @param kind     the kind of the query
+     * @param argument the author or the search text
+     * @param from     the continuation token of the query
+     * @param limit    the maximum number of messages of the page
+     * @return the page, null if it is not cached
+     */
+    Page get(Kind kind, String argument, long from, int limit) {
+        Page page = pages.get(new Key(kind, argument, from, limit));
+        if (page == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return page;
+    }
+
+    /**
+     * Caches the page found by a query, dropping the least recently used pages if the cache is full.
+     * Pages larger than the byte budget are not cached.
+     *
+     * @param kind     the kind of the query
+     * @param argument the author or the search text
+     * @param from     the continuation token of the query
+     * @param limit    the maximum number of messages of the page
+     * @param page     the page found
+     */
+    void put(Kind kind, String argument, long from, int limit, Page page) {
+        Key key = new Key(kind, argument, from, limit);
+        if (maxPages == 0 || key.bytes(page) > maxBytes)
+            return;
+        remove(key);
+        pages.put(key, page);
+        bytes += key.bytes(page);
+        for (UserMessage message : page.messages) {
+            keysByMessageId.computeIfAbsent(message.getMessageId(), messageId -> new ArrayList<>(1)).add(key);
+        }
+        if (page.isLast()) {
+            if (kind == Kind.SEARCH && !lastPagesBySearchText.containsKey(argument))
+                indexSearchText(argument);
+            lastPagesOf(kind).computeIfAbsent(argument, lastPageArgument -> new ArrayList<>(1)).add(key);
+        }
+
+        Iterator<Map.Entry<Key, Page>> leastRecentlyUsed = pages.entrySet().iterator();
+        while (pages.size() > maxPages || bytes > maxBytes) {
+            Map.Entry<Key, Page> eldest = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            unindex(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Drops the pages containing a message which changed.
+     *
+     * @param messageId the ID of the message
+     */
+    void invalidateMessage(long messageId) {
+        List<Key> keys = keysByMessageId.get(messageId);
+        if (keys != null) {
+            for (Key key : keys.toArray(new Key[0])) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops the last pages of the queries which find a new message.
+     *
+     * @param message the new message
+     */
+    void invalidateNewMessage(UserMessage message) {
+        List<Key> keys = lastPagesByAuthor.get(message.getAuthor());
+        if (keys != null) {
+            for (Key key : keys.toArray(new Key[0])) {
+                remove(key);
+            }
+        }
+        if (lastPagesBySearchText.isEmpty())
+            return;
+        String lowerAuthor = message.getAuthor() == null ? null : message.getAuthor().toLowerCase();
+        String lowerText = message.getMessage() == null ? null : message.getMessage().toLowerCase();
+        Set<String> candidates = new HashSet<>(shortSearchTexts);
+        addSearchTextsSharingTrigrams(lowerAuthor, candidates);
+        addSearchTextsSharingTrigrams(lowerText, candidates);
+        for (String searchText : candidates) {
+            if (TrigramIndex.matchesLowerCase(searchText.toLowerCase(), lowerAuthor, lowerText)) {
+                for (Key key : lastPagesBySearchText.get(searchText).toArray(new Key[0])) {
+                    remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the search texts of last pages indexed by one of the trigrams of a text.
+     *
+     * @param lowerText   the author or text of a message in lower case, may be null
+     * @param searchTexts the search texts found so far
+     */
+    private void addSearchTextsSharingTrigrams(String lowerText, Set<String> searchTexts) {
+        if (lowerText == null)
+            return;
+        for (int i = 0; i + 3 <= lowerText.length(); i++) {
+            Set<String> sharingTrigram = searchTextsByTrigram.get(TrigramIndex.trigram(lowerText, i));
+            if (sharingTrigram != null)
+                searchTexts.addAll(sharingTrigram);
+        }
+    }
+
+    /**
+     * Adds a search text, whose first last page is cached, to the index of the search texts.
+     */
+    private void indexSearchText(String searchText) {
+        String lowerSearchText = searchText.toLowerCase();
+        if (lowerSearchText.length() < 3) {
+            shortSearchTexts.add(searchText);
+        } else {
+            searchTextsByTrigram.computeIfAbsent(TrigramIndex.trigram(lowerSearchText, 0),
+                    trigram -> new HashSet<>(2)).add(searchText);
+        }
+    }
+
+    /**
+     * Removes a search text, whose last cached last page was dropped, from the index of the search texts.
+     */
+    private void unindexSearchText(String searchText) {
+        String lowerSearchText = searchText.toLowerCase();
+        if (lowerSearchText.length() < 3) {
+            shortSearchTexts.remove(searchText);
+            return;
+        }
+        long trigram = TrigramIndex.trigram(lowerSearchText, 0);
+        Set<String> sharingTrigram = searchTextsByTrigram.get(trigram);
+        sharingTrigram.remove(searchText);
+        if (sharingTrigram.isEmpty())
+            searchTextsByTrigram.remove(trigram);
+    }
+
+    /**
+     * @return the number of queries answered from the cache
+     */
+    long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of queries which were not cached
+     */
+    long misses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of cached pages
+     */
+    int size() {
+        return pages.size();
+    }
+
+    /**
+     * @return the estimated size of all cached pages in bytes
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    private Map<String, List<Key>> lastPagesOf(Kind kind) {
+        return kind == Kind.AUTHOR ? lastPagesByAuthor : lastPagesBySearchText;
+    }
+
+    private void remove(Key key) {
+        Page page = pages.remove(key);
+        if (page != null)
+            unindex(key, page);
+    }
+
+    /**
+     * Removes the key of a page, which has just been dropped, from the indexes.
+     */
+    private void unindex(Key key, Page page) {
+        bytes -= key.bytes(page);
+        for (UserMessage message : page.messages) {
+            removeKey(keysByMessageId, message.getMessageId(), key);
+        }
+        if (page.isLast()) {
+            removeKey(lastPagesOf(key.kind), key.argument, key);
+            if (key.kind == Kind.SEARCH && !lastPagesBySearchText.containsKey(key.argument))
+                unindexSearchText(key.argument);
+        }
+    }
+
+    private static <K> void removeKey(Map<K, List<Key>> index, K indexKey, Key key) {
+        List<Key> keys = index.get(indexKey);
+        keys.remove(key);
+        if (keys.isEmpty())
+            index.remove(indexKey);
+    }
+}
@@ -0,0 +1,132 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+/**
+ * Reactions of the users to a message, kept as a map from user IDs (see {@link UserIds}) to a
+ * byte holding one bit per emoji, with open addressing and linear probing, plus the number of
+ * reactions per emoji. A reaction costs about 7 bytes, counting an emoji takes constant time.
+ * <p>
+ * Reactions are never removed, so a slot is empty exactly if its mask is 0.
+ */
+final class ReactionMap {
+
+    /**
+     * number of emojis which fit into a mask
+     */
+    static final int MAX_EMOJIS = 8;
+
+    /**
+     * Receives the reactions of a user.
+     */
+    interface Consumer {
+        void accept(int userId, int mask);
+    }
+
+    private int[] userIds = new int[4];
+
+    private byte[] masks = new byte[4];
+
+    private int size = 0;
+
+    private final int[] counts = new int[MAX_EMOJIS];
+
+    /**
+     * @return a copy of the reactions
+     */
+    ReactionMap copy() {
+        ReactionMap copy = new ReactionMap();
+        copy.userIds = userIds.clone();
+        copy.masks = masks.clone();
+        copy.size = size;
+        System.arraycopy(counts, 0, copy.counts, 0, MAX_EMOJIS);
+        return copy;
+    }
+
+    /**
+     * @return the number of users who reacted
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param emoji ordinal of the emoji
+     * @return the number of users who reacted with the emoji
+     */
+    int count(int emoji) {
+        return counts[emoji];
+    }
+
+    /**
+     * @return the emojis of the user as bits, 0 if the user did not react
+     */
+    int maskOf(int userId) {
+        int slot = slotOf(userId, masks.length - 1);
+        return masks[slot] & 0xff;
+    }
+
+    /**
+     * Adds the emojis of the mask to the reactions of the user.
+     *
+     * @return the emojis which the user had not reacted with before
+     */
+    int add(int userId, int mask) {
+        int slot = slotOf(userId, masks.length - 1);
+        int old = masks[slot] & 0xff;
+        int added = mask & ~old;
+        if (added == 0) {
+            return 0;
+        }
+        if (old == 0) {
+            // a new user, the table is grown to keep it at most three quarters full
+            if (4 * (size + 1) > 3 * masks.length) {
+                grow();
+                slot = slotOf(userId, masks.length - 1);
+            }
+            userIds[slot] = userId;
+            size++;
+        }
+        masks[slot] = (byte) (old | added);
+        for (int bits = added; bits != 0; bits &= bits - 1) {
+            counts[Integer.numberOfTrailingZeros(bits)]++;
+        }
+        return added;
+    }
+
+    /**
+     * Passes each user ID with the emojis of the user as bits to the consumer.
+     */
+    void forEach(Consumer consumer) {
+        for (int slot = 0; slot < masks.length; slot++) {
+            if (masks[slot] != 0) {
+                consumer.accept(userIds[slot], masks[slot] & 0xff);
+            }
+        }
+    }
+
+    /**
+     * @return the slot of the user, or the empty slot at which the user would be inserted
+     */
+    private int slotOf(int userId, int slotMask) {
+        // user IDs are consecutive, so they are spread by a multiplicative hash
+        int hash = userId * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & slotMask;
+        while (masks[slot] != 0 && userIds[slot] != userId) {
+            slot = (slot + 1) & slotMask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldUserIds = userIds;
+        byte[] oldMasks = masks;
+        userIds = new int[2 * oldMasks.length];
+        masks = new byte[2 * oldMasks.length];
+        for (int i = 0; i < oldMasks.length; i++) {
+            if (oldMasks[i] != 0) {
+                int slot = slotOf(oldUserIds[i], masks.length - 1);
+                userIds[slot] = oldUserIds[i];
+                masks[slot] = oldMasks[i];
+            }
+        }
+    }
+}
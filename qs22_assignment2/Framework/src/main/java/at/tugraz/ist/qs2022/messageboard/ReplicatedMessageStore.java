@@ -0,0 +1,115 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.actorsystem.DeterministicChannel;
+import at.tugraz.ist.qs2022.actorsystem.Message;
+import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2022.messageboard.messagestoremessages.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stands in for a {@link MessageStore} with read replicas, so that reads do not wait behind
+ * writes in the message box of the store.
+ * <p>
+ * Read requests (<c>RetrieveFromStore</c>, <c>SearchInStore</c> and <c>TopMessagesInStore</c>)
+ * are sent to the replicas round-robin, skipping replicas which lag behind the store by more
+ * than their staleness bound, unless all do, then the replica lagging least is chosen.
+ * All other requests are sent to the store, which ships its changes to the replicas, see
+ * {@link MessageStoreReplica}. A batch is split into a batch of the read requests and
+ * a batch of the other requests.
+ * <p>
+ * Like {@link MessageStoreRouter}, it is spawned on a channel without delay and processes all
+ * messages in the tick in which they are delivered, so it must be spawned before the store.
+ */
+public class ReplicatedMessageStore extends SimulatedActor {
+
+    private final MessageStore primary;
+
+    private final List<MessageStoreReplica> replicas;
+
+    /**
+     * index of the replica to try first for the next read request
+     */
+    private int nextReplica = 0;
+
+    /**
+     * Constructs a new ReplicatedMessageStore object.
+     *
+     * @param primary  the store receiving all changes
+     * @param replicas the replicas of the store, at least one
+     */
+    public ReplicatedMessageStore(MessageStore primary, List<MessageStoreReplica> replicas) {
+        if (replicas.isEmpty())
+            throw new IllegalArgumentException("at least one replica is needed");
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.channel = new DeterministicChannel(0);
+        this.processMessagesImmediately = true;
+    }
+
+    /**
+     * Sends a read request to a replica and any other message to the store.
+     *
+     * @param message Non-null message received
+     */
+    @Override
+    public void receive(Message message) {
+        if (message instanceof StoreBatch) {
+            StoreBatch batch = (StoreBatch) message;
+            List<MessageStoreMessage> reads = new ArrayList<>();
+            List<MessageStoreMessage> writes = new ArrayList<>();
+            for (MessageStoreMessage request : batch.messages) {
+                (isRead(request) ? reads : writes).add(request);
+            }
+            if (!reads.isEmpty()) {
+                sendBatch(chooseReplica(), batch, reads);
+            }
+            sendBatch(primary, batch, writes);
+        } else if (isRead(message)) {
+            chooseReplica().tell(message);
+        } else {
+            primary.tell(message);
+        }
+    }
+
+    private static boolean isRead(Message message) {
+        return message instanceof RetrieveFromStore || message instanceof SearchInStore ||
+                message instanceof TopMessagesInStore;
+    }
+
+    /**
+     * Sends the requests of a batch to the store, a single request on its own.
+     */
+    private static void sendBatch(MessageStore store, StoreBatch batch, List<MessageStoreMessage> requests) {
+        if (requests.size() == 1) {
+            store.tell(requests.get(0));
+        } else if (requests.size() > 1) {
+            StoreBatch part = new StoreBatch(requests);
+            part.storeClient = batch.storeClient;
+            for (MessageStoreMessage request : requests) {
+                part.readYourWrites |= request.readYourWrites;
+            }
+            store.tell(part);
+        }
+    }
+
+    private MessageStoreReplica chooseReplica() {
+        MessageStoreReplica leastLagging = null;
+        long leastLag = Long.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (nextReplica + i) % replicas.size();
+            MessageStoreReplica replica = replicas.get(index);
+            long lag = replica.lag();
+            if (lag <= replica.getStalenessBound()) {
+                nextReplica = (index + 1) % replicas.size();
+                return replica;
+            }
+            if (lag < leastLag) {
+                leastLagging = replica;
+                leastLag = lag;
+            }
+        }
+        return leastLagging;
+    }
+}
@@ -0,0 +1,171 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index of the trigrams (substrings of three characters) in the lower-cased
+ * author and text of messages, used to find the messages whose author or text contains
+ * a search text, ignoring case.
+ * <p>
+ * A text containing the search text contains all of its trigrams, so only messages in the
+ * posting lists of all trigrams are candidates, which are then checked like before.
+ * Search texts shorter than three characters have no trigrams, so all messages are checked.
+ * Messages are numbered in the order they were added, posting lists hold these numbers in
+ * ascending order and results are returned in this order.
+ */
+class TrigramIndex {
+
+    /**
+     * message IDs by number
+     */
+    private final LongList messageIds = new LongList();
+
+    /**
+     * lower-cased authors by number, null if a message has no author
+     */
+    private final List<String> authors = new ArrayList<>();
+
+    /**
+     * lower-cased texts by number, null if a message has no text
+     */
+    private final List<String> texts = new ArrayList<>();
+
+    /**
+     * numbers of the messages containing a trigram, the key is the trigram packed into a long
+     */
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /**
+     * Growable, ascending list of message numbers.
+     */
+    private static class Postings {
+        int[] numbers = new int[2];
+        int size = 0;
+
+        void add(int number) {
+            // a trigram occurring several times in a message is only added once
+            if (size > 0 && numbers[size - 1] == number)
+                return;
+            if (size == numbers.length)
+                numbers = Arrays.copyOf(numbers, 2 * size);
+            numbers[size++] = number;
+        }
+
+        boolean contains(int number) {
+            return Arrays.binarySearch(numbers, 0, size, number) >= 0;
+        }
+
+        /**
+         * @return index of the first number which is not less than the given one
+         */
+        int lowerBound(int number) {
+            int index = Arrays.binarySearch(numbers, 0, size, number);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    /**
+     * Adds a message to the index, messages must be added in ascending order of their IDs.
+     *
+     * @param messageId ID of the message
+     * @param author    author of the message
+     * @param text      text of the message
+     */
+    void add(long messageId, String author, String text) {
+        int number = messageIds.size();
+        String lowerAuthor = author == null ? null : author.toLowerCase();
+        String lowerText = text == null ? null : text.toLowerCase();
+        messageIds.add(messageId);
+        authors.add(lowerAuthor);
+        texts.add(lowerText);
+        addTrigrams(number, lowerAuthor);
+        addTrigrams(number, lowerText);
+    }
+
+    private void addTrigrams(int number, String lowerText) {
+        if (lowerText == null)
+            return;
+        for (int i = 0; i + 3 <= lowerText.length(); i++) {
+            postings.computeIfAbsent(trigram(lowerText, i), trigram -> new Postings()).add(number);
+        }
+    }
+
+    /**
+     * Finds the messages whose author or text contains the search text, ignoring case
+     * in the same way as comparing the texts lower-cased with {@link String#toLowerCase()}.
+     *
+     * @param searchText    the text to search for
+     * @param fromMessageId the smallest ID of messages to find
+     * @param maxResults    the maximum number of messages to find
+     * @return IDs of the messages found, in the order they were added
+     */
+    LongList find(String searchText, long fromMessageId, int maxResults) {
+        String lowerSearchText = searchText.toLowerCase();
+        LongList found = new LongList();
+        int from = messageIds.lowerBound(fromMessageId);
+        if (lowerSearchText.length() < 3) {
+            for (int number = from; number < messageIds.size() && found.size() < maxResults; number++) {
+                if (matches(number, lowerSearchText))
+                    found.add(messageIds.get(number));
+            }
+            return found;
+        }
+
+        Postings[] lists = new Postings[lowerSearchText.length() - 2];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(trigram(lowerSearchText, i));
+            if (lists[i] == null)
+                return found;
+        }
+        // the shortest list yields the fewest candidates, the others are only probed
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        Postings candidates = lists[0];
+        for (int i = candidates.lowerBound(from); i < candidates.size && found.size() < maxResults; i++) {
+            int number = candidates.numbers[i];
+            if (inAllLists(number, lists) && matches(number, lowerSearchText))
+                found.add(messageIds.get(number));
+        }
+        return found;
+    }
+
+    /**
+     * Like {@link TrigramIndex#find(String, long, int)}, but for texts which are already in lower case,
+     * so a message can be checked against several search texts lower-casing it only once.
+     *
+     * @param lowerSearchText the text to search for in lower case
+     * @param lowerAuthor     the author of a message in lower case, may be null
+     * @param lowerText       the text of the message in lower case, may be null
+     * @return true if the message is found when searching for the text
+     */
+    static boolean matchesLowerCase(String lowerSearchText, String lowerAuthor, String lowerText) {
+        return (lowerAuthor != null && lowerAuthor.contains(lowerSearchText)) ||
+                (lowerText != null && lowerText.contains(lowerSearchText));
+    }
+
+    private static boolean inAllLists(int number, Postings[] lists) {
+        for (int i = 1; i < lists.length; i++) {
+            if (!lists[i].contains(number))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean matches(int number, String lowerSearchText) {
+        String author = authors.get(number);
+        String text = texts.get(number);
+        return (author != null && author.contains(lowerSearchText)) || (text != null && text.contains(lowerSearchText));
+    }
+
+    /**
+     * @param text  a text in lower case
+     * @param start the index of the first character of the trigram
+     * @return the three characters starting at the index packed into a long
+     */
+    static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+}
@@ -0,0 +1,94 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symbol table assigning a small int to every user name, so that messages can keep the users
+ * who like or dislike them in an {@link IntSet} instead of keeping the names again and again.
+ * <p>
+ * Each store has a table of its own, which is shared by all its messages and its reports, a
+ * message which is not stored has a table of its own. IDs are assigned in the order in which
+ * names are seen for the first time and are released with the table. A table may be used by
+ * several threads at once, e.g. by the store and the thread writing its snapshot.
+ */
+final class UserIds {
+
+    /**
+     * ID of the null name
+     */
+    static final int NULL_ID = 0;
+
+    /**
+     * returned for names which have never been seen
+     */
+    static final int UNKNOWN = -1;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * names by ID, replaced by a larger copy when it is full
+     */
+    private volatile String[] names = new String[16];
+
+    private int count = 1;
+
+    /**
+     * @param name user name, may be null
+     * @return the ID of the name, a new one if the name has not been seen before
+     */
+    int idOf(String name) {
+        if (name == null) {
+            return NULL_ID;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : ids.computeIfAbsent(name, this::assign);
+    }
+
+    /**
+     * @param name user name, may be null
+     * @return the ID of the name, {@link UserIds#UNKNOWN} if the name has not been seen before
+     */
+    int lookup(String name) {
+        if (name == null) {
+            return NULL_ID;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : UNKNOWN;
+    }
+
+    /**
+     * @param id ID returned by {@link UserIds#idOf(String)}
+     * @return the name with the given ID
+     */
+    String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Adds the names of the given table in the order of their IDs, so that an empty table
+     * assigns the same IDs as the given one.
+     *
+     * @param table the table whose names are added
+     */
+    void addAll(UserIds table) {
+        String[] tableNames;
+        int tableCount;
+        synchronized (table) {
+            tableNames = table.names;
+            tableCount = table.count;
+        }
+        for (int id = 1; id < tableCount; id++) {
+            idOf(tableNames[id]);
+        }
+    }
+
+    private synchronized int assign(String name) {
+        if (count == names.length) {
+            names = Arrays.copyOf(names, 2 * count);
+        }
+        // the name is stored before the ID is published by the map
+        names[count] = name;
+        return count++;
+    }
+}
@@ -1,10 +1,13 @@
 package at.tugraz.ist.qs2022.messageboard;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
 
 import at.tugraz.ist.qs2022.messageboard.clientmessages.Reaction;
@@ -12,6 +15,17 @@ import at.tugraz.ist.qs2022.messageboard.clientmessages.Reaction;
 /**
  * This class represents actual messages posted by users (do not confuse
  * with message passed between actors).
+ * <p>
+ * The message store hands out immutable views of its messages (see {@link UserMessage#view()}),
+ * which keep the state the message had when the view was taken. A view shares the likes,
+ * dislikes and reactions with its message, which copies them before it changes them
+ * (copy on write), so taking a view costs about as much as an empty message. A view is
+ * equal to the message it was taken from and to all other views of it.
+ * <p>
+ * A message is changed and its views are taken by a single thread, the thread of its store.
+ * The state of a view is kept in final fields and the shared likes, dislikes and reactions are
+ * not changed any more, so a view can be read by other threads, e.g. by the thread writing a
+ * snapshot or by the clients a reply is sent to.
  */
 public class UserMessage {
 
@@ -23,24 +37,30 @@ public class UserMessage {
     /**
      * the author of the message
      */
-    private String author;
+    private final String author;
 
     /**
      * the message posted by the author
      */
-    private String message;
+    private final String message;
 
     /**
      * likes for the message (initially empty)
-     * The strings in the list are names of people who like the message.
+     * The set holds the IDs (see {@link UserIds}) of people who like the message.
      */
-    private List<String> likes;
+    private IntSet likes;
 
     /**
      * dislikes for the message (initially empty)
-     * The strings in the list are names of people who dislike the message.
+     * The set holds the IDs (see {@link UserIds}) of people who dislike the message.
      */
-    private List<String> dislikes;
+    private IntSet dislikes;
+
+    /**
+     * table of the user IDs in the likes, dislikes and reactions, the table of the store once the message
+     * is stored, null until the first name is added to a message which is not stored
+     */
+    private UserIds userIds;
 
     /**
      * the points of the message
@@ -57,14 +77,31 @@ public class UserMessage {
      */
 
     /**
-     * reactions or emojis for the message (initially empty)
-     * The strings in the list are names of people who dislike the message.
+     * reactions or emojis for the message, null until the first reaction
+     * The map holds the emojis of each person who reacted to the message.
      */
-    private Map<String, Set<Reaction.Emoji>> reactions;
+    private ReactionMap reactions;
 
 
     private long messageId;
 
+    /**
+     * the message of which this message is a view, the message itself if it is not a view
+     */
+    private final UserMessage original;
+
+    /**
+     * view of the current state of the message, null if none was taken since the message changed
+     */
+    private UserMessage view;
+
+    /**
+     * true if the likes, dislikes or reactions are shared with a view and must be copied before they change
+     */
+    private boolean likesShared;
+    private boolean dislikesShared;
+    private boolean reactionsShared;
+
     /**
      * Constructs the new UserMessage object
      *
@@ -74,10 +111,76 @@ public class UserMessage {
     public UserMessage(String author, String message) {
         this.author = author;
         this.message = message;
-        this.likes = new ArrayList<>();
-        this.dislikes = new ArrayList<>();
-        this.reactions = new HashMap<>();
+        this.likes = new IntSet();
+        this.dislikes = new IntSet();
         this.messageId = NEW_ID;
+        this.original = this;
+    }
+
+    /**
+     * Constructs a view of the message, which keeps the likes, dislikes, reactions, points and ID itself.
+     */
+    private UserMessage(UserMessage message) {
+        this.author = message.author;
+        this.message = message.message;
+        this.original = message.original;
+    }
+
+    /**
+     * Returns an immutable view of the current state of the message, which does not change when
+     * the message changes. Methods changing a view throw an {@link UnsupportedOperationException}.
+     * The view is taken when it is first asked for after a change, until the next change
+     * all callers share it. Must be called by the thread which changes the message.
+     *
+     * @return the view
+     */
+    public UserMessage view() {
+        if (view == null) {
+            view = new View(this);
+            likesShared = true;
+            dislikesShared = true;
+            reactionsShared = reactions != null;
+        }
+        return view;
+    }
+
+    /**
+     * Drops the view of the previous state before the message changes.
+     */
+    private void changing() {
+        view = null;
+    }
+
+    private IntSet writableLikes() {
+        changing();
+        if (likesShared) {
+            likes = likes.copy();
+            likesShared = false;
+        }
+        return likes;
+    }
+
+    private IntSet writableDislikes() {
+        changing();
+        if (dislikesShared) {
+            dislikes = dislikes.copy();
+            dislikesShared = false;
+        }
+        return dislikes;
+    }
+
+    /**
+     * @param message an object
+     * @return true if the object is this message, the message of which this is a view, or a view of the same message
+     */
+    @Override
+    public boolean equals(Object message) {
+        return message instanceof UserMessage && ((UserMessage) message).original == original;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(original);
     }
 
     /**
@@ -88,10 +191,10 @@ public class UserMessage {
      */
     @Override
     public String toString() {
-        return author + ": " + message + ", liked by : " + likes.stream().sorted().collect(
-            Collectors.joining(",")) + ", disliked by : " + dislikes.stream().sorted().collect(
+        return author + ": " + message + ", liked by : " + getLikes().stream().sorted().collect(
+            Collectors.joining(",")) + ", disliked by : " + getDislikes().stream().sorted().collect(
             Collectors.joining(","))
-                + ", points: " + points;
+                + ", points: " + getPoints();
     }
 
     public String getAuthor() {
@@ -102,12 +205,148 @@ public class UserMessage {
         return message;
     }
 
+    /**
+     * @return names of the people who like the message, a copy which cannot be modified, in the order
+     * in which the store of the message saw their names for the first time
+     */
     public List<String> getLikes() {
-        return likes;
+        return names(likes, userIds);
     }
 
+    /**
+     * @return names of the people who dislike the message, a copy which cannot be modified, in the order
+     * in which the store of the message saw their names for the first time
+     */
     public List<String> getDislikes() {
-        return dislikes;
+        return names(dislikes, userIds);
+    }
+
+    public int getLikeCount() {
+        return likes.size();
+    }
+
+    public int getDislikeCount() {
+        return dislikes.size();
+    }
+
+    public boolean isLikedBy(String clientName) {
+        return contains(likes, userIds, clientName);
+    }
+
+    public boolean isDislikedBy(String clientName) {
+        return contains(dislikes, userIds, clientName);
+    }
+
+    /**
+     * @param clientName name of the person who likes the message
+     * @return true if the like was added, false if the person already liked the message
+     */
+    public boolean addLike(String clientName) {
+        int id = idOf(clientName);
+        return !likes.contains(id) && writableLikes().add(id);
+    }
+
+    /**
+     * @param clientName name of the person who dislikes the message
+     * @return true if the dislike was added, false if the person already disliked the message
+     */
+    public boolean addDislike(String clientName) {
+        int id = idOf(clientName);
+        return !dislikes.contains(id) && writableDislikes().add(id);
+    }
+
+    /**
+     * @param clientName name of the person who liked the message
+     * @return true if the like was removed, false if the person did not like the message
+     */
+    public boolean removeLike(String clientName) {
+        int id = lookup(userIds, clientName);
+        return id != UserIds.UNKNOWN && likes.contains(id) && writableLikes().remove(id);
+    }
+
+    /**
+     * @param clientName name of the person who disliked the message
+     * @return true if the dislike was removed, false if the person did not dislike the message
+     */
+    public boolean removeDislike(String clientName) {
+        int id = lookup(userIds, clientName);
+        return id != UserIds.UNKNOWN && dislikes.contains(id) && writableDislikes().remove(id);
+    }
+
+    private static List<String> names(IntSet ids, UserIds userIds) {
+        List<String> names = new ArrayList<>(ids.size());
+        ids.forEach(id -> names.add(userIds.nameOf(id)));
+        return Collections.unmodifiableList(names);
+    }
+
+    private static boolean contains(IntSet ids, UserIds userIds, String clientName) {
+        int id = lookup(userIds, clientName);
+        return id != UserIds.UNKNOWN && ids.contains(id);
+    }
+
+    private int idOf(String clientName) {
+        if (userIds == null) {
+            userIds = new UserIds();
+        }
+        return userIds.idOf(clientName);
+    }
+
+    private static int lookup(UserIds userIds, String clientName) {
+        return userIds == null ? UserIds.UNKNOWN : userIds.lookup(clientName);
+    }
+
+    /**
+     * Moves the likes, dislikes and reactions to the user IDs of the given table, the table of the
+     * store which keeps the message. IDs of a table of the message itself are mapped to the new table.
+     *
+     * @param table the table of the store
+     */
+    void useUserIds(UserIds table) {
+        if (userIds == table) {
+            return;
+        }
+        if (userIds != null) {
+            changing();
+            UserIds previous = userIds;
+            IntSet movedLikes = new IntSet();
+            likes.forEach(id -> movedLikes.add(table.idOf(previous.nameOf(id))));
+            IntSet movedDislikes = new IntSet();
+            dislikes.forEach(id -> movedDislikes.add(table.idOf(previous.nameOf(id))));
+            likes = movedLikes;
+            dislikes = movedDislikes;
+            likesShared = false;
+            dislikesShared = false;
+            if (reactions != null) {
+                ReactionMap movedReactions = new ReactionMap();
+                reactions.forEach((id, mask) -> movedReactions.add(table.idOf(previous.nameOf(id)), mask));
+                reactions = movedReactions;
+                reactionsShared = false;
+            }
+        }
+        userIds = table;
+    }
+
+    /**
+     * @param table the table of the store which keeps the copy
+     * @return a copy of the message with the same ID, whose likes, dislikes and reactions use the IDs of the table
+     */
+    UserMessage copy(UserIds table) {
+        UserMessage copy = new UserMessage(author, message);
+        copy.userIds = table;
+        for (String clientName : getLikes()) {
+            copy.likes.add(table.idOf(clientName));
+        }
+        for (String clientName : getDislikes()) {
+            copy.dislikes.add(table.idOf(clientName));
+        }
+        if (getReactingUserCount() > 0) {
+            ReactionMap copiedReactions = new ReactionMap();
+            forEachReaction((clientName, mask) -> copiedReactions.add(table.idOf(clientName), mask));
+            copy.reactions = copiedReactions;
+        }
+        copy.points = getPoints();
+        copy.messageId = getMessageId();
+        return copy;
     }
 
     public int getPoints() {
@@ -115,11 +354,102 @@ public class UserMessage {
     }
 
     public void setPoints(int newPoints) {
+        changing();
         points = newPoints;
     }
 
+    /**
+     * @return the emojis of each person who reacted to the message, a copy which cannot be modified
+     */
     public Map<String, Set<Reaction.Emoji>> getReactions() {
-        return reactions;
+        return reactionsByName(reactions, userIds);
+    }
+
+    /**
+     * @param clientName name of a person
+     * @return the emojis the person reacted with
+     */
+    public Set<Reaction.Emoji> getReactionsOf(String clientName) {
+        return reactionsOf(reactions, userIds, clientName);
+    }
+
+    /**
+     * @param reaction an emoji
+     * @return the number of people who reacted with the emoji
+     */
+    public int getReactionCount(Reaction.Emoji reaction) {
+        return reactions == null ? 0 : reactions.count(reaction.ordinal());
+    }
+
+    /**
+     * @param clientName name of the person who reacts to the message
+     * @param reaction   the emoji
+     * @return true if the reaction was added, false if the person already reacted with the emoji
+     */
+    public boolean addReaction(String clientName, Reaction.Emoji reaction) {
+        return addReactions(clientName, 1 << reaction.ordinal()) != 0;
+    }
+
+    /**
+     * @param clientName name of the person who reacts to the message
+     * @param mask       the emojis as bits, one per ordinal
+     * @return the emojis which were added
+     */
+    int addReactions(String clientName, int mask) {
+        int id = idOf(clientName);
+        if (reactions != null && (mask & ~reactions.maskOf(id)) == 0) {
+            return 0;
+        }
+        changing();
+        if (reactions == null) {
+            reactions = new ReactionMap();
+        } else if (reactionsShared) {
+            reactions = reactions.copy();
+        }
+        reactionsShared = false;
+        return reactions.add(id, mask);
+    }
+
+    /**
+     * @return the number of people who reacted to the message
+     */
+    int getReactingUserCount() {
+        return reactions == null ? 0 : reactions.size();
+    }
+
+    /**
+     * Passes the name of each person who reacted to the message with the emojis as bits to the consumer.
+     */
+    void forEachReaction(ObjIntConsumer<String> consumer) {
+        forEachReaction(reactions, userIds, consumer);
+    }
+
+    private static Map<String, Set<Reaction.Emoji>> reactionsByName(ReactionMap reactions, UserIds userIds) {
+        Map<String, Set<Reaction.Emoji>> reactionsByName = new HashMap<>();
+        forEachReaction(reactions, userIds,
+            (clientName, mask) -> reactionsByName.put(clientName, Collections.unmodifiableSet(emojis(mask))));
+        return Collections.unmodifiableMap(reactionsByName);
+    }
+
+    private static Set<Reaction.Emoji> reactionsOf(ReactionMap reactions, UserIds userIds, String clientName) {
+        int id = lookup(userIds, clientName);
+        return emojis(reactions == null || id == UserIds.UNKNOWN ? 0 : reactions.maskOf(id));
+    }
+
+    private static void forEachReaction(ReactionMap reactions, UserIds userIds, ObjIntConsumer<String> consumer) {
+        if (reactions != null) {
+            reactions.forEach((userId, mask) -> consumer.accept(userIds.nameOf(userId), mask));
+        }
+    }
+
+    private static Set<Reaction.Emoji> emojis(int mask) {
+        Set<Reaction.Emoji> emojis = EnumSet.noneOf(Reaction.Emoji.class);
+        for (Reaction.Emoji emoji : Reaction.Emoji.values()) {
+            if ((mask & (1 << emoji.ordinal())) != 0) {
+                emojis.add(emoji);
+            }
+        }
+        return emojis;
     }
 
 
@@ -128,7 +458,151 @@ public class UserMessage {
     }
 
     public void setMessageId(long messageId) {
+        changing();
         this.messageId = messageId;
     }
 
+    /**
+     * Immutable view of a message, see {@link UserMessage#view()}. The state is kept in final
+     * fields of the view, the fields of the message it extends stay empty.
+     */
+    private static final class View extends UserMessage {
+
+        private final IntSet likes;
+        private final IntSet dislikes;
+        private final ReactionMap reactions;
+        private final UserIds userIds;
+        private final int points;
+        private final long messageId;
+
+        View(UserMessage message) {
+            super(message);
+            this.likes = message.likes;
+            this.dislikes = message.dislikes;
+            this.reactions = message.reactions;
+            this.userIds = message.userIds;
+            this.points = message.points;
+            this.messageId = message.messageId;
+        }
+
+        @Override
+        public UserMessage view() {
+            return this;
+        }
+
+        @Override
+        public List<String> getLikes() {
+            return names(likes, userIds);
+        }
+
+        @Override
+        public List<String> getDislikes() {
+            return names(dislikes, userIds);
+        }
+
+        @Override
+        public int getLikeCount() {
+            return likes.size();
+        }
+
+        @Override
+        public int getDislikeCount() {
+            return dislikes.size();
+        }
+
+        @Override
+        public boolean isLikedBy(String clientName) {
+            return contains(likes, userIds, clientName);
+        }
+
+        @Override
+        public boolean isDislikedBy(String clientName) {
+            return contains(dislikes, userIds, clientName);
+        }
+
+        @Override
+        public int getPoints() {
+            return points;
+        }
+
+        @Override
+        public Map<String, Set<Reaction.Emoji>> getReactions() {
+            return reactionsByName(reactions, userIds);
+        }
+
+        @Override
+        public Set<Reaction.Emoji> getReactionsOf(String clientName) {
+            return reactionsOf(reactions, userIds, clientName);
+        }
+
+        @Override
+        public int getReactionCount(Reaction.Emoji reaction) {
+            return reactions == null ? 0 : reactions.count(reaction.ordinal());
+        }
+
+        @Override
+        int getReactingUserCount() {
+            return reactions == null ? 0 : reactions.size();
+        }
+
+        @Override
+        void forEachReaction(ObjIntConsumer<String> consumer) {
+            UserMessage.forEachReaction(reactions, userIds, consumer);
+        }
+
+        @Override
+        public long getMessageId() {
+            return messageId;
+        }
+
+        @Override
+        void useUserIds(UserIds table) {
+            throw immutable();
+        }
+
+        @Override
+        public boolean addLike(String clientName) {
+            throw immutable();
+        }
+
+        @Override
+        public boolean addDislike(String clientName) {
+            throw immutable();
+        }
+
+        @Override
+        public boolean removeLike(String clientName) {
+            throw immutable();
+        }
+
+        @Override
+        public boolean removeDislike(String clientName) {
+            throw immutable();
+        }
+
+        @Override
+        public void setPoints(int newPoints) {
+            throw immutable();
+        }
+
+        @Override
+        public boolean addReaction(String clientName, Reaction.Emoji reaction) {
+            throw immutable();
+        }
+
+        @Override
+        int addReactions(String clientName, int mask) {
+            throw immutable();
+        }
+
+        @Override
+        public void setMessageId(long messageId) {
+            throw immutable();
+        }
+
+        private static UnsupportedOperationException immutable() {
+            return new UnsupportedOperationException("views of messages cannot be changed");
+        }
+    }
+
 }
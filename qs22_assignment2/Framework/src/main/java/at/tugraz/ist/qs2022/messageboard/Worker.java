@@ -9,8 +9,14 @@ import at.tugraz.ist.qs2022.messageboard.dispatchermessages.StopAck;
 import at.tugraz.ist.qs2022.messageboard.messagestoremessages.*;
 
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Worker extends SimulatedActor {
     /**
@@ -34,6 +40,11 @@ public class Worker extends SimulatedActor {
      */
     private Map<Long, SimulatedActor> ongoingCommunications;
 
+    /**
+     * IDs of the ongoing communications whose reads must see their own writes
+     */
+    private Set<Long> readYourWritesCommunications;
+
     /**
      * system used to spawn actors
      */
@@ -44,6 +55,82 @@ public class Worker extends SimulatedActor {
      */
     private boolean stopping;
 
+    /**
+     * If set, requests are sent to the message store directly with a correlation ID
+     * instead of spawning a worker helper for each of them.
+     */
+    private final boolean multiplexStoreRequests;
+
+    /**
+     * requests sent to the message store without a reply so far, the key of the dictionary
+     * is the correlation ID. They are ordered by the time they were sent the last time.
+     */
+    private final LinkedHashMap<Long, PendingRequest> pendingRequests;
+
+    /**
+     * requests for the message store waiting to be sent together in a batch, they are pending
+     * once they have been sent
+     */
+    private final List<PendingRequest> storeBatch;
+
+    /**
+     * time of this worker when the first request of the batch was collected
+     */
+    private int storeBatchStartedAt;
+
+    /**
+     * the maximum number of requests sent to the message store in a batch, requests are
+     * also sent whenever there are no more messages to process
+     */
+    static final int MAX_STORE_BATCH = 32;
+
+    /**
+     * the maximum number of ticks a request waits for other requests to be sent with
+     */
+    static final int MAX_STORE_BATCH_DELAY = 8;
+
+    /**
+     * integral number used for creating correlation IDs
+     */
+    private long nextCorrelationId;
+
+    /**
+     * Number of ticks with pending requests in which no delivered message was waiting in the
+     * message box. Timeouts are measured in these ticks, as replies of the message store share
+     * the message box with client requests and must not be considered lost while they wait there.
+     */
+    private int waitingTicks;
+
+    /**
+     * flag which is set if the stop acknowledgement is sent once all pending requests are finished
+     */
+    private boolean stopAckPending;
+
+    /**
+     * Request sent to the message store, which is resent if no reply arrives in time,
+     * like {@link WorkerHelper} does.
+     */
+    private static class PendingRequest {
+        final MessageStoreMessage message;
+        final SimulatedActor client;
+
+        /**
+         * value of <c>waitingTicks</c> when the message was sent the last time
+         */
+        int sentAt;
+
+        /**
+         * count how often the message was resent
+         */
+        int retries = 0;
+
+        PendingRequest(MessageStoreMessage message, SimulatedActor client, int sentAt) {
+            this.message = message;
+            this.client = client;
+            this.sentAt = sentAt;
+        }
+    }
+
     /**
      * Constructs a new Worker object
      *
@@ -52,11 +139,47 @@ public class Worker extends SimulatedActor {
      * @param system       the actor system simulation
      */
     public Worker(SimulatedActor dispatcher, SimulatedActor messageStore, SimulatedActorSystem system) {
+        this(dispatcher, messageStore, system, false);
+    }
+
+    /**
+     * Constructs a new Worker object
+     *
+     * @param dispatcher             the dispatcher
+     * @param messageStore           the message store responsible for persistence
+     * @param system                 the actor system simulation
+     * @param multiplexStoreRequests true if requests should be sent to the message store directly
+     *                               instead of spawning a worker helper for each request
+     */
+    public Worker(SimulatedActor dispatcher, SimulatedActor messageStore, SimulatedActorSystem system,
+                  boolean multiplexStoreRequests) {
         this.dispatcher = dispatcher;
         this.messageStore = messageStore;
         this.ongoingCommunications = new HashMap<>();
+        this.readYourWritesCommunications = new HashSet<>();
         this.system = system;
         this.stopping = false;
+        this.multiplexStoreRequests = multiplexStoreRequests;
+        this.pendingRequests = new LinkedHashMap<>();
+        this.storeBatch = new ArrayList<>();
+        this.nextCorrelationId = 0;
+        this.waitingTicks = 0;
+        this.stopAckPending = false;
+
+        registerHandler(InitCommunication.class, this::processInitCommunication);
+        registerHandler(FinishCommunication.class, this::processFinishCommunication);
+        registerHandler(Stop.class, message -> processStop());
+        registerHandler(Publish.class, this::processPublish);
+        registerHandler(RetrieveMessages.class, this::processRetrieveMessages);
+        registerHandler(Like.class, this::processLike);
+        registerHandler(Dislike.class, this::processDislike);
+        registerHandler(DeleteLikeOrDislike.class, this::processDeleteLikeOrDislike);
+        registerHandler(Reaction.class, this::processReaction);
+        registerHandler(Report.class, this::processReport);
+        registerHandler(SearchMessages.class, this::processSearchMessages);
+        registerHandler(RetrieveTopMessages.class, this::processRetrieveTopMessages);
+        registerHandler(StoreReply.class, this::processStoreReply);
+        registerHandler(StoreBatchReply.class, this::processStoreBatchReply);
     }
 
     /**
@@ -66,44 +189,29 @@ public class Worker extends SimulatedActor {
      * It does not accept any messages while stopping and responds with back
      * OperationFailed messages during stopping.
      * If an unknown communication ID is used for ClientMessage messages, an UnknownClientException-
-     * exception is thrown. Further documentation can be found above helper methods named processMessageType.
+     * exception is thrown. Further documentation can be found above helper methods named processMessageType,
+     * which are registered as handlers for their message type in the constructor.
      *
      * @param message Non-null message received
      * @throws UnknownClientException thrown if communication id of message is unknown
      */
     @Override
     public void receive(Message message) throws UnknownClientException, UnknownMessageException {
+        if (message == null)
+            throw new UnknownMessageException("Worker received message of not existing type.");
         if (stopping && message instanceof ClientMessage) {
             // all operations while stopping fail
             ClientMessage clientMessage = (ClientMessage) message;
             if (!ongoingCommunications.containsKey(clientMessage.communicationId))
                 throw new UnknownClientException("Unknown communication ID");
             ongoingCommunications.get(clientMessage.communicationId).tell(new OperationFailed(clientMessage.communicationId));
-        } else if (message instanceof InitCommunication) {
-            processInitCommunication(message);
-        } else if (message instanceof FinishCommunication) {
-            processFinishCommunication(message);
-        } else if (message instanceof Stop) {
-            processStop();
-        } else if (message instanceof Publish)
-            processPublish(message);
-        else if (message instanceof RetrieveMessages) {
-            processRetrieveMessages(message);
-        } else if (message instanceof Like) {
-            processLike(message);
-        } else if (message instanceof Dislike) {
-            processDislike(message); }
-        else if (message instanceof DeleteLikeOrDislike) {
-            processDeleteLikeOrDislike(message); }
-        else if (message instanceof Reaction) {
-            processReaction(message);
-        } else if (message instanceof Report) {
-            processReport(message);
-        } else if (message instanceof SearchMessages) {
-            processSearchMessages(message);
-        } else if (message == null)
-            throw new UnknownMessageException("Worker received message of not existing type.");
-
+        } else {
+            dispatch(message);
+        }
+        // the requests collected for the message store are not held back once no more messages are waiting
+        if (!storeBatch.isEmpty() && messageBox.isEmpty()) {
+            sendStoreBatch();
+        }
     }
 
     /**
@@ -117,6 +225,8 @@ public class Worker extends SimulatedActor {
     private void processInitCommunication(Message message) {
         InitCommunication initC = (InitCommunication) message;
         ongoingCommunications.put(initC.communicationId, initC.client);
+        if (initC.readYourWrites)
+            readYourWritesCommunications.add(initC.communicationId);
         initC.client.tell(new InitAck(this, initC.communicationId));
     }
 
@@ -136,19 +246,180 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(finC.communicationId);
         ongoingCommunications.remove(finC.communicationId);
+        readYourWritesCommunications.remove(finC.communicationId);
         client.tell(new FinishAck(finC.communicationId));
     }
 
     /**
      * Changes into stopping mode and acknowledges stopping to the dispatcher.
+     * Requests sent to the message store directly are finished first,
+     * as the worker is stopped after acknowledging.
      */
     private void processStop() {
-        dispatcher.tell(new StopAck(this));
+        if (!hasPendingRequests()) {
+            dispatcher.tell(new StopAck(this));
+        } else {
+            stopAckPending = true;
+        }
         stopping = true;
     }
 
     /**
-     * Spawns a worker helper which communicates with the message store to retrieve
+     * Sends a message to the message store, which replies to the given client. Depending on
+     * the mode, a worker helper is spawned or the message is sent directly, in a batch with
+     * other requests, and the worker handles the reply, timeouts and retries itself.
+     *
+     * @param client  the client to which the reply is forwarded
+     * @param message the message for the message store
+     */
+    private void sendToStore(SimulatedActor client, MessageStoreMessage message) {
+        message.readYourWrites = readYourWritesCommunications.contains(message.communicationId);
+        if (!multiplexStoreRequests) {
+            system.spawn(new WorkerHelper(messageStore, client, message, system));
+            return;
+        }
+        message.storeClient = this;
+        message.correlationId = nextCorrelationId++;
+        if (storeBatch.isEmpty()) {
+            storeBatchStartedAt = getTimeSinceSystemStart();
+        }
+        storeBatch.add(new PendingRequest(message, client, waitingTicks));
+        if (storeBatch.size() == MAX_STORE_BATCH) {
+            sendStoreBatch();
+        }
+    }
+
+    /**
+     * Sends the collected requests to the message store, a single request on its own.
+     * Their timeouts start now, so a request is never resent before the batch it was collected in.
+     */
+    private void sendStoreBatch() {
+        for (PendingRequest request : storeBatch) {
+            request.sentAt = waitingTicks;
+            pendingRequests.put(request.message.correlationId, request);
+        }
+        if (storeBatch.size() == 1) {
+            messageStore.tell(storeBatch.get(0).message);
+        } else {
+            List<MessageStoreMessage> requests = new ArrayList<>(storeBatch.size());
+            for (PendingRequest request : storeBatch) {
+                requests.add(request.message);
+            }
+            StoreBatch batch = new StoreBatch(requests);
+            batch.storeClient = this;
+            for (MessageStoreMessage request : requests) {
+                batch.readYourWrites |= request.readYourWrites;
+            }
+            messageStore.tell(batch);
+        }
+        storeBatch.clear();
+    }
+
+    /**
+     * Forwards the replies of the message store to a batch, see {@link Worker#processStoreReply(Message)}.
+     *
+     * @param message non-null message of type StoreBatchReply
+     */
+    private void processStoreBatchReply(Message message) {
+        for (StoreReply storeReply : ((StoreBatchReply) message).replies) {
+            processStoreReply(storeReply);
+        }
+    }
+
+    /**
+     * Forwards a reply of the message store to the client, if the request is still pending.
+     * Replies to requests which have already been answered or have failed are ignored.
+     * A request answered in chunks stays pending until the last chunk arrives, each chunk
+     * restarts its timeout.
+     *
+     * @param message non-null message of type StoreReply
+     */
+    private void processStoreReply(Message message) {
+        StoreReply storeReply = (StoreReply) message;
+        PendingRequest request = pendingRequests.remove(storeReply.correlationId);
+        if (request == null) {
+            return;
+        }
+        request.client.tell(storeReply.reply);
+        if (storeReply.reply instanceof FoundMessages && !((FoundMessages) storeReply.reply).lastChunk) {
+            // moves to the end, so the requests stay ordered by time
+            request.sentAt = waitingTicks;
+            pendingRequests.put(storeReply.correlationId, request);
+        } else {
+            acknowledgeStopIfFinished();
+        }
+    }
+
+    /**
+     * Sends the requests collected for the message store in a batch when the first of them waited
+     * {@link Worker#MAX_STORE_BATCH_DELAY} ticks, even if more messages are waiting.
+     * <p>
+     * Resends requests to the message store for which no reply arrived in time, like
+     * {@link WorkerHelper} does, and tells the client that the operation failed after
+     * {@link WorkerHelper#MAX_RETRIES} resends.
+     */
+    @Override
+    public void tick() throws UnknownClientException, UnknownMessageException {
+        super.tick();
+        if (!storeBatch.isEmpty() && getTimeSinceSystemStart() - storeBatchStartedAt >= MAX_STORE_BATCH_DELAY) {
+            sendStoreBatch();
+        }
+        if (pendingRequests.isEmpty() || !messageBox.isEmpty()) {
+            return;
+        }
+        int now = ++waitingTicks;
+        Iterator<PendingRequest> iterator = pendingRequests.values().iterator();
+        List<PendingRequest> resent = new ArrayList<>();
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            if (now - request.sentAt <= WorkerHelper.RESEND_TIMEOUT) {
+                // all other requests were sent later
+                break;
+            }
+            iterator.remove();
+            if (request.retries == WorkerHelper.MAX_RETRIES) {
+                request.client.tell(new OperationFailed(request.message.communicationId));
+            } else {
+                messageStore.tell(request.message);
+                request.sentAt = now;
+                request.retries++;
+                resent.add(request);
+            }
+        }
+        // resent requests move to the end, so the requests stay ordered by time
+        for (PendingRequest request : resent) {
+            pendingRequests.put(request.message.correlationId, request);
+        }
+        acknowledgeStopIfFinished();
+    }
+
+    /**
+     * Like {@link WorkerHelper}, the worker counts every tick while requests are pending,
+     * so it is never idle then.
+     *
+     * @return number of idle ticks
+     */
+    @Override
+    protected int idleTicks() {
+        return hasPendingRequests() ? 0 : super.idleTicks();
+    }
+
+    /**
+     * @return true if requests sent to the message store, or waiting to be sent, have not been answered
+     */
+    private boolean hasPendingRequests() {
+        return !pendingRequests.isEmpty() || !storeBatch.isEmpty();
+    }
+
+    private void acknowledgeStopIfFinished() {
+        if (stopAckPending && !hasPendingRequests()) {
+            stopAckPending = false;
+            dispatcher.tell(new StopAck(this));
+        }
+    }
+
+    /**
+     * Sends a request to the message store to retrieve
      * messages of the author given in the message passed as parameter.
      *
      * @param message non-null message of type RetrieveMessages
@@ -160,13 +431,13 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(retrMessages.communicationId);
 
-        MessageStoreMessage retrievedMessages = new RetrieveFromStore(retrMessages.author, retrMessages.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        MessageStoreMessage retrievedMessages = new RetrieveFromStore(retrMessages.author, retrMessages.communicationId,
+                retrMessages.limit, retrMessages.continuationToken, retrMessages.chunkSize);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
-     * Spawns a worker helper which communicates with the message store to add a like
+     * Sends a request to the message store to add a like
      * to a user message given in the message passed as parameter.
      *
      * @param message non-null message of type Like
@@ -178,13 +449,12 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(like.communicationId);
         MessageStoreMessage retrievedMessages = new AddLike(like.clientName, like.messageId, like.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
      * message non-null message of type Dislike
-     * Spawns a worker helper which communicates with the message store to add a dislike
+     * Sends a request to the message store to add a dislike
      * to a user message given in the message passed as parameter.
      *
      * @param message The dislike message
@@ -197,12 +467,11 @@ public class Worker extends SimulatedActor {
         SimulatedActor client = ongoingCommunications.get(dislike.communicationId);
         MessageStoreMessage retrievedMessages =
                 new AddDislike(dislike.clientName, dislike.messageId, dislike.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
-     * Spawns a worker helper which communicates with the message store to delete a like or dislike
+     * Sends a request to the message store to delete a like or dislike
      * to a user message given in the message passed as parameter.
      *
      * @param message The dislike message
@@ -216,12 +485,11 @@ public class Worker extends SimulatedActor {
         MessageStoreMessage retrievedMessages =
             new DeleteLikeOrDislike(deleteLikeOrDislike.clientName, deleteLikeOrDislike.communicationId,
                 deleteLikeOrDislike.messageId, deleteLikeOrDislike.typeToDelete);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
-     * Spawns a worker helper which communicates with the message store to add a reaction
+     * Sends a request to the message store to add a reaction
      * to a user message given in the message passed as parameter.
      *
      * @param message non-null message of type Like
@@ -234,13 +502,12 @@ public class Worker extends SimulatedActor {
         SimulatedActor client = ongoingCommunications.get(reaction.communicationId);
         MessageStoreMessage retrievedMessages = new AddReaction(reaction.clientName, reaction.messageId,
             reaction.communicationId, reaction.reaction);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
      * Performs checks on a user message, which should be published. If the
-     * checks are passed, a worker helper is spawned, which communicates with
+     * checks are passed, a request is sent to
      * the message store to store the new user message.
      * New messages must have zero likes, must not have a message ID assigned
      * and must not be (strictly) longer than 10 characters.
@@ -255,18 +522,17 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(publish.communicationId);
         UserMessage userMessage = publish.message;
-        if (userMessage.getLikes().size() > 0 || userMessage.getDislikes().size() > 0 ||
+        if (userMessage.getLikeCount() > 0 || userMessage.getDislikeCount() > 0 ||
                 userMessage.getMessageId() != UserMessage.NEW_ID || userMessage.getMessage().length() > 10) {
             client.tell(new OperationFailed(publish.communicationId));
         } else {
             MessageStoreMessage updatedMessages = new UpdateMessageStore(userMessage, publish.communicationId);
-            WorkerHelper helper = new WorkerHelper(messageStore, client, updatedMessages, system);
-            system.spawn(helper);
+            sendToStore(client, updatedMessages);
         }
     }
 
     /**
-     * Spawns a worker helper which communicates with the message store to add a report
+     * Sends a request to the message store to add a report
      * to a user passed as parameter.
      *
      * @param message non-null message of type Report
@@ -278,12 +544,11 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(report.communicationId);
         MessageStoreMessage reportedMessage = new AddReport(report.clientName, report.communicationId, report.reportedClientName);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, reportedMessage, system);
-        system.spawn(helper);
+        sendToStore(client, reportedMessage);
     }
 
     /**
-     * Spawns a worker helper which communicates with the message store to search
+     * Sends a request to the message store to search
      * messages of the given search querry for author or Text.
      *
      * @param message non-null message of type SearchMessages
@@ -295,8 +560,26 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(searchMessage.communicationId);
 
-        MessageStoreMessage searchResults = new SearchInStore(searchMessage.searchText, searchMessage.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, searchResults, system);
-        system.spawn(helper);
+        MessageStoreMessage searchResults = new SearchInStore(searchMessage.searchText, searchMessage.communicationId,
+                searchMessage.limit, searchMessage.continuationToken, searchMessage.chunkSize);
+        sendToStore(client, searchResults);
+    }
+
+    /**
+     * Sends a request to the message store to retrieve the messages
+     * with the most points, of all authors or of the author given in the message passed as parameter.
+     *
+     * @param message non-null message of type RetrieveTopMessages
+     * @throws UnknownClientException thrown if communication id of message is unknown
+     */
+    private void processRetrieveTopMessages(Message message) throws UnknownClientException {
+        RetrieveTopMessages topMessages = (RetrieveTopMessages) message;
+        if (!ongoingCommunications.containsKey(topMessages.communicationId))
+            throw new UnknownClientException("Unknown communication ID");
+        SimulatedActor client = ongoingCommunications.get(topMessages.communicationId);
+
+        MessageStoreMessage retrievedMessages = new TopMessagesInStore(topMessages.author, topMessages.communicationId,
+                topMessages.limit, topMessages.continuationToken);
+        sendToStore(client, retrievedMessages);
     }
 }
@@ -4,6 +4,7 @@ import at.tugraz.ist.qs2022.actorsystem.DeterministicChannel;
 import at.tugraz.ist.qs2022.actorsystem.Message;
 import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
 import at.tugraz.ist.qs2022.actorsystem.SimulatedActorSystem;
+import at.tugraz.ist.qs2022.messageboard.clientmessages.FoundMessages;
 import at.tugraz.ist.qs2022.messageboard.clientmessages.OperationFailed;
 import at.tugraz.ist.qs2022.messageboard.messagestoremessages.MessageStoreMessage;
 
@@ -56,7 +57,12 @@ public class WorkerHelper extends SimulatedActor {
     /**
      * maximum number of resends
      */
-    private final int MAX_RETRIES = 2;
+    static final int MAX_RETRIES = 2;
+
+    /**
+     * number of ticks without response after which the message is resent
+     */
+    static final int RESEND_TIMEOUT = 3;
 
     /**
      * Constructs a new WorkerHelper object.
@@ -91,13 +97,18 @@ public class WorkerHelper extends SimulatedActor {
 
     /**
      * We assume that the helper only receives reply messages from the message store,
-     * which it must forward to clients.
+     * which it must forward to clients. Replies sent in chunks are forwarded until
+     * the last chunk, each chunk restarts the timeout.
      *
      * @param message Non-null message received
      */
     @Override
     public void receive(Message message) {
         client.tell(message);
+        if (message instanceof FoundMessages && !((FoundMessages) message).lastChunk) {
+            timeSinceLastSent = 0;
+            return;
+        }
         system.stop(this);
         stopping = true; // mark as stopping,
     }
@@ -111,7 +122,7 @@ public class WorkerHelper extends SimulatedActor {
     public void tick() throws UnknownClientException, UnknownMessageException {
         super.tick();
         // as all workers share one MessageStore instance, it might happen that messages are dropped
-        if (!stopping && timeSinceLastSent++ >= 3) {
+        if (!stopping && timeSinceLastSent++ >= RESEND_TIMEOUT) {
             if (retries == MAX_RETRIES) {
                 client.tell(new OperationFailed(message.communicationId));
                 system.stop(this);
@@ -122,4 +133,14 @@ public class WorkerHelper extends SimulatedActor {
             }
         }
     }
+
+    /**
+     * The helper counts every tick until it is stopping, so it is never idle before.
+     *
+     * @return number of idle ticks
+     */
+    @Override
+    protected int idleTicks() {
+        return stopping ? super.idleTicks() : 0;
+    }
 }
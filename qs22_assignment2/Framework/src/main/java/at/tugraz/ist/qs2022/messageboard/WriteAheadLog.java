@@ -0,0 +1,552 @@
+package at.tugraz.ist.qs2022.messageboard;
+
+import at.tugraz.ist.qs2022.messageboard.clientmessages.Reaction;
+import at.tugraz.ist.qs2022.messageboard.messagestoremessages.DeleteLikeOrDislike;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes made to a {@link MessageStore}, from which the store
+ * recovers its state after a restart.
+ * <p>
+ * The log starts with its generation, which is increased whenever the log is reset after
+ * a snapshot of the store was written (see {@link MessageStoreSnapshot}), so that the
+ * store can tell whether the records are already part of the snapshot. Records added while
+ * the snapshot was written are kept by the reset.
+ * <p>
+ * Only successful changes are logged, so replaying them needs no checks. Each record
+ * consists of the length of its content, the content (the kind of change followed by its
+ * values, numbers as variable-length integers and texts as UTF-8) and a CRC32 checksum of
+ * the content. A record which was not written completely, e.g. because of a crash, ends the
+ * log: it is discarded when the log is replayed.
+ * <p>
+ * Records are collected in memory and written together by {@link WriteAheadLog#commit()}
+ * (group commit), the sync policy decides how often they are forced to the disk.
+ * Errors writing the log are thrown as {@link UncheckedIOException}.
+ */
+public class WriteAheadLog implements Closeable {
+
+    /**
+     * When written records are forced to the storage device.
+     */
+    public enum SyncPolicy {
+        /**
+         * never, the operating system writes them eventually, records may be lost if it crashes
+         */
+        NONE,
+        /**
+         * once per commit, all records of a commit share one sync
+         */
+        GROUP_COMMIT,
+        /**
+         * once per record, each record is committed on its own
+         */
+        EVERY_RECORD
+    }
+
+    /**
+     * Changes replayed from the log.
+     */
+    interface Changes {
+        void update(String author, String text);
+
+        void addLike(String clientName, long messageId);
+
+        void addDislike(String clientName, long messageId);
+
+        void deleteLikeOrDislike(String clientName, long messageId, DeleteLikeOrDislike.Type type);
+
+        void addReaction(String clientName, long messageId, Reaction.Emoji reaction);
+
+        void addReport(String clientName, String reportedClientName);
+    }
+
+    private static final byte UPDATE = 0;
+    private static final byte ADD_LIKE = 1;
+    private static final byte ADD_DISLIKE = 2;
+    private static final byte DELETE_LIKE_OR_DISLIKE = 3;
+    private static final byte ADD_REACTION = 4;
+    private static final byte ADD_REPORT = 5;
+
+    private static final int MAGIC = 0x4d53574c;
+
+    /**
+     * magic and generation
+     */
+    private static final int HEADER_SIZE = 4 + 8;
+
+    private final File file;
+
+    private final SyncPolicy syncPolicy;
+
+    private FileChannel channel;
+
+    /**
+     * records which have not been written yet
+     */
+    private byte[] buffer = new byte[4096];
+
+    private int bufferSize = 0;
+
+    /**
+     * start of the record currently being added in <c>buffer</c>
+     */
+    private int recordStart;
+
+    private final CRC32 checksum = new CRC32();
+
+    private long generation;
+
+    /**
+     * number of records added or replayed since the log was reset
+     */
+    private long recordsSinceReset = 0;
+
+    /**
+     * Constructs a new WriteAheadLog object, records are appended to an existing log file.
+     *
+     * @param file       The log file.
+     * @param syncPolicy When records are forced to the disk.
+     */
+    public WriteAheadLog(File file, SyncPolicy syncPolicy) {
+        this.file = file;
+        this.syncPolicy = syncPolicy;
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() < HEADER_SIZE) {
+                // new log, or the header was not written completely
+                writeHeader(0);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining()) {
+                    channel.read(header, header.position());
+                }
+                header.flip();
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("Not a write-ahead log: " + file);
+                }
+                this.generation = header.getLong();
+            }
+            this.channel.position(channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void logUpdate(String author, String text) {
+        beginRecord(UPDATE);
+        writeString(author);
+        writeString(text);
+        endRecord();
+    }
+
+    void logAddLike(String clientName, long messageId) {
+        beginRecord(ADD_LIKE);
+        writeString(clientName);
+        writeNumber(messageId);
+        endRecord();
+    }
+
+    void logAddDislike(String clientName, long messageId) {
+        beginRecord(ADD_DISLIKE);
+        writeString(clientName);
+        writeNumber(messageId);
+        endRecord();
+    }
+
+    void logDeleteLikeOrDislike(String clientName, long messageId, DeleteLikeOrDislike.Type type) {
+        beginRecord(DELETE_LIKE_OR_DISLIKE);
+        writeString(clientName);
+        writeNumber(messageId);
+        writeNumber(type.ordinal());
+        endRecord();
+    }
+
+    void logAddReaction(String clientName, long messageId, Reaction.Emoji reaction) {
+        beginRecord(ADD_REACTION);
+        writeString(clientName);
+        writeNumber(messageId);
+        writeNumber(reaction.ordinal());
+        endRecord();
+    }
+
+    void logAddReport(String clientName, String reportedClientName) {
+        beginRecord(ADD_REPORT);
+        writeString(clientName);
+        writeString(reportedClientName);
+        endRecord();
+    }
+
+    /**
+     * @return the generation of the log, 0 for a new log
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the number of records added or replayed since the log was created or reset
+     */
+    long getRecordsSinceReset() {
+        return recordsSinceReset;
+    }
+
+    /**
+     * @return the length of the log file, which holds all records committed so far
+     */
+    long getCommittedLength() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Discards the records before the given position, the state they lead to must have been saved
+     * elsewhere, and starts the given generation of the log with the records after it. These are
+     * copied to a temporary file, which replaces the log file once it is complete, so a crash never
+     * leaves a log without them behind.
+     *
+     * @param generation the new generation
+     * @param position   the position of the first kept record, a length returned by {@link #getCommittedLength()}
+     */
+    void reset(long generation, long position) {
+        commit();
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            long start = Math.max(position, HEADER_SIZE);
+            try (FileChannel copy = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                writeHeader(copy, generation);
+                copy.position(HEADER_SIZE);
+                for (long copied = 0; start + copied < channel.size(); ) {
+                    copied += channel.transferTo(start + copied, channel.size() - start - copied, copy);
+                }
+                copy.force(true);
+            }
+            channel.close();
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            this.generation = generation;
+            recordsSinceReset = countRecords();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeader(long generation) throws IOException {
+        writeHeader(channel, generation);
+        channel.position(HEADER_SIZE);
+        this.generation = generation;
+    }
+
+    private static void writeHeader(FileChannel channel, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(generation);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+    }
+
+    /**
+     * Counts the records of the log file without decoding them, the file must hold complete records only.
+     */
+    private int countRecords() throws IOException {
+        int records = 0;
+        try (InputStream in = new BufferedInputStream(Channels.newInputStream(
+                FileChannel.open(file.toPath(), StandardOpenOption.READ).position(HEADER_SIZE)), 1 << 16)) {
+            DataInputStream data = new DataInputStream(in);
+            while (true) {
+                long length;
+                try {
+                    length = readNumber(data);
+                } catch (EOFException e) {
+                    return records;
+                }
+                data.skipBytes((int) length + 4);
+                records++;
+            }
+        }
+    }
+
+    /**
+     * @return true if records have been added since the last commit
+     */
+    boolean hasUncommittedRecords() {
+        return bufferSize > 0;
+    }
+
+    /**
+     * Writes all records added since the last commit to the log file,
+     * and forces them to the disk unless the sync policy is {@link SyncPolicy#NONE}.
+     */
+    public void commit() {
+        if (bufferSize == 0) {
+            return;
+        }
+        try {
+            ByteBuffer records = ByteBuffer.wrap(buffer, 0, bufferSize);
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            if (syncPolicy != SyncPolicy.NONE) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bufferSize = 0;
+    }
+
+    /**
+     * Replays all complete records of the log file in the order they were added
+     * and discards an incomplete record at the end.
+     *
+     * @param changes The changes to which the records are passed.
+     * @return The number of replayed records.
+     */
+    int replay(Changes changes) {
+        return replay(changes, HEADER_SIZE);
+    }
+
+    /**
+     * Replays the complete records of the log file starting at the given position in the order they
+     * were added and discards an incomplete record at the end.
+     *
+     * @param changes  The changes to which the records are passed.
+     * @param position The position of the first replayed record, a length returned by {@link #getCommittedLength()}.
+     * @return The number of replayed records.
+     */
+    int replay(Changes changes, long position) {
+        commit();
+        long validLength = Math.max(position, HEADER_SIZE);
+        int records = 0;
+        try (InputStream in = new BufferedInputStream(Channels.newInputStream(
+                FileChannel.open(file.toPath(), StandardOpenOption.READ).position(validLength)), 1 << 16)) {
+            DataInputStream data = new DataInputStream(in);
+            Record record = new Record();
+            while (true) {
+                long length;
+                try {
+                    length = readNumber(data);
+                } catch (EOFException e) {
+                    break;
+                }
+                // a length beyond the end of the file can only be the start of an incomplete record
+                if (length <= 0 || length > Math.min(channel.size() - validLength, Integer.MAX_VALUE - 8)) {
+                    break;
+                }
+                record.reset((int) length);
+                int expectedChecksum;
+                try {
+                    data.readFully(record.content, 0, (int) length);
+                    expectedChecksum = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(record.content, 0, (int) length);
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    break;
+                }
+                apply(record, changes);
+                validLength += numberLength(length) + length + 4;
+                records++;
+            }
+            if (validLength < channel.size()) {
+                channel.truncate(validLength);
+                channel.position(validLength);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recordsSinceReset = records;
+        return records;
+    }
+
+    /**
+     * Commits the remaining records and closes the log file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void apply(Record record, Changes changes) {
+        byte kind = (byte) record.readNumber();
+        switch (kind) {
+            case UPDATE:
+                changes.update(record.readString(), record.readString());
+                break;
+            case ADD_LIKE:
+                changes.addLike(record.readString(), record.readNumber());
+                break;
+            case ADD_DISLIKE:
+                changes.addDislike(record.readString(), record.readNumber());
+                break;
+            case DELETE_LIKE_OR_DISLIKE:
+                changes.deleteLikeOrDislike(record.readString(), record.readNumber(),
+                        DeleteLikeOrDislike.Type.values()[(int) record.readNumber()]);
+                break;
+            case ADD_REACTION:
+                changes.addReaction(record.readString(), record.readNumber(),
+                        Reaction.Emoji.values()[(int) record.readNumber()]);
+                break;
+            case ADD_REPORT:
+                changes.addReport(record.readString(), record.readString());
+                break;
+            default:
+                throw new IllegalStateException("Unknown record in write-ahead log: " + kind);
+        }
+    }
+
+    private void beginRecord(byte kind) {
+        recordStart = bufferSize;
+        // room for the length, which is moved once the content is known
+        ensureCapacity(5);
+        bufferSize += 5;
+        writeNumber(kind);
+    }
+
+    private void endRecord() {
+        int contentStart = recordStart + 5;
+        int length = bufferSize - contentStart;
+        checksum.reset();
+        checksum.update(buffer, contentStart, length);
+        int crc = (int) checksum.getValue();
+        int lengthSize = numberLength(length);
+        System.arraycopy(buffer, contentStart, buffer, recordStart + lengthSize, length);
+        bufferSize = recordStart;
+        writeNumber(length);
+        bufferSize += length;
+        ensureCapacity(4);
+        buffer[bufferSize++] = (byte) (crc >>> 24);
+        buffer[bufferSize++] = (byte) (crc >>> 16);
+        buffer[bufferSize++] = (byte) (crc >>> 8);
+        buffer[bufferSize++] = (byte) crc;
+        recordsSinceReset++;
+        if (syncPolicy == SyncPolicy.EVERY_RECORD) {
+            commit();
+        }
+    }
+
+    /**
+     * Writes a non-negative number, seven bits per byte, the highest bit marks following bytes.
+     */
+    private void writeNumber(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[bufferSize++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[bufferSize++] = (byte) value;
+    }
+
+    /**
+     * Writes the length of the text plus one, zero for null, followed by the text.
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeNumber(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeNumber(bytes.length + 1L);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, bufferSize, bytes.length);
+        bufferSize += bytes.length;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (bufferSize + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(bufferSize + additional, 2 * buffer.length));
+        }
+    }
+
+    private static int numberLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static long readNumber(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        // malformed, handled like an incomplete record
+        return -1;
+    }
+
+    /**
+     * Content of a record read from the log, reused for all records.
+     */
+    private static class Record {
+        byte[] content = new byte[256];
+        int length;
+        int position;
+
+        void reset(int length) {
+            if (length > content.length) {
+                content = new byte[Math.max(length, 2 * content.length)];
+            }
+            this.length = length;
+            this.position = 0;
+        }
+
+        long readNumber() {
+            long value = 0;
+            for (int shift = 0; position < length; shift += 7) {
+                byte b = content[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Malformed number in write-ahead log");
+        }
+
+        String readString() {
+            int length = (int) readNumber() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(content, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
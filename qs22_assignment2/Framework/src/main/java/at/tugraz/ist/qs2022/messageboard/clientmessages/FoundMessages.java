@@ -7,16 +7,66 @@ import java.util.List;
 /**
  * The response to the {@link RetrieveMessages} message sent from worker to client
  * containing all user messages written by the author defined in the message above.
+ * It is also the response to {@link SearchMessages}.
+ * <p>
+ * Messages are found in the order they were stored. If the request limited the number
+ * of messages, the response contains a continuation token, which is passed in the next
+ * request to get the next page. If the request asked for chunks, the messages are sent
+ * in several responses, the last of which has <c>lastChunk</c> set and carries the
+ * continuation token.
+ * <p>
+ * Chunks only bound the size of each response. The store still looks up the whole page before
+ * splitting it, so use a limit to bound the memory needed for a query. A request whose
+ * response got lost is sent again as a whole, so a client may receive chunks it already got
+ * once more, followed by the remaining ones.
  */
 public class FoundMessages extends ClientMessage {
     /**
-     * List of user messages written by one author
+     * limit of requests which ask for all messages
+     */
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    /**
+     * continuation token of requests for the first page
+     */
+    public static final long FIRST_PAGE = 0;
+
+    /**
+     * continuation token of responses containing the last page
+     */
+    public static final long NO_CONTINUATION = -1;
+
+    /**
+     * chunk size of requests which ask for a single response
+     */
+    public static final int NO_CHUNKS = 0;
+
+    /**
+     * List of user messages written by one author, immutable views of the stored messages
+     * (see {@link UserMessage#view()})
      */
     public final List<UserMessage> messages;
 
+    /**
+     * token to request the next page with, {@link FoundMessages#NO_CONTINUATION} if there are no more
+     * messages or if this is not the last chunk
+     */
+    public final long continuationToken;
+
+    /**
+     * false if more chunks of the response follow
+     */
+    public final boolean lastChunk;
+
     public FoundMessages(List<UserMessage> messages, long communicationId) {
+        this(messages, communicationId, NO_CONTINUATION, true);
+    }
+
+    public FoundMessages(List<UserMessage> messages, long communicationId, long continuationToken, boolean lastChunk) {
         super(communicationId);
         this.messages = messages;
+        this.continuationToken = continuationToken;
+        this.lastChunk = lastChunk;
     }
 
     @Override
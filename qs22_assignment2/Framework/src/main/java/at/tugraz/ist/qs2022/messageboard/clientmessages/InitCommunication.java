@@ -12,9 +12,20 @@ public class InitCommunication extends ClientMessage {
      */
     public final SimulatedActor client;
 
+    /**
+     * If set, every read during the communication sees the changes acknowledged before it,
+     * even if the message store answers reads from replicas which lag behind
+     */
+    public final boolean readYourWrites;
+
     public InitCommunication(SimulatedActor client, long communicationId) {
+        this(client, communicationId, false);
+    }
+
+    public InitCommunication(SimulatedActor client, long communicationId, boolean readYourWrites) {
         super(communicationId);
         this.client = client;
+        this.readYourWrites = readYourWrites;
     }
 
     @Override
@@ -2,6 +2,8 @@ package at.tugraz.ist.qs2022.messageboard.clientmessages;
 
 /**
  * Message sent from client to worker to retrieve all user messages written by a given author.
+ * The messages can be retrieved in pages and the response can be split into chunks,
+ * see {@link FoundMessages}.
  */
 public class RetrieveMessages extends ClientMessage {
     /**
@@ -9,9 +11,37 @@ public class RetrieveMessages extends ClientMessage {
      */
     public final String author;
 
+    /**
+     * maximum number of messages to retrieve, {@link FoundMessages#NO_LIMIT} for all messages
+     */
+    public final int limit;
+
+    /**
+     * continuation token of the previous page, {@link FoundMessages#FIRST_PAGE} for the first page
+     */
+    public final long continuationToken;
+
+    /**
+     * maximum number of messages per response, {@link FoundMessages#NO_CHUNKS} for a single response
+     */
+    public final int chunkSize;
+
     public RetrieveMessages(String author, long communicationId) {
+        this(author, communicationId, FoundMessages.NO_LIMIT, FoundMessages.FIRST_PAGE, FoundMessages.NO_CHUNKS);
+    }
+
+    public RetrieveMessages(String author, long communicationId, int limit, long continuationToken) {
+        this(author, communicationId, limit, continuationToken, FoundMessages.NO_CHUNKS);
+    }
+
+    public RetrieveMessages(String author, long communicationId, int limit, long continuationToken, int chunkSize) {
         super(communicationId);
+        if (limit <= 0 || chunkSize < 0)
+            throw new IllegalArgumentException("limit must be positive and chunk size must not be negative");
         this.author = author;
+        this.limit = limit;
+        this.continuationToken = continuationToken;
+        this.chunkSize = chunkSize;
     }
 
     @Override
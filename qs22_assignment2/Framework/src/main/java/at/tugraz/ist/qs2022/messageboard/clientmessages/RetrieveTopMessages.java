@@ -0,0 +1,49 @@
+package at.tugraz.ist.qs2022.messageboard.clientmessages;
+
+/**
+ * Message sent from client to worker to retrieve the messages with the most points, of all
+ * authors or of a given author. The messages are found ordered by points, highest first,
+ * and by their IDs if the points are equal, see {@link FoundMessages}.
+ * <p>
+ * The continuation token of the response is the rank of the first message of the next page.
+ * Pages are taken from the ranking at the time of each request, so a message may appear on
+ * two pages or on none if its points change in between.
+ */
+public class RetrieveTopMessages extends ClientMessage {
+    /**
+     * The author of whom the messages should be looked up, null for the messages of all authors
+     */
+    public final String author;
+
+    /**
+     * maximum number of messages to retrieve
+     */
+    public final int limit;
+
+    /**
+     * continuation token of the previous page, {@link FoundMessages#FIRST_PAGE} for the first page
+     */
+    public final long continuationToken;
+
+    public RetrieveTopMessages(long communicationId, int limit) {
+        this(null, communicationId, limit, FoundMessages.FIRST_PAGE);
+    }
+
+    public RetrieveTopMessages(String author, long communicationId, int limit) {
+        this(author, communicationId, limit, FoundMessages.FIRST_PAGE);
+    }
+
+    public RetrieveTopMessages(String author, long communicationId, int limit, long continuationToken) {
+        super(communicationId);
+        if (limit <= 0 || continuationToken < 0)
+            throw new IllegalArgumentException("limit must be positive and continuation token must not be negative");
+        this.author = author;
+        this.limit = limit;
+        this.continuationToken = continuationToken;
+    }
+
+    @Override
+    public int getDuration() {
+        return 3;
+    }
+}
@@ -2,7 +2,9 @@ package at.tugraz.ist.qs2022.messageboard.clientmessages;
 
 /**
  * Message sent from client to worker to search for the given message
- * either in the Author or the Message and return all matching messages
+ * either in the Author or the Message and return all matching messages.
+ * The messages can be retrieved in pages and the response can be split into chunks,
+ * see {@link FoundMessages}.
  */
 public class SearchMessages extends ClientMessage {
     /**
@@ -10,9 +12,37 @@ public class SearchMessages extends ClientMessage {
      */
     public final String searchText;
 
+    /**
+     * maximum number of messages to return, {@link FoundMessages#NO_LIMIT} for all messages
+     */
+    public final int limit;
+
+    /**
+     * continuation token of the previous page, {@link FoundMessages#FIRST_PAGE} for the first page
+     */
+    public final long continuationToken;
+
+    /**
+     * maximum number of messages per response, {@link FoundMessages#NO_CHUNKS} for a single response
+     */
+    public final int chunkSize;
+
     public SearchMessages(String searchText, long communicationId) {
+        this(searchText, communicationId, FoundMessages.NO_LIMIT, FoundMessages.FIRST_PAGE, FoundMessages.NO_CHUNKS);
+    }
+
+    public SearchMessages(String searchText, long communicationId, int limit, long continuationToken) {
+        this(searchText, communicationId, limit, continuationToken, FoundMessages.NO_CHUNKS);
+    }
+
+    public SearchMessages(String searchText, long communicationId, int limit, long continuationToken, int chunkSize) {
         super(communicationId);
+        if (limit <= 0 || chunkSize < 0)
+            throw new IllegalArgumentException("limit must be positive and chunk size must not be negative");
         this.searchText = searchText;
+        this.limit = limit;
+        this.continuationToken = continuationToken;
+        this.chunkSize = chunkSize;
     }
 
     @Override
@@ -8,6 +8,10 @@ import at.tugraz.ist.qs2022.actorsystem.SimulatedActor;
  */
 public abstract class MessageStoreMessage implements Message {
 
+    /**
+     * correlation ID of messages which are replied to directly
+     */
+    public static final long NO_CORRELATION_ID = -1;
 
     /**
      * The actor to which the message store sends its replies.
@@ -20,6 +24,19 @@ public abstract class MessageStoreMessage implements Message {
      */
     public long communicationId;
 
+    /**
+     * Correlation ID chosen by the store client to match replies with requests,
+     * {@link MessageStoreMessage#NO_CORRELATION_ID} if the store client handles only one request.
+     * If set, the reply is wrapped in a {@link StoreReply}.
+     */
+    public long correlationId = NO_CORRELATION_ID;
+
+    /**
+     * If set, a read request is answered only by a store which has seen all changes
+     * acknowledged before, even if it is a replica (see <c>MessageStoreReplica</c>).
+     */
+    public boolean readYourWrites = false;
+
     public int getDuration() {
         return 1; // store is supposed to be fast
     }
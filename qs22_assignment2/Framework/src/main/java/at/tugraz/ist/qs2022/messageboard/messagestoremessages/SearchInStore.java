@@ -1,5 +1,7 @@
 package at.tugraz.ist.qs2022.messageboard.messagestoremessages;
 
+import at.tugraz.ist.qs2022.messageboard.clientmessages.FoundMessages;
+
 /**
  * Message used to signal that messages should be retrieved from the store.
  */
@@ -9,8 +11,30 @@ public class SearchInStore extends MessageStoreMessage {
      */
     public final String searchText;
 
+    /**
+     * maximum number of messages to return, {@link FoundMessages#NO_LIMIT} for all messages
+     */
+    public final int limit;
+
+    /**
+     * continuation token of the previous page, {@link FoundMessages#FIRST_PAGE} for the first page
+     */
+    public final long continuationToken;
+
+    /**
+     * maximum number of messages per reply, {@link FoundMessages#NO_CHUNKS} for a single reply
+     */
+    public final int chunkSize;
+
     public SearchInStore(String author, long commId) {
-        this.searchText = author;
+        this(author, commId, FoundMessages.NO_LIMIT, FoundMessages.FIRST_PAGE, FoundMessages.NO_CHUNKS);
+    }
+
+    public SearchInStore(String searchText, long commId, int limit, long continuationToken, int chunkSize) {
+        this.searchText = searchText;
         this.communicationId = commId;
+        this.limit = limit;
+        this.continuationToken = continuationToken;
+        this.chunkSize = chunkSize;
     }
 }
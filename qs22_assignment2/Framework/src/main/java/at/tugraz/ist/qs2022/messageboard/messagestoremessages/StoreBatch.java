@@ -0,0 +1,25 @@
+package at.tugraz.ist.qs2022.messageboard.messagestoremessages;
+
+import java.util.List;
+
+/**
+ * Envelope carrying several messages for the store, which the store processes in a single
+ * turn. The replies are sent back together in a {@link StoreBatchReply} to the store client
+ * of the batch, so each message must have a correlation ID.
+ */
+public class StoreBatch extends MessageStoreMessage {
+    /**
+     * the messages in the order they are processed
+     */
+    public final List<MessageStoreMessage> messages;
+
+    public StoreBatch(List<MessageStoreMessage> messages) {
+        this.messages = messages;
+    }
+
+    @Override
+    public int getDuration() {
+        // the store is busy for the batch as for a single message, so its cost is shared
+        return 1;
+    }
+}
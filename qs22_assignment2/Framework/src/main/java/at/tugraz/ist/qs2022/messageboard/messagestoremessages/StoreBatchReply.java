@@ -0,0 +1,23 @@
+package at.tugraz.ist.qs2022.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2022.actorsystem.Message;
+
+import java.util.List;
+
+/**
+ * Replies of the message store to the messages of a {@link StoreBatch},
+ * in the order the messages were processed.
+ */
+public class StoreBatchReply implements Message {
+
+    public final List<StoreReply> replies;
+
+    public StoreBatchReply(List<StoreReply> replies) {
+        this.replies = replies;
+    }
+
+    @Override
+    public int getDuration() {
+        return 1;
+    }
+}
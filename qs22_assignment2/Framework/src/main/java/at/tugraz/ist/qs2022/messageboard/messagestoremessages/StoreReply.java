@@ -0,0 +1,31 @@
+package at.tugraz.ist.qs2022.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2022.actorsystem.Message;
+import at.tugraz.ist.qs2022.messageboard.clientmessages.ClientMessage;
+
+/**
+ * Reply of the message store to a message with a correlation ID,
+ * which allows the receiver to match the reply with its request.
+ */
+public class StoreReply implements Message {
+
+    /**
+     * correlation ID of the message to which this is the reply
+     */
+    public final long correlationId;
+
+    /**
+     * the reply for the client
+     */
+    public final ClientMessage reply;
+
+    public StoreReply(long correlationId, ClientMessage reply) {
+        this.correlationId = correlationId;
+        this.reply = reply;
+    }
+
+    @Override
+    public int getDuration() {
+        return reply.getDuration();
+    }
+}
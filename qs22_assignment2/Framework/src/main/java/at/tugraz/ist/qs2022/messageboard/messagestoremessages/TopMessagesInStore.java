@@ -0,0 +1,34 @@
+package at.tugraz.ist.qs2022.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2022.messageboard.clientmessages.FoundMessages;
+
+/**
+ * Message used to signal that the messages with the most points should be retrieved from the store.
+ */
+public class TopMessagesInStore extends MessageStoreMessage {
+    /**
+     * The author of the messages which should be looked up, null for the messages of all authors
+     */
+    public final String author;
+
+    /**
+     * maximum number of messages to retrieve, {@link FoundMessages#NO_LIMIT} for all messages
+     */
+    public final int limit;
+
+    /**
+     * rank of the first message to retrieve, {@link FoundMessages#FIRST_PAGE} for the first page
+     */
+    public final long continuationToken;
+
+    public TopMessagesInStore(String author, long commId, int limit) {
+        this(author, commId, limit, FoundMessages.FIRST_PAGE);
+    }
+
+    public TopMessagesInStore(String author, long commId, int limit, long continuationToken) {
+        this.author = author;
+        this.communicationId = commId;
+        this.limit = limit;
+        this.continuationToken = continuationToken;
+    }
+}
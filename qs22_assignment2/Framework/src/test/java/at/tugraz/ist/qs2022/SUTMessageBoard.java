@@ -17,8 +17,12 @@ public class SUTMessageBoard {
     private final long commId;
 
     public SUTMessageBoard() {
-        commId = 1;
-        system = new SimulatedActorSystem();
+        this(new SimulatedActorSystem());
+    }
+
+    public SUTMessageBoard(SimulatedActorSystem system) {
+        this.commId = 1;
+        this.system = system;
         dispatcher = new Dispatcher(system, 2);
         client = new TestClient();
         system.spawn(dispatcher);
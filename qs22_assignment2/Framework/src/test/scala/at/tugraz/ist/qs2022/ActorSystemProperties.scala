@@ -0,0 +1,296 @@
+package at.tugraz.ist.qs2022
+
+import java.util.concurrent.{ConcurrentLinkedQueue, ForkJoinPool}
+
+import at.tugraz.ist.qs2022.actorsystem._
+import at.tugraz.ist.qs2022.messageboard.{Dispatcher, UserMessage}
+import at.tugraz.ist.qs2022.messageboard.clientmessages._
+import at.tugraz.ist.qs2022.messageboard.dispatchermessages.Stop
+import org.junit.runner.RunWith
+import org.scalacheck.Prop.forAll
+import org.scalacheck.{Gen, Properties}
+
+import scala.jdk.CollectionConverters._
+
+@RunWith(classOf[ScalaCheckJUnitPropertiesRunner])
+class ActorSystemProperties extends Properties("ActorSystemProperties") {
+
+  val genAuthor: Gen[String] = Gen.oneOf("Alice", "Bob", "Lena")
+  val genPublish: Gen[Long => ClientMessage] = for {
+    author <- genAuthor
+    message <- Gen.oneOf("hello", "hi", "msg_w_11ch_")
+  } yield (commId: Long) => new Publish(new UserMessage(author, message), commId)
+  val genLike: Gen[Long => ClientMessage] = for {
+    author <- genAuthor
+    messageId <- Gen.choose(-1L, 3L)
+  } yield (commId: Long) => new Like(author, commId, messageId)
+  val genRetrieve: Gen[Long => ClientMessage] =
+    genAuthor.map(author => (commId: Long) => new RetrieveMessages(author, commId))
+  val genRequests: Gen[List[(Long => ClientMessage, Int)]] =
+    Gen.listOf(Gen.zip(Gen.oneOf(genPublish, genLike, genRetrieve), Gen.choose(0, 12)))
+
+  /**
+   * Sends the requests one after another, each followed by a pause of the given number of ticks,
+   * and records every reply together with the time at which it was seen by the client.
+   */
+  def run(system: SimulatedActorSystem, requests: List[(Long => ClientMessage, Int)]): List[String] = {
+    val sut = new SUTMessageBoard(system)
+    sut.getDispatcher.tell(new InitCommunication(sut.getClient, sut.getCommId))
+    while (sut.getClient.receivedMessages.isEmpty)
+      sut.getSystem.runFor(1)
+    val worker: SimulatedActor = sut.getClient.receivedMessages.remove.asInstanceOf[InitAck].worker
+
+    requests.flatMap { case (request, pause) =>
+      worker.tell(request(sut.getCommId))
+      sut.getSystem.runFor(pause)
+      val replies = sut.getClient.receivedMessages.asScala.toList
+        .map(reply => s"${sut.getSystem.getCurrentTime} ${reply.getClass.getSimpleName}")
+      sut.getClient.receivedMessages.clear()
+      replies
+    } :+ s"${sut.getSystem.getCurrentTime} ${sut.getClient.getTimeSinceSystemStart}"
+  }
+
+  property("event-driven system behaves like the tick-based system") = forAll(genRequests) {
+    (requests: List[(Long => ClientMessage, Int)]) =>
+      run(new SimulatedActorSystem, requests) == run(new EventDrivenActorSystem, requests)
+  }
+
+  property("parallel system behaves like the tick-based system") = forAll(genRequests) {
+    (requests: List[(Long => ClientMessage, Int)]) =>
+      run(new SimulatedActorSystem, requests) == run(new ParallelActorSystem(0), requests)
+  }
+
+  /**
+   * Client which may receive messages while the test thread reads them.
+   */
+  class ConcurrentClient extends SimulatedActor {
+    val receivedMessages = new ConcurrentLinkedQueue[Message]()
+
+    override def receive(message: Message): Unit = receivedMessages.add(message)
+  }
+
+  /**
+   * Pool shared by the concurrent systems of all test cases.
+   */
+  lazy val concurrentPool = new ForkJoinPool(Runtime.getRuntime.availableProcessors,
+    ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true)
+
+  property("concurrent system answers every request") = forAll(Gen.listOf(genPublish)) {
+    (requests: List[Long => ClientMessage]) =>
+      val system = new ConcurrentActorSystem(concurrentPool, ConcurrentActorSystem.DEFAULT_TICK_MILLIS)
+      try {
+        val dispatcher = new Dispatcher(system, 2)
+        val client = new ConcurrentClient
+        system.spawn(dispatcher)
+        system.spawn(client)
+        dispatcher.tell(new InitCommunication(client, 1))
+        while (client.receivedMessages.isEmpty)
+          system.runFor(1)
+        val worker = client.receivedMessages.poll.asInstanceOf[InitAck].worker
+
+        requests.foreach(request => worker.tell(request(1)))
+        val deadline = system.getCurrentTime + 10000
+        while (client.receivedMessages.size < requests.size && system.getCurrentTime < deadline)
+          system.runFor(1)
+        client.receivedMessages.size == requests.size &&
+          client.receivedMessages.asScala.forall(reply => reply.isInstanceOf[OperationAck] || reply.isInstanceOf[OperationFailed])
+      } finally {
+        system.shutdown()
+      }
+  }
+
+  property("ring buffer and sampling logs keep a part of the full log") =
+    forAll(Gen.listOf(genPublish), Gen.choose(1, 5)) { (requests: List[Long => ClientMessage], n: Int) =>
+      val messages = requests.zipWithIndex.map { case (request, commId) => request(commId) }
+      val ringBuffer = new RingBufferMessageLog(n)
+      val sampling = new SamplingMessageLog(n)
+      messages.foreach { message =>
+        ringBuffer.add(message)
+        sampling.add(message)
+      }
+      ringBuffer.getMessages.asScala.toList == messages.takeRight(n) &&
+        sampling.getMessages.asScala.toList == messages.grouped(n).map(_.head).toList &&
+        sampling.getCount == messages.size
+    }
+
+  property("bounded message box drops messages according to its overflow policy") =
+    forAll(Gen.listOf(Gen.option(genPublish)), Gen.choose(1, 20), Gen.oneOf(OverflowPolicy.values.toSeq)) {
+      (operations: List[Option[Long => ClientMessage]], capacity: Int, policy: OverflowPolicy) =>
+        // Some adds a message, None removes one
+        val mailbox = new ArrayMailbox(capacity, policy)
+        var expected = Vector.empty[Message]
+        var dropped = 0L
+        operations.zipWithIndex.forall {
+          case (Some(request), commId) =>
+            val message = request(commId)
+            mailbox.add(message)
+            if (expected.size < capacity) expected :+= message
+            else {
+              dropped += 1
+              if (policy == OverflowPolicy.DROP_OLDEST) expected = expected.tail :+ message
+            }
+            mailbox.getDroppedCount == dropped
+          case (None, _) =>
+            val message = mailbox.poll()
+            val ok = message == expected.headOption.orNull
+            expected = expected.drop(1)
+            ok && mailbox.isEmpty == expected.isEmpty
+        }
+    }
+
+  property("multiplexing workers answer like workers using helpers") = forAll(genRequests) {
+    (requests: List[(Long => ClientMessage, Int)]) =>
+      def replies(multiplexStoreRequests: Boolean): List[String] = {
+        val system = new SimulatedActorSystem
+        val dispatcher = new Dispatcher(system, 2, multiplexStoreRequests)
+        val client = new TestClient
+        system.spawn(dispatcher)
+        system.spawn(client)
+        dispatcher.tell(new InitCommunication(client, 1))
+        while (client.receivedMessages.isEmpty)
+          system.runFor(1)
+        val worker = client.receivedMessages.remove.asInstanceOf[InitAck].worker
+        requests.foreach { case (request, pause) =>
+          worker.tell(request(1))
+          system.runFor(pause)
+        }
+        system.runFor(100)
+        client.receivedMessages.asScala.toList.map(_.getClass.getSimpleName).sorted
+      }
+
+      replies(multiplexStoreRequests = false) == replies(multiplexStoreRequests = true)
+  }
+
+  property("sharded message store answers like a single store") =
+    forAll(Gen.listOf(Gen.oneOf(genPublish, genRetrieve, Gen.oneOf("", "h", "ell", "Hi").map(text =>
+      (commId: Long) => new SearchMessages(text, commId): ClientMessage))), Gen.choose(2, 4)) {
+      (requests: List[Long => ClientMessage], shards: Int) =>
+        def replies(numberOfStoreShards: Int): List[String] = {
+          val system = new SimulatedActorSystem
+          val dispatcher = new Dispatcher(system, 2, false, numberOfStoreShards)
+          val client = new TestClient
+          system.spawn(dispatcher)
+          system.spawn(client)
+          dispatcher.tell(new InitCommunication(client, 1))
+          while (client.receivedMessages.isEmpty)
+            system.runFor(1)
+          val worker = client.receivedMessages.remove.asInstanceOf[InitAck].worker
+          requests.map { request =>
+            worker.tell(request(1))
+            while (client.receivedMessages.isEmpty)
+              system.runFor(1)
+            client.receivedMessages.remove match {
+              // shards assign other message IDs, so only the contents are compared
+              case found: FoundMessages =>
+                found.messages.asScala.map(m => s"${m.getAuthor}: ${m.getMessage}").sorted.mkString(", ")
+              case reply => reply.getClass.getSimpleName
+            }
+          }
+        }
+
+        replies(1) == replies(shards)
+    }
+
+  property("a multiplexing worker in front of a sharded store keeps the order of the requests of a batch") =
+    forAll(Gen.listOf(genPublish), Gen.listOf(genPublish), Gen.choose(2, 4)) {
+      (first: List[Long => ClientMessage], second: List[Long => ClientMessage], shards: Int) =>
+        def replies(numberOfStoreShards: Int): List[String] = {
+          val system = new SimulatedActorSystem
+          val dispatcher = new Dispatcher(system, 1, true, numberOfStoreShards)
+          val client = new TestClient
+          system.spawn(dispatcher)
+          system.spawn(client)
+          dispatcher.tell(new InitCommunication(client, 1))
+          while (client.receivedMessages.isEmpty)
+            system.runFor(1)
+          val worker = client.receivedMessages.remove.asInstanceOf[InitAck].worker
+          // told in the same tick, so the worker sends them in a batch, which the router splits by shard
+          val search = (commId: Long) => new SearchMessages("", commId): ClientMessage
+          (first ++ (search :: second) :+ search).foreach(request => worker.tell(request(1)))
+          system.runFor(100)
+          client.receivedMessages.asScala.toList.map {
+            // shards assign other message IDs, so only the contents are compared
+            case found: FoundMessages =>
+              found.messages.asScala.map(m => s"${m.getAuthor}: ${m.getMessage}").sorted.mkString("[", ", ", "]")
+            case reply => reply.getClass.getSimpleName
+          }.sorted
+        }
+
+        replies(1) == replies(shards)
+    }
+
+  /**
+   * Channel which sends every message with the delay set before sending it.
+   */
+  class ScriptedChannel extends CommunicationChannel {
+    var nextDelay = 0
+
+    override def send(message: Message): Unit = addMessage(nextDelay, message)
+  }
+
+  property("communication channel delivers messages after their delay in the order they were sent") =
+    forAll(Gen.listOf(Gen.option(Gen.choose(0, 20)))) { (operations: List[Option[Int]]) =>
+      // Some sends a message with the given delay, None lets one tick pass
+      val channel = new ScriptedChannel
+      var ticks = 0
+      var expected = Map.empty[Int, List[Message]].withDefaultValue(Nil)
+      var delivered = true
+      def tick(): Unit = {
+        // a message sent with delay d arrives at the (d + 1)-th tick after it was sent
+        val arrived = channel.tick().asScala.toList
+        delivered = delivered && arrived == expected(ticks)
+        expected -= ticks
+        ticks += 1
+      }
+      operations.foreach {
+        case Some(delay) =>
+          val message = new Stop
+          channel.nextDelay = delay
+          channel.send(message)
+          expected = expected.updated(ticks + delay, expected(ticks + delay) :+ message)
+        case None => tick()
+      }
+      while (expected.nonEmpty) tick()
+      delivered && channel.tick().isEmpty
+    }
+
+  property("actor registry keeps running actors in the order they were spawned") =
+    forAll(Gen.listOf(Gen.option(Gen.choose(0, 100)))) { (operations: List[Option[Int]]) =>
+      // Some stops the running actor at the given position (modulo the number of actors), None spawns one
+      val system = new SimulatedActorSystem
+      var expected = Vector.empty[SimulatedActor]
+      operations.forall { operation =>
+        operation match {
+          case Some(position) if expected.nonEmpty =>
+            val actor = expected(position % expected.size)
+            system.stop(actor)
+            expected = expected.filterNot(_ eq actor)
+          case _ =>
+            val actor = new TestClient
+            system.spawn(actor)
+            expected :+= actor
+        }
+        system.tick()
+        system.getActors.asScala.toList == expected.toList &&
+          expected.forall(actor => system.getActor(actor.getId) eq actor)
+      }
+    }
+
+  property("handler table picks the first matching handler like a chain of instanceof checks") =
+    forAll(Gen.listOf(Gen.oneOf(genPublish, genLike, genRetrieve)), Gen.oneOf(true, false)) {
+      (requests: List[Long => ClientMessage], publishFirst: Boolean) =>
+        val table = new MessageHandlerTable
+        var handled = List.empty[String]
+        val publishHandler: MessageHandler[Publish] = _ => handled :+= "publish"
+        val clientMessageHandler: MessageHandler[ClientMessage] = _ => handled :+= "client message"
+        if (publishFirst) table.register(classOf[Publish], publishHandler)
+        table.register(classOf[ClientMessage], clientMessageHandler)
+        table.register(classOf[Publish], publishHandler)
+        val messages = requests.map(request => request(1))
+        val dispatched = messages.forall(message => table.dispatch(message)) && !table.dispatch(new Stop)
+        dispatched && handled == messages.map {
+          case _: Publish if publishFirst => "publish"
+          case _ => "client message"
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package at.tugraz.ist.qs2022
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.Executor
+
+import at.tugraz.ist.qs2022.actorsystem.{Message, SimulatedActor, SimulatedActorSystem}
+import at.tugraz.ist.qs2022.messageboard.{MessageStore, MessageStoreReplica, UserMessage, WriteAheadLog}
+import at.tugraz.ist.qs2022.messageboard.clientmessages._
+import at.tugraz.ist.qs2022.messageboard.messagestoremessages._
+import org.junit.runner.RunWith
+import org.scalacheck.Prop.forAll
+import org.scalacheck.{Gen, Properties}
+
+import scala.jdk.CollectionConverters._
+
+/**
+ * Properties comparing the message store with a plain list of the messages it stored.
+ */
+@RunWith(classOf[ScalaCheckJUnitPropertiesRunner])
+class MessageStoreProperties extends Properties("MessageStoreProperties") {
+
+  val genAuthor: Gen[String] = Gen.oneOf("Alice", "Bob", "Lena", "alice")
+  val genText: Gen[String] = Gen.oneOf("hello", "hi", "Hello Bob", "ice", "")
+  val genMessages: Gen[List[(String, String)]] = Gen.listOf(Gen.zip(genAuthor, genText))
+
+  /**
+   * Store client, which keeps the last reply of the store. Replies are passed
+   * directly instead of via a channel, so they are available right after the request.
+   */
+  class StoreClient extends SimulatedActor {
+    var reply: Message = _
+    var replies: List[Message] = Nil
+
+    override def tell(message: Message): Unit = {
+      reply = message
+      replies :+= message
+    }
+
+    override def receive(message: Message): Unit = ()
+  }
+
+  /**
+   * Sends the request to the store and returns the reply.
+   */
+  def request(store: MessageStore, client: StoreClient, request: MessageStoreMessage): Message = {
+    request.storeClient = client
+    store.receive(request)
+    client.reply
+  }
+
+  /**
+   * Publishes the messages and returns the messages which were stored.
+   */
+  def publish(store: MessageStore, client: StoreClient, messages: List[(String, String)]): List[UserMessage] =
+    messages.flatMap { case (author, text) =>
+      val message = new UserMessage(author, text)
+      request(store, client, new UpdateMessageStore(message, 1)) match {
+        case _: OperationAck => Some(message)
+        case _ => None
+      }
+    }
+
+  property("retrieving returns the messages of the author in the order they were stored") =
+    forAll(genMessages, genAuthor) { (messages: List[(String, String)], author: String) =>
+      val store = new MessageStore
+      val client = new StoreClient
+      val stored = publish(store, client, messages)
+      val found = request(store, client, new RetrieveFromStore(author, 1)).asInstanceOf[FoundMessages]
+      found.messages.asScala.toList == stored.filter(_.getAuthor == author)
+    }
+
+  property("a message is stored unless the author already stored the same text") =
+    forAll(Gen.listOf(Gen.zip(Gen.oneOf("Aa", "BB", "AaBB", "BBAa"), Gen.oneOf("Aa", "BB", "AaAa", "BBBB")))) {
+      // "Aa" and "BB" have the same hash code, so many messages share a fingerprint
+      (messages: List[(String, String)]) =>
+        val store = new MessageStore
+        val client = new StoreClient
+        publish(store, client, messages).map(m => (m.getAuthor, m.getMessage)) == messages.distinct
+    }
+
+  property("searching returns the messages whose author or text contains the search text, ignoring case") =
+    forAll(genMessages, Gen.oneOf("", "i", "LI", "ice", "Hel", "ello b", "alice", "xyz")) {
+      (messages: List[(String, String)], searchText: String) =>
+        val store = new MessageStore
+        val client = new StoreClient
+        val stored = publish(store, client, messages)
+        val found = request(store, client, new SearchInStore(searchText, 1)).asInstanceOf[FoundMessages]
+        found.messages.asScala.toList == stored.filter(m =>
+          m.getAuthor.toLowerCase.contains(searchText.toLowerCase) ||
+            m.getMessage.toLowerCase.contains(searchText.toLowerCase))
+    }
+
+  property("repeated queries answered from the query cache find the messages stored in the meantime") =
+    forAll(Gen.listOf(Gen.oneOf[Either[(String, String), String]](
+      Gen.zip(genAuthor, genText).map(message => Left(message)), Gen.oneOf(genAuthor, genText).map(text => Right(text))))) {
+      // Left publishes a message, Right retrieves the messages of an author and searches for the same text
+      (operations: List[Either[(String, String), String]]) =>
+        val store = new MessageStore
+        val client = new StoreClient
+        var stored = List.empty[UserMessage]
+        val foundAll = operations.forall {
+          case Left(message) =>
+            stored ++= publish(store, client, List(message))
+            true
+          case Right(text) =>
+            val retrieved = request(store, client, new RetrieveFromStore(text, 1)).asInstanceOf[FoundMessages]
+            val searched = request(store, client, new SearchInStore(text, 1)).asInstanceOf[FoundMessages]
+            retrieved.messages.asScala.toList == stored.filter(_.getAuthor == text) &&
+              searched.messages.asScala.toList == stored.filter(m =>
+                m.getAuthor.toLowerCase.contains(text.toLowerCase) || m.getMessage.toLowerCase.contains(text.toLowerCase))
+        }
+        foundAll && store.getQueryCacheHits + store.getQueryCacheMisses == 2 * operations.count(_.isRight)
+    }
+
+  property("pages and chunks of found messages add up to all found messages") =
+    forAll(genMessages, Gen.oneOf("", "i", "ice"), Gen.choose(1, 5), Gen.choose(0, 3)) {
+      (messages: List[(String, String)], searchText: String, limit: Int, chunkSize: Int) =>
+        val store = new MessageStore
+        val client = new StoreClient
+        publish(store, client, messages)
+        val all = request(store, client, new SearchInStore(searchText, 1)).asInstanceOf[FoundMessages].messages.asScala
+        var paged = List.empty[UserMessage]
+        var token = FoundMessages.FIRST_PAGE
+        var chunksOk = true
+        do {
+          client.replies = Nil
+          request(store, client, new SearchInStore(searchText, 1, limit, token, chunkSize))
+          val chunks = client.replies.map(_.asInstanceOf[FoundMessages])
+          chunksOk &&= chunks.count(_.lastChunk) == 1 && chunks.last.lastChunk &&
+            chunks.map(_.messages.size).sum <= limit &&
+            chunks.forall(chunk => chunkSize == FoundMessages.NO_CHUNKS || chunk.messages.size <= chunkSize)
+          paged ++= chunks.flatMap(_.messages.asScala)
+          token = chunks.last.continuationToken
+        } while (token != FoundMessages.NO_CONTINUATION)
+        chunksOk && paged == all.toList
+    }
+
+  val genUser: Gen[String] = Gen.oneOf(genAuthor, Gen.choose(0, 9).map(user => s"user$user"))
+  val genMessageId: Gen[Long] = Gen.choose(0L, 5L)
+
+  /**
+   * Requests changing the likes, dislikes or reactions of a message.
+   */
+  val genMessageChange: Gen[MessageStoreMessage] = Gen.oneOf(
+    Gen.zip(genUser, genMessageId).map { case (user, messageId) => new AddLike(user, messageId, 1) },
+    Gen.zip(genUser, genMessageId).map { case (user, messageId) => new AddDislike(user, messageId, 1) },
+    Gen.zip(genUser, genMessageId, Gen.oneOf(Reaction.Emoji.values.toSeq)).map { case (user, messageId, emoji) =>
+      new AddReaction(user, messageId, 1, emoji)
+    },
+    Gen.zip(genUser, genMessageId, Gen.oneOf(DeleteLikeOrDislike.Type.values.toSeq)).map { case (user, messageId, kind) =>
+      new DeleteLikeOrDislike(user, 1, messageId, kind)
+    })
+
+  /**
+   * Requests for every kind of change the store writes to its log, users are reported often
+   * enough to be banned.
+   */
+  val genChange: Gen[MessageStoreMessage] = Gen.frequency(
+    1 -> Gen.zip(genAuthor, genText).map { case (author, text) => new UpdateMessageStore(new UserMessage(author, text), 1) },
+    4 -> genMessageChange,
+    1 -> Gen.zip(genUser, genAuthor).map { case (user, reported) => new AddReport(user, 1, reported) })
+
+  property("a store recovered from its write-ahead log answers like the store which wrote it") =
+    forAll(Gen.listOf(genChange), Gen.oneOf(WriteAheadLog.SyncPolicy.values.toSeq)) {
+      (changes: List[MessageStoreMessage], syncPolicy: WriteAheadLog.SyncPolicy) =>
+        val file = File.createTempFile("message-store", ".log")
+        try {
+          def describe(store: MessageStore): List[String] = {
+            val client = new StoreClient
+            val messages = request(store, client, new SearchInStore("", 1)).asInstanceOf[FoundMessages].messages.asScala.toList
+              .map(m => s"${m.getMessageId} ${m.getAuthor}: ${m.getMessage} ${m.getPoints} ${m.getLikes.asScala.sorted} ${m.getDislikes.asScala.sorted} ${m.getReactions}")
+            // liking a message which does not exist only fails differently for banned users
+            val banned = (List("Alice", "Bob", "Lena", "alice") ++ (0 to 9).map(user => s"user$user"))
+              .filter(user => request(store, client, new AddLike(user, -1, 1)).isInstanceOf[UserBanned])
+            messages :+ s"banned $banned"
+          }
+
+          val log = new WriteAheadLog(file, syncPolicy)
+          val store = new MessageStore(log)
+          val client = new StoreClient
+          changes.foreach(change => request(store, client, change))
+          log.close()
+
+          val recoveredLog = new WriteAheadLog(file, syncPolicy)
+          try {
+            describe(store) == describe(new MessageStore(recoveredLog))
+          } finally {
+            recoveredLog.close()
+          }
+        } finally {
+          file.delete()
+        }
+    }
+
+  property("cached reads find the points, likes, dislikes and reactions of a fresh lookup while messages change") =
+    forAll(genMessages, Gen.listOf(Gen.oneOf[Either[MessageStoreMessage, String]](
+      genMessageChange.map(change => Left(change)), Gen.oneOf(genAuthor, genText).map(text => Right(text))))) {
+      // Left changes a message, Right retrieves the messages of an author and searches for the same text
+      (messages: List[(String, String)], operations: List[Either[MessageStoreMessage, String]]) =>
+        def describe(m: UserMessage): String =
+          s"${m.getPoints} ${m.getLikes.asScala.sorted} ${m.getDislikes.asScala.sorted} ${m.getReactions}"
+
+        val store = new MessageStore
+        val client = new StoreClient
+        publish(store, client, messages)
+        operations.forall {
+          case Left(change) =>
+            request(store, client, change)
+            true
+          case Right(text) =>
+            // the top messages are not cached, so they are looked up afresh
+            val fresh = request(store, client, new TopMessagesInStore(null, 1, FoundMessages.NO_LIMIT))
+              .asInstanceOf[FoundMessages].messages.asScala.map(m => m.getMessageId -> describe(m)).toMap
+            List(new RetrieveFromStore(text, 1), new SearchInStore(text, 1)).forall(read =>
+              request(store, client, read).asInstanceOf[FoundMessages].messages.asScala
+                .forall(m => fresh(m.getMessageId) == describe(m)))
+        }
+    }
+
+  property("a replica answers reads like its store once it applied the shipped changes, or if asked to read its writes") =
+    forAll(genMessages, Gen.listOf(Gen.zip(genAuthor, Gen.choose(0L, 5L))), Gen.oneOf(true, false)) {
+      (messages: List[(String, String)], likes: List[(String, Long)], readYourWrites: Boolean) =>
+        def search(store: MessageStore): StoreClient = {
+          val client = new StoreClient
+          val search = new SearchInStore("", 1)
+          search.readYourWrites = readYourWrites
+          request(store, client, search)
+          client
+        }
+
+        def describe(client: StoreClient): List[String] =
+          client.replies.collect { case found: FoundMessages => found.messages.asScala.toList }.flatten
+            .map(m => s"${m.getMessageId} ${m.getAuthor}: ${m.getMessage} ${m.getPoints} ${m.getLikes.asScala.sorted}")
+
+        val system = new SimulatedActorSystem
+        val store = new MessageStore
+        // the replica may lag behind by any number of changes, unless the read asks to read its writes
+        val replica = new MessageStoreReplica(store, Long.MaxValue)
+        system.spawn(store)
+        system.spawn(replica)
+        val client = new StoreClient
+        publish(store, client, messages)
+        likes.foreach { case (author, messageId) => request(store, client, new AddLike(author, messageId, 1)) }
+        // each shipped change takes the replica a few ticks
+        val ticks = 4 * (messages.size + likes.size + 1)
+        if (!readYourWrites) system.runFor(ticks)
+        // with read-your-writes, the search waits for the changes and is answered while the system runs
+        val replicaClient = search(replica)
+        system.runFor(ticks)
+        describe(replicaClient) == describe(search(store))
+    }
+
+  property("a batch of requests is answered like the requests sent one by one") =
+    forAll(genMessages, Gen.listOf(Gen.zip(genAuthor, Gen.choose(0L, 5L)))) {
+      (messages: List[(String, String)], likes: List[(String, Long)]) =>
+        def requests: List[MessageStoreMessage] = {
+          val all = messages.map { case (author, text) => new UpdateMessageStore(new UserMessage(author, text), 1) } ++
+            likes.map { case (author, messageId) => new AddLike(author, messageId, 1) } :+
+            new SearchInStore("", 1)
+          all.zipWithIndex.foreach { case (request, i) => request.correlationId = i }
+          all
+        }
+
+        def describe(replies: List[StoreReply]): List[String] = replies.map(r => r.reply match {
+          case found: FoundMessages => s"${r.correlationId} " + found.messages.asScala.toList
+            .map(m => s"${m.getMessageId} ${m.getAuthor}: ${m.getMessage} ${m.getPoints} ${m.getLikes.asScala.sorted}")
+          case reply => s"${r.correlationId} ${reply.getClass.getSimpleName}"
+        })
+
+        val client = new StoreClient
+        val store = new MessageStore
+        requests.foreach(r => request(store, client, r))
+        val batchClient = new StoreClient
+        request(new MessageStore, batchClient, new StoreBatch(requests.asJava))
+        val batchReplies = batchClient.replies.collect { case reply: StoreBatchReply => reply.replies.asScala.toList }
+        batchReplies.size == 1 &&
+          describe(batchReplies.head) == describe(client.replies.collect { case reply: StoreReply => reply })
+    }
+
+  /**
+   * Executor writing snapshots in the thread of the store.
+   */
+  val writeNow: Executor = (task: Runnable) => task.run()
+
+  property("a store started from a snapshot and its write-ahead log answers like the store which wrote them") =
+    forAll(genMessages, Gen.listOf(Gen.zip(genAuthor, Gen.choose(0L, 5L))), Gen.choose(1L, 10L)) {
+      (messages: List[(String, String)], likes: List[(String, Long)], snapshotInterval: Long) =>
+        val directory = Files.createTempDirectory("message-store").toFile
+        val logFile = new File(directory, "log")
+        val snapshotFile = new File(directory, "snapshot")
+        try {
+          def describe(store: MessageStore, author: String): List[String] = {
+            val client = new StoreClient
+            request(store, client, new RetrieveFromStore(author, 1)).asInstanceOf[FoundMessages].messages.asScala.toList
+              .map(m => s"${m.getMessageId} ${m.getAuthor}: ${m.getMessage} ${m.getPoints} ${m.getLikes.asScala.sorted}")
+          }
+
+          val log = new WriteAheadLog(logFile, WriteAheadLog.SyncPolicy.NONE)
+          // snapshots are written right away, so that the files are complete when the log is closed
+          val store = new MessageStore(0, 1, log, snapshotFile, snapshotInterval, writeNow)
+          val client = new StoreClient
+          publish(store, client, messages)
+          likes.foreach { case (author, messageId) => request(store, client, new AddLike(author, messageId, 1)) }
+          log.close()
+
+          val recoveredLog = new WriteAheadLog(logFile, WriteAheadLog.SyncPolicy.NONE)
+          try {
+            val recovered = new MessageStore(0, 1, recoveredLog, snapshotFile, snapshotInterval, writeNow)
+            // authors are loaded one by one from the snapshot, stored messages are still found as duplicates
+            List("Alice", "Bob", "Lena", "alice").forall(author => describe(store, author) == describe(recovered, author)) &&
+              publish(recovered, client, messages).isEmpty
+          } finally {
+            recoveredLog.close()
+          }
+        } finally {
+          directory.listFiles.foreach(_.delete())
+          directory.delete()
+        }
+    }
+
+  property("a replica of a store started from a snapshot and its write-ahead log answers like the store") =
+    forAll(genMessages, Gen.listOf(Gen.zip(genAuthor, Gen.choose(0L, 5L))), Gen.choose(1L, 10L), genAuthor) {
+      (messages: List[(String, String)], likes: List[(String, Long)], snapshotInterval: Long, loadedAuthor: String) =>
+        val directory = Files.createTempDirectory("message-store").toFile
+        val logFile = new File(directory, "log")
+        val snapshotFile = new File(directory, "snapshot")
+        try {
+          def describe(store: MessageStore, author: String): List[String] = {
+            val client = new StoreClient
+            request(store, client, new TopMessagesInStore(author, 1, FoundMessages.NO_LIMIT)).asInstanceOf[FoundMessages].messages.asScala.toList
+              .map(m => s"${m.getMessageId} ${m.getAuthor}: ${m.getMessage} ${m.getPoints} ${m.getLikes.asScala.sorted}")
+          }
+
+          val log = new WriteAheadLog(logFile, WriteAheadLog.SyncPolicy.NONE)
+          val store = new MessageStore(0, 1, log, snapshotFile, snapshotInterval, writeNow)
+          val client = new StoreClient
+          publish(store, client, messages)
+          likes.foreach { case (author, messageId) => request(store, client, new AddLike(author, messageId, 1)) }
+          log.close()
+
+          val recoveredLog = new WriteAheadLog(logFile, WriteAheadLog.SyncPolicy.NONE)
+          try {
+            val system = new SimulatedActorSystem
+            val recovered = new MessageStore(0, 1, recoveredLog, snapshotFile, snapshotInterval, writeNow)
+            // one author is loaded from the snapshot before the replica is added, the others afterwards
+            describe(recovered, loadedAuthor)
+            val replica = new MessageStoreReplica(recovered, Long.MaxValue)
+            system.spawn(recovered)
+            system.spawn(replica)
+            likes.foreach { case (author, messageId) => request(recovered, client, new AddLike(author.toUpperCase, messageId, 1)) }
+            system.runFor(4 * (likes.size + 1))
+            List("Alice", "Bob", "Lena", "alice", null).forall(author => describe(replica, author) == describe(recovered, author))
+          } finally {
+            recoveredLog.close()
+          }
+        } finally {
+          directory.listFiles.foreach(_.delete())
+          directory.delete()
+        }
+    }
+
+  property("a store started from the files left while a snapshot was written answers like the store which wrote them") =
+    forAll(genMessages, Gen.listOf(Gen.zip(genAuthor, Gen.choose(0L, 5L))), Gen.choose(1L, 10L), Gen.choose(1, 4)) {
+      (messages: List[(String, String)], likes: List[(String, Long)], snapshotInterval: Long, writeEvery: Int) =>
+        val directory = Files.createTempDirectory("message-store").toFile
+        val crashDirectory = Files.createTempDirectory("message-store").toFile
+        try {
+          def describe(store: MessageStore, author: String): List[String] = {
+            val client = new StoreClient
+            request(store, client, new TopMessagesInStore(author, 1, FoundMessages.NO_LIMIT)).asInstanceOf[FoundMessages].messages.asScala.toList
+              .map(m => s"${m.getMessageId} ${m.getAuthor}: ${m.getMessage} ${m.getPoints} ${m.getLikes.asScala.sorted}")
+          }
+
+          // the queued snapshot writes run after every few requests, so the files may be copied while one is pending
+          val writes = new java.util.ArrayDeque[Runnable]
+          val log = new WriteAheadLog(new File(directory, "log"), WriteAheadLog.SyncPolicy.NONE)
+          val store = new MessageStore(0, 1, log, new File(directory, "snapshot"), snapshotInterval,
+            (task: Runnable) => writes.add(task))
+          val client = new StoreClient
+          val requests = messages.map { case (author, text) => new UpdateMessageStore(new UserMessage(author, text), 1) } ++
+            likes.map { case (author, messageId) => new AddLike(author, messageId, 1) }
+          requests.zipWithIndex.foreach { case (change, index) =>
+            request(store, client, change)
+            if (index % writeEvery == 0 && !writes.isEmpty) writes.poll().run()
+          }
+          // the files are copied as a crash of the store would leave them
+          directory.listFiles.foreach(file => Files.copy(file.toPath, new File(crashDirectory, file.getName).toPath))
+          log.close()
+
+          val recoveredLog = new WriteAheadLog(new File(crashDirectory, "log"), WriteAheadLog.SyncPolicy.NONE)
+          try {
+            val recovered = new MessageStore(0, 1, recoveredLog, new File(crashDirectory, "snapshot"), snapshotInterval, writeNow)
+            // the top messages of an author are found without loading the other authors from the snapshot
+            List("Alice", "Bob", "Lena", "alice", null).forall(author => describe(store, author) == describe(recovered, author))
+          } finally {
+            recoveredLog.close()
+          }
+        } finally {
+          List(directory, crashDirectory).foreach { d =>
+            d.listFiles.foreach(_.delete())
+            d.delete()
+          }
+        }
+    }
+
+  property("likes and dislikes of a message behave like sets of names") =
+    forAll(Gen.listOf(Gen.zip(Gen.oneOf(true, false), Gen.oneOf(true, false), Gen.choose(0, 200000))), Gen.choose(0, 6)) {
+      (operations: List[(Boolean, Boolean, Int)], spread: Int) =>
+        // (like or dislike, add or remove, user), users are spread over more chunks of the compressed sets
+        val message = new UserMessage("Alice", "hello")
+        var likes = Set.empty[String]
+        var dislikes = Set.empty[String]
+        operations.forall { case (like, add, user) =>
+          val name = s"user${user >> spread}"
+          val changed =
+            if (like && add) message.addLike(name) == !likes.contains(name)
+            else if (like) message.removeLike(name) == likes.contains(name)
+            else if (add) message.addDislike(name) == !dislikes.contains(name)
+            else message.removeDislike(name) == dislikes.contains(name)
+          if (like) likes = if (add) likes + name else likes - name
+          else dislikes = if (add) dislikes + name else dislikes - name
+          changed && message.isLikedBy(name) == likes.contains(name) && message.isDislikedBy(name) == dislikes.contains(name)
+        } && message.getLikes.asScala.toSet == likes && message.getDislikes.asScala.toSet == dislikes &&
+          message.getLikeCount == likes.size && message.getDislikeCount == dislikes.size
+    }
+
+  property("views of a message keep the likes and dislikes it had when they were taken") =
+    forAll(Gen.listOf(Gen.zip(Gen.oneOf(true, false), Gen.oneOf(true, false), Gen.choose(0, 200000))), Gen.choose(0, 6)) {
+      (operations: List[(Boolean, Boolean, Int)], spread: Int) =>
+        def describe(message: UserMessage): String =
+          s"${message.getLikes.asScala.sorted} ${message.getDislikes.asScala.sorted} ${message.getPoints}"
+
+        val message = new UserMessage("Alice", "hello")
+        // a view is taken after every third change, the last one is changed
+        val views = operations.zipWithIndex.flatMap { case ((like, add, user), index) =>
+          val name = s"user${user >> spread}"
+          if (like && add) message.addLike(name)
+          else if (like) message.removeLike(name)
+          else if (add) message.addDislike(name)
+          else message.removeDislike(name)
+          message.setPoints(2 * message.getLikeCount - message.getDislikeCount)
+          if (index % 3 == 0) Some((message.view(), describe(message))) else None
+        }
+        val immutable = views.lastOption.forall { case (view, _) =>
+          try {
+            view.addLike("Bob")
+            false
+          } catch {
+            case _: UnsupportedOperationException => true
+          }
+        }
+        immutable && views.forall { case (view, described) => describe(view) == described && view == message }
+    }
+
+  property("reactions of a message are counted per emoji") =
+    forAll(Gen.listOf(Gen.zip(Gen.choose(0, 50), Gen.oneOf(Reaction.Emoji.values.toSeq)))) {
+      (reactions: List[(Int, Reaction.Emoji)]) =>
+        val message = new UserMessage("Alice", "hello")
+        var expected = Map.empty[String, Set[Reaction.Emoji]]
+        reactions.forall { case (user, emoji) =>
+          val name = s"user$user"
+          val added = message.addReaction(name, emoji) == !expected.getOrElse(name, Set.empty).contains(emoji)
+          expected += name -> (expected.getOrElse(name, Set.empty) + emoji)
+          added && message.getReactionsOf(name).asScala.toSet == expected(name)
+        } && message.getReactions.asScala.map { case (name, emojis) => name -> emojis.asScala.toSet }.toMap == expected &&
+          Reaction.Emoji.values.forall(emoji => message.getReactionCount(emoji) == expected.values.count(_.contains(emoji)))
+    }
+
+  property("likes, dislikes and reactions of a message are kept when it is stored") =
+    forAll(Gen.listOf(Gen.zip(Gen.choose(0, 2), Gen.choose(0, 9))), Gen.listOf(Gen.choose(0, 9))) {
+      (votes: List[(Int, Int)], others: List[Int]) =>
+        // (like, dislike or reaction, user), the store saw the other users first, so their IDs differ from those of the message
+        val store = new MessageStore
+        val client = new StoreClient
+        others.foreach(user => request(store, client, new AddReport(s"user$user", 1, "Alice")))
+        val message = new UserMessage("Bob", "hello")
+        votes.foreach { case (kind, user) =>
+          if (kind == 0) message.addLike(s"user$user")
+          else if (kind == 1) message.addDislike(s"user$user")
+          else message.addReaction(s"user$user", Reaction.Emoji.COOL)
+        }
+        def describe(m: UserMessage) = (m.getLikes.asScala.toSet, m.getDislikes.asScala.toSet, m.getReactions)
+        val expected = describe(message)
+        request(store, client, new UpdateMessageStore(message, 1))
+        val found = request(store, client, new RetrieveFromStore("Bob", 1)).asInstanceOf[FoundMessages].messages.asScala
+        found.size == 1 && describe(found.head) == expected &&
+          votes.filter(_._1 == 0).forall { case (_, user) => found.head.isLikedBy(s"user$user") }
+    }
+
+  property("a user reported by enough different users is banned, repeated reports are refused") =
+    forAll(Gen.listOf(Gen.zip(Gen.choose(0, 9), Gen.choose(0, 2)))) { (reports: List[(Int, Int)]) =>
+      val store = new MessageStore
+      val client = new StoreClient
+      var reporters = Map.empty[String, Set[String]].withDefaultValue(Set.empty)
+      def banned(user: String) = reporters(user).size >= MessageStore.USER_BLOCKED_AT_COUNT
+      reports.forall { case (reporter, reported) =>
+        val (reporterName, reportedName) = (s"user$reporter", s"user$reported")
+        val reply = request(store, client, new AddReport(reporterName, 1, reportedName))
+        val expected =
+          if (banned(reporterName)) reply.isInstanceOf[UserBanned]
+          else if (reporters(reportedName).contains(reporterName)) reply.isInstanceOf[OperationFailed]
+          else reply.isInstanceOf[OperationAck]
+        if (reply.isInstanceOf[OperationAck]) reporters += reportedName -> (reporters(reportedName) + reporterName)
+        expected
+      }
+    }
+
+  property("the top messages are the stored messages ordered by points, paged by rank") =
+    forAll(genMessages, Gen.listOf(Gen.zip(Gen.oneOf(true, false), Gen.choose(0, 9), Gen.choose(0, 30))),
+      Gen.option(genAuthor), Gen.choose(1, 5)) {
+      (messages: List[(String, String)], votes: List[(Boolean, Int, Int)], author: Option[String], limit: Int) =>
+        // (like or dislike, user, index of the message)
+        val store = new MessageStore
+        val client = new StoreClient
+        val stored = publish(store, client, messages)
+        if (stored.nonEmpty) {
+          votes.foreach { case (like, user, index) =>
+            val messageId = stored(index % stored.size).getMessageId
+            if (like) request(store, client, new AddLike(s"user$user", messageId, 1))
+            else request(store, client, new AddDislike(s"user$user", messageId, 1))
+          }
+        }
+        val expected = stored.filter(m => author.forall(_ == m.getAuthor))
+          .sortBy(m => (-m.getPoints, m.getMessageId))
+        def pagesFrom(token: Long): List[UserMessage] = {
+          val found = request(store, client, new TopMessagesInStore(author.orNull, 1, limit, token))
+            .asInstanceOf[FoundMessages]
+          val page = found.messages.asScala.toList
+          if (found.continuationToken == FoundMessages.NO_CONTINUATION) page
+          else page ++ pagesFrom(found.continuationToken)
+        }
+        pagesFrom(FoundMessages.FIRST_PAGE) == expected
+    }
+}